@@ -0,0 +1,68 @@
+package app.benchmarks;
+
+/**
+ * Throughput of deriving a contact's key, which happens on every post, put,
+ * cache lookup and index update. The default NameRule strips accents before
+ * a name is stored, so the accented case installs a name rule that keeps
+ * them, as a deployment accepting such names would, to measure getKey's
+ * handling of non-ASCII letters.
+ */
+
+import app.models.Contact;
+import app.models.validation.ContactValidator;
+import app.models.validation.FieldRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContactBenchmark {
+
+    private static final FieldRule KEEP_NAME = new FieldRule() {
+        public String apply(String value) {
+            return value;
+        }
+
+        public String description() {
+            return "any name";
+        }
+    };
+
+    private final Contact ascii = new Contact("Mary Jane Watson", null, null);
+    private Contact accented;
+
+    @Setup
+    public void setUp() {
+        Contact.setValidator(ContactValidator.DEFAULT.withNameRule(KEEP_NAME));
+        accented = new Contact("Jos\u00e9 Mar\u00eda Garc\u00eda", null, null);
+        Contact.setValidator(ContactValidator.DEFAULT);
+        if (accented.getName().chars().allMatch(c -> c < 128)) {
+            throw new IllegalStateException("accents were not kept: " + accented.getName());
+        }
+    }
+
+    @Benchmark
+    public String getKeyAscii() {
+        return ascii.getKey();
+    }
+
+    @Benchmark
+    public String getKeyAccented() {
+        return accented.getKey();
+    }
+
+}
@@ -0,0 +1,105 @@
+package app.benchmarks;
+
+/**
+ * Measures the cost of cleaning and keying one contact, as paid for every
+ * line of a bulk import: the regex-based checks Contact used to run (copied
+ * here as the baseline) against the current single-pass rules.
+ */
+
+import app.models.Contact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContactNormalizationBenchmark {
+
+    // a mix of the inputs a bulk import sees: clean, dirty and invalid fields
+    private final String[][] contacts = {
+            {"Nate Vojtik", "6306151042", "npvojtik@gmail.com"},
+            {"N'ate V2ojtik", "(630) 615-1042", "nate@example.com"},
+            {"Mary-Jane O'Neil", "630-615-1042", "mj@example.org"},
+            {"Josh Miller", "(630)6151042", "not an email"},
+            {"Ann Lee", "63061510", "ann@lee.io"},
+    };
+
+    private int next;
+
+    private String[] nextContact() {
+        String[] contact = contacts[next];
+        next = (next + 1) % contacts.length;
+        return contact;
+    }
+
+    @Benchmark
+    public void legacyRegex(Blackhole blackhole) {
+        String[] contact = nextContact();
+        String name = LegacyContact.cleanName(contact[0]);
+        blackhole.consume(name);
+        blackhole.consume(LegacyContact.cleanPhone(contact[1]));
+        blackhole.consume(LegacyContact.cleanEmail(contact[2]));
+        blackhole.consume(LegacyContact.getKey(name));
+    }
+
+    @Benchmark
+    public void singlePassRules(Blackhole blackhole) {
+        String[] contact = nextContact();
+        Contact cleaned = new Contact(contact[0], contact[1], contact[2]);
+        blackhole.consume(cleaned);
+        blackhole.consume(cleaned.getKey());
+    }
+
+    /**
+     * The clean* and getKey implementations Contact used before the
+     * validation rules, kept verbatim as the baseline.
+     */
+    static final class LegacyContact {
+
+        static String cleanName(String name) {
+            if (name != null) {
+                return name.replaceAll("[^a-zA-z\\s]", "");
+            } else {
+                return null;
+            }
+        }
+
+        static String cleanPhone(String phone) {
+            String output = null;
+            if (phone != null) {
+                phone.replaceAll("/[^0-9()-]/", "");
+                String pattern = "\\d{10}|(?:\\d{3}-){2}\\d{4}|\\(\\d{3}\\)\\s?\\d{3}-?\\d{4}";
+                if (phone.matches(pattern)) {
+                    output = phone;
+                }
+            }
+            return output;
+        }
+
+        static String cleanEmail(String email) {
+            String pattern = "^(.+)@(.+)$";
+            if (email != null && email.matches(pattern)) {
+                return email;
+            }
+            return null;
+        }
+
+        static String getKey(String name) {
+            return name.toLowerCase().replaceAll("[^a-z]", "");
+        }
+    }
+
+}
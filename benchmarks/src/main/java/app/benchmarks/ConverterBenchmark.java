@@ -0,0 +1,80 @@
+package app.benchmarks;
+
+/**
+ * Throughput of the JSON conversions every request goes through:
+ * ContactJsonConverter in both directions (its from is Contact.fromJsonString,
+ * which deserializes into a temporary Contact and copies it through
+ * Contact(Contact)), compared with ContactStreamingConverter, including its
+ * reads and writes of Elasticsearch sources as bytes.
+ * Run with -prof gc for the allocation rate per operation.
+ */
+
+import app.converter.ContactJsonConverter;
+import app.converter.ContactStreamingConverter;
+import app.models.Contact;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConverterBenchmark {
+
+    private final ContactJsonConverter converter = new ContactJsonConverter();
+    private final ContactStreamingConverter streaming = new ContactStreamingConverter();
+    private final Contact contact = new Contact("Nate Vojtik", "(630) 615-1042", "npvojtik@gmail.com");
+    private final String json = "{\"name\":\"Nate Vojtik\",\"phone\":\"(630) 615-1042\",\"email\":\"npvojtik@gmail.com\"}";
+    private final BytesReference source = new BytesArray(json.getBytes(StandardCharsets.UTF_8));
+
+    @Benchmark
+    public String converterTo() {
+        return converter.to(contact);
+    }
+
+    @Benchmark
+    public Contact converterFrom() {
+        return converter.from(json);
+    }
+
+    // what ElasticSearchDAO did for each hit with ContactJsonConverter
+    @Benchmark
+    public Contact converterFromSourceString() {
+        return converter.from(source.utf8ToString());
+    }
+
+    @Benchmark
+    public String streamingTo() {
+        return streaming.to(contact);
+    }
+
+    @Benchmark
+    public Contact streamingFrom() {
+        return streaming.from(json);
+    }
+
+    @Benchmark
+    public BytesReference streamingToSource() {
+        return streaming.toSource(contact);
+    }
+
+    @Benchmark
+    public Contact streamingFromSource() {
+        return streaming.fromSource(source);
+    }
+
+}
@@ -0,0 +1,102 @@
+package app.benchmarks;
+
+/**
+ * Time for a DuplicateIndex of @contacts generated contacts to check one new
+ * contact (matches) and to find every pair of duplicates (findAll, on all
+ * processors). One contact in ten is a near-duplicate of another: a dropped
+ * letter, different punctuation, or the same phone with its digits formatted
+ * differently. Names are drawn from small lists, so the name blocks grow with
+ * @contacts as common names do; findAll should grow about linearly with it
+ * rather than with its square.
+ */
+
+import app.dedup.ContactFingerprint;
+import app.dedup.DuplicateIndex;
+import app.dedup.DuplicateMatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DuplicateIndexBenchmark {
+
+    private static final String[] FIRST = {"james", "mary", "john", "patricia", "robert", "jennifer", "michael",
+            "linda", "william", "elizabeth", "david", "barbara", "richard", "susan", "joseph", "jessica", "thomas",
+            "sarah", "charles", "karen", "jose", "nate", "jake", "ann", "evan"};
+    private static final String[] LAST = {"smith", "johnson", "williams", "brown", "jones", "garcia", "miller",
+            "davis", "rodriguez", "martinez", "hernandez", "lopez", "gonzalez", "wilson", "anderson", "taylor",
+            "moore", "jackson", "martin", "lee", "vojtik", "evans", "doe", "white", "harris"};
+
+    @Param({"10000", "100000"})
+    public int contacts;
+
+    private DuplicateIndex index;
+    private ContactFingerprint probe;
+    private ExecutorService workers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        Random random = new Random(42);
+        index = new DuplicateIndex(0.85, 100);
+        for (int i = 0; i < contacts; i++) {
+            String name = FIRST[random.nextInt(FIRST.length)] + " " + LAST[random.nextInt(LAST.length)]
+                    + suffix(i);
+            String phone = String.format("%010d", 2000000000L + random.nextInt(1000000000));
+            index.add(new ContactFingerprint("c" + i, name, phone, "c" + i + "@example.com"));
+            if (i % 10 == 0) {
+                String variant = name.charAt(0) + name.substring(2);
+                String sameDigits = "(" + phone.substring(0, 3) + ") " + phone.substring(3, 6) + "-"
+                        + phone.substring(6);
+                index.add(new ContactFingerprint("d" + i, variant, sameDigits, null));
+            }
+        }
+        probe = new ContactFingerprint("probe", "Miller, Jose", null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workers.shutdownNow();
+    }
+
+    // a letter-only suffix so that most names are distinct, as in a real address book
+    private static String suffix(int i) {
+        StringBuilder suffix = new StringBuilder(" ");
+        for (int n = i; n > 0; n /= 26) {
+            suffix.append((char) ('a' + n % 26));
+        }
+        return suffix.toString();
+    }
+
+    @Benchmark
+    public List<DuplicateMatch> matches() {
+        return index.matches(probe);
+    }
+
+    @Benchmark
+    public List<DuplicateMatch> findAll() {
+        return index.findAll(workers, Runtime.getRuntime().availableProcessors());
+    }
+
+}
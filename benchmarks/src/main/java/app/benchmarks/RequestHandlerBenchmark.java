@@ -0,0 +1,91 @@
+package app.benchmarks;
+
+/**
+ * Throughput of SparkContactRequestHandler with the database replaced by a
+ * StubDAO, i.e. the cost the service adds to each request on top of the
+ * backend: key lookups, a page of search results as a List of JSON strings
+ * or streamed as one array, and parseResponse on its own.
+ */
+
+import app.converter.ContactJsonConverter;
+import app.dao.ContactDAOResponse;
+import app.dao.DAOResponse;
+import app.models.Contact;
+import app.requesthandler.SparkContactRequestHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestHandlerBenchmark {
+
+    private static final int CONTACTS = 1000;
+
+    private StubDAO dao;
+    private SparkContactRequestHandler handler;
+    private DAOResponse<Contact> found;
+    private DAOResponse<Contact> notFound;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(16 * 1024);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        dao = new StubDAO(CONTACTS);
+        handler = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+        found = dao.getByKey(dao.keyAt(0));
+        notFound = new ContactDAOResponse("Record not found");
+    }
+
+    @Benchmark
+    public String parseResponseFound() {
+        return handler.parseResponse(found);
+    }
+
+    @Benchmark
+    public String parseResponseNotFound() {
+        return handler.parseResponse(notFound);
+    }
+
+    @Benchmark
+    public String getByKey() {
+        next = (next + 1) % CONTACTS;
+        return handler.get(dao.keyAt(next));
+    }
+
+    @Benchmark
+    public List<String> getByQuery(Page page) {
+        return handler.get("*", page.pageSize, 0);
+    }
+
+    @Benchmark
+    public int getByQueryStreamed(Page page) throws IOException {
+        output.reset();
+        handler.get("*", page.pageSize, 0, output);
+        return output.size();
+    }
+
+    @State(Scope.Thread)
+    public static class Page {
+        @Param({"10", "100"})
+        private int pageSize;
+    }
+
+}
@@ -0,0 +1,94 @@
+package app.benchmarks;
+
+/**
+ * An in-memory database access object that answers every call from contacts
+ * prepared up front, so that benchmarks of the layers above the DAO measure
+ * only those layers. Queries ignore the query string and return the first
+ * @pageSize contacts.
+ */
+
+import app.converter.ContactJsonConverter;
+import app.dao.ContactDAOResponse;
+import app.dao.DAO;
+import app.dao.DAOResponse;
+import app.dao.SourceSink;
+import app.models.Contact;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StubDAO implements DAO<Contact, DAOResponse<Contact>> {
+
+    private static final DAOResponse<Contact> NOT_FOUND = new ContactDAOResponse("Record not found");
+
+    private final Map<String, DAOResponse<Contact>> byKey = new HashMap<>();
+    private final List<DAOResponse<Contact>> all = new ArrayList<>();
+    private final List<byte[]> sources = new ArrayList<>();
+
+    /**
+     * @param size = the number of generated contacts to hold.
+     */
+    public StubDAO(int size) {
+        ContactJsonConverter converter = new ContactJsonConverter();
+        for (int i = 0; i < size; i++) {
+            Contact contact = new Contact("Contact " + letters(i), String.format("%010d", i),
+                    "contact" + i + "@example.com");
+            DAOResponse<Contact> response = new ContactDAOResponse(contact);
+            byKey.put(contact.getKey(), response);
+            all.add(response);
+            sources.add(converter.to(contact).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // names may only hold letters, so spell the index out in base 26
+    private static String letters(int i) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return name.toString();
+    }
+
+    /**
+     * @return the key of the @i'th contact held.
+     */
+    public String keyAt(int i) {
+        return all.get(i).payload().getKey();
+    }
+
+    public DAOResponse<Contact> getByKey(String key) {
+        DAOResponse<Contact> response = byKey.get(key);
+        return response == null ? NOT_FOUND : response;
+    }
+
+    public List<DAOResponse<Contact>> getByQuery(String query, int pageSize, int page) {
+        return new ArrayList<>(all.subList(Math.min(page, all.size()), Math.min(page + pageSize, all.size())));
+    }
+
+    public DAOResponse<Contact> getSourcesByQuery(String query, int pageSize, int page, SourceSink sink)
+            throws IOException {
+        for (int i = page; i < Math.min(page + pageSize, sources.size()); i++) {
+            byte[] source = sources.get(i);
+            sink.accept(source, 0, source.length);
+        }
+        return new ContactDAOResponse(null, true, null, null);
+    }
+
+    public DAOResponse<Contact> post(Contact toPost) {
+        return new ContactDAOResponse(toPost);
+    }
+
+    public DAOResponse<Contact> put(String key, Contact toUpdate) {
+        return new ContactDAOResponse(toUpdate);
+    }
+
+    public DAOResponse<Contact> delete(String key) {
+        return getByKey(key);
+    }
+
+}
@@ -0,0 +1,78 @@
+package app.benchmarks;
+
+/**
+ * Time for Jetty's platform thread pool (as Spark creates it, 200 threads)
+ * and a VirtualThreadPool to finish a burst of @requests requests that each
+ * block for BLOCKING_MILLIS, as a request waiting on the synchronous
+ * Elasticsearch client does. The platform pool can only block 200 requests
+ * at a time, so the burst takes about requests / 200 rounds; the virtual pool
+ * blocks them all at once. The virtual variant needs Java 21 and fails its
+ * setup on older JVMs.
+ */
+
+import app.VirtualThreadPool;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadPoolBenchmark {
+
+    private static final long BLOCKING_MILLIS = 5;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"200", "2000", "10000"})
+    public int requests;
+
+    private ThreadPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        pool = threads.equals("virtual") ? new VirtualThreadPool() : new QueuedThreadPool(200, 8);
+        ((LifeCycle) pool).start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ((LifeCycle) pool).stop();
+    }
+
+    @Benchmark
+    public void blockingBurst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(requests);
+        for (int i = 0; i < requests; i++) {
+            pool.execute(() -> {
+                try {
+                    Thread.sleep(BLOCKING_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,159 @@
+package app;
+
+/**
+ * Answers requests from futures: each request is suspended and its Jetty
+ * thread returned to the pool, and once the future completes its status,
+ * ETag and Warning headers and JSON body are written from a small pool of
+ * responder threads. A future that fails is answered with 500 and its error,
+ * and one that has not completed within the timeout with 503.
+ * Spark writes a route's return value, and so commits the response, as soon
+ * as the route returns; requests must therefore reach Spark through
+ * AsyncResponder.Handler, which discards that write once the request has
+ * been suspended.
+ */
+
+import app.requesthandler.TaggedResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class AsyncResponder {
+
+    static final int INTERNAL_SERVER_ERROR = 500;
+    static final int SERVICE_UNAVAILABLE = 503;
+
+    private final Executor executor;
+    private final long timeoutMillis;
+
+    /**
+     * @param executor = runs the writes of completed responses.
+     * @param timeoutMillis = how long a request may stay suspended.
+     */
+    AsyncResponder(Executor executor, long timeoutMillis) {
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Suspends @request until @response completes and then writes it.
+     * @param done = run once the response has been written, or abandoned
+     *        because the request timed out.
+     */
+    void respond(HttpServletRequest request, CompletableFuture<TaggedResponse<String>> response, Runnable done) {
+        AsyncContext async = request.startAsync();
+        async.setTimeout(timeoutMillis);
+        // set by whichever of the future and the timeout comes first
+        AtomicBoolean answered = new AtomicBoolean();
+        async.addListener(new AsyncListener() {
+            public void onTimeout(AsyncEvent event) {
+                if (answered.compareAndSet(false, true)) {
+                    write(async, new TaggedResponse<>(SERVICE_UNAVAILABLE, "{Timed out}", null));
+                    done.run();
+                }
+            }
+
+            public void onComplete(AsyncEvent event) { }
+
+            public void onError(AsyncEvent event) { }
+
+            public void onStartAsync(AsyncEvent event) { }
+        });
+
+        response.whenCompleteAsync((result, error) -> {
+            if (!answered.compareAndSet(false, true)) {
+                return;
+            }
+            if (error == null) {
+                write(async, result);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                write(async, new TaggedResponse<>(INTERNAL_SERVER_ERROR, "{" + cause.getMessage() + "}", null));
+            }
+            done.run();
+        }, executor);
+    }
+
+    private static void write(AsyncContext async, TaggedResponse<String> response) {
+        HttpServletResponse output = (HttpServletResponse) async.getResponse();
+        try {
+            output.setStatus(response.status());
+            output.setContentType("application/json; charset=utf-8");
+            if (response.etag() != null) {
+                output.setHeader("ETag", response.etag());
+            }
+            if (response.stale()) {
+                output.setHeader("Warning", "110 - \"Response is Stale\"");
+            }
+            output.getOutputStream().write(response.body().getBytes(StandardCharsets.UTF_8));
+            async.complete();
+        } catch (IOException | IllegalStateException e) {
+            // the client went away or the request timed out; nothing left to write to
+        }
+    }
+
+    /**
+     * Passes each request on with a response that, once the request has been
+     * suspended, reports itself committed and ignores its content type and
+     * anything written, flushed or closed, leaving the real response open for
+     * respond() to write, possibly while the route is still returning.
+     */
+    static class Handler extends HandlerWrapper {
+
+        private static final ServletOutputStream DISCARD = new ServletOutputStream() {
+            public boolean isReady() {
+                return true;
+            }
+
+            public void setWriteListener(WriteListener listener) { }
+
+            public void write(int b) { }
+        };
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+            super.handle(target, baseRequest, request, new HttpServletResponseWrapper(response) {
+                // Spark only writes to a response that is not yet committed
+                @Override
+                public boolean isCommitted() {
+                    return request.isAsyncStarted() || super.isCommitted();
+                }
+
+                @Override
+                public void setContentType(String type) {
+                    if (!request.isAsyncStarted()) {
+                        super.setContentType(type);
+                    }
+                }
+
+                @Override
+                public ServletOutputStream getOutputStream() throws IOException {
+                    return request.isAsyncStarted() ? DISCARD : super.getOutputStream();
+                }
+
+                @Override
+                public void flushBuffer() throws IOException {
+                    if (!request.isAsyncStarted()) {
+                        super.flushBuffer();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -1,50 +1,682 @@
 package app;
 
+import app.admission.AdaptiveLimiter;
+import app.config.Config;
+import app.converter.ContactBinaryConverter;
 import app.converter.ContactJsonConverter;
+import app.converter.ContactStreamingConverter;
 import app.converter.Converter;
+import app.converter.MetricsConverter;
+import app.dao.BatchingDAO;
+import app.dao.CachingDAO;
+import app.dao.ChangeFeedDAO;
+import app.dao.CircuitBreaker;
+import app.dao.ContactDAOResponse;
 import app.dao.DAO;
 import app.dao.DAOResponse;
+import app.dao.DeduplicatingDAO;
+import app.dao.ElasticSearchClientConfig;
 import app.dao.ElasticSearchDAO;
+import app.dao.ElasticSearchIndexManager;
+import app.dao.EmbeddedDAO;
+import app.dao.MetricsDAO;
+import app.dao.ResilientDAO;
+import app.dao.SuggestingDAO;
+import app.dedup.ContactFingerprint;
+import app.dedup.DuplicateIndex;
+import app.metrics.LatencyHistogram;
+import app.metrics.MetricsRegistry;
 import app.models.Contact;
-import app.requesthandler.RequestHandler;
+import app.requesthandler.ChangeFeedRequestHandler;
+import app.requesthandler.DuplicateRequestHandler;
 import app.requesthandler.SparkContactRequestHandler;
+import app.requesthandler.TaggedResponse;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.elasticsearch.action.support.WriteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import static spark.Spark.*;
 
 public class Main {
 
+    private static final Logger LOG = LoggerFactory.getLogger(Main.class);
+    private static final String HTTP_LATENCY = "contacts_http_latency_seconds";
+    private static final String HTTP_LATENCY_HELP = "Time taken to handle requests, by route.";
+    private static final String START_ATTRIBUTE = "contacts.start";
+    private static final String LATENCY_ATTRIBUTE = "contacts.latency";
+    private static final String ADMISSION_ATTRIBUTE = "contacts.admission";
+    private static final String[] BUDGETS = {"read", "search", "write"};
+
+    private static final MetricsRegistry metrics = new MetricsRegistry();
+    // budget name -> limiter; empty if admission control is disabled
+    private static final Map<String, AdaptiveLimiter> budgets = new LinkedHashMap<>();
+
     public static void main(String[] args) {
 
-        Converter<Contact, String> converter = new ContactJsonConverter();
-        DAO<Contact, DAOResponse<Contact>> dao = new ElasticSearchDAO(converter);
-        RequestHandler<String, String> handler = new SparkContactRequestHandler(dao, converter);
+        Converter<Contact, String> converter = new MetricsConverter<>(createConverter(), metrics);
+        DAO<Contact, DAOResponse<Contact>> backend = createDAO(converter);
+        DAO<Contact, DAOResponse<Contact>> dao = new MetricsDAO<>(backend, metrics);
+        CircuitBreaker breaker = null;
+        if (Config.getBoolean("contacts.circuit.enabled", true)) {
+            breaker = new CircuitBreaker(Config.getInt("contacts.circuit.failureThreshold", 5),
+                    Config.getLong("contacts.circuit.openMillis", 5000), TimeUnit.MILLISECONDS);
+            CircuitBreaker circuit = breaker;
+            metrics.gauge("contacts_circuit_open", "1 while the circuit breaker is refusing backend calls.",
+                    () -> circuit.state() == CircuitBreaker.State.CLOSED ? 0 : 1);
+            dao = new ResilientDAO<>(dao, Contact::getKey, ContactDAOResponse::new, ContactDAOResponse::stale,
+                    breaker, Config.getInt("contacts.circuit.staleMaxSize", 10000));
+        }
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> feed = null;
+        if (Config.getBoolean("contacts.changes.enabled", false)) {
+            // below the batching layer, so that batched posts are recorded one by one
+            feed = new ChangeFeedDAO<>(dao, Contact::getKey, converter,
+                    Paths.get(Config.get("contacts.changes.dir", "changes"), "changes.log"),
+                    Config.getInt("contacts.changes.retained", 10000),
+                    Config.getLong("contacts.changes.maxLogMegabytes", 64) * 1024 * 1024);
+            dao = feed;
+        }
+        BatchingDAO<Contact, DAOResponse<Contact>> batching = null;
+        int postBatchSize = Config.getInt("contacts.postBatch.maxSize", 0);
+        if (postBatchSize > 0) {
+            batching = new BatchingDAO<>(dao, postBatchSize,
+                    Config.getLong("contacts.postBatch.lingerMillis", 5),
+                    Config.getInt("contacts.postBatch.concurrency", 2));
+            dao = batching;
+        }
+        SuggestingDAO<Contact, DAOResponse<Contact>> suggesting = null;
+        if (Config.getBoolean("contacts.suggest.inProcess", false)) {
+            suggesting = new SuggestingDAO<>(dao, Contact::getKey,
+                    Contact::getName, Config.getLong("contacts.suggest.rebuildIntervalSeconds", 300), TimeUnit.SECONDS);
+            dao = suggesting;
+        }
+        DeduplicatingDAO<Contact, DAOResponse<Contact>> dedup = null;
+        if (Config.getBoolean("contacts.dedup.enabled", false)) {
+            double threshold = Config.getDouble("contacts.dedup.threshold", 0.85);
+            int window = Config.getInt("contacts.dedup.window", 100);
+            dedup = new DeduplicatingDAO<>(dao,
+                    contact -> new ContactFingerprint(contact.getKey(), contact.getName(), contact.getPhone(),
+                            contact.getEmail()),
+                    ContactDAOResponse::new, () -> new DuplicateIndex(threshold, window),
+                    Config.getBoolean("contacts.dedup.rejectOnPost", false),
+                    Config.getLong("contacts.dedup.rebuildIntervalSeconds", 300), TimeUnit.SECONDS);
+            metrics.gauge("contacts_dedup_duplicate_posts", "Posts found to have likely duplicates since startup.",
+                    dedup::duplicatePosts);
+            dao = dedup;
+        }
+        int cacheSize = Config.getInt("contacts.cache.maxSize", 0);
+        if (cacheSize > 0) {
+            CachingDAO<Contact, DAOResponse<Contact>> cache = new CachingDAO<>(dao, Contact::getKey, cacheSize,
+                    Config.getLong("contacts.cache.ttlSeconds", 60), TimeUnit.SECONDS);
+            metrics.gauge("contacts_cache_hits", "Lookups served from the cache since startup.", cache::hits);
+            metrics.gauge("contacts_cache_misses", "Lookups passed through to the backend since startup.",
+                    cache::misses);
+            metrics.gauge("contacts_cache_evictions", "Cache entries dropped as full or expired since startup.",
+                    cache::evictions);
+            metrics.gauge("contacts_cache_size", "Contacts currently cached.", cache::size);
+            dao = cache;
+        }
+        // a single hook, as hooks run concurrently: the queued posts are sent
+        // through the change feed before it closes, and the backend goes last
+        Closeable[] layers = {batching, feed, suggesting, dedup, (Closeable) backend};
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> closeAll(layers), "contacts-shutdown"));
+        SparkContactRequestHandler handler = new SparkContactRequestHandler(dao, converter,
+                Config.getInt("contacts.bulk.batchSize", 1000));
+        if (Config.getBoolean("contacts.admission.enabled", true)) {
+            createBudgets();
+        }
 
-        get("/contact/:name", (req, res) -> {
-            String key = req.params(":name");
-            return handler.get(key);
+        configureServer();
+
+        // registered before /contact/:name so that _export, _changes etc. are not taken for keys
+        get("/contact/_export", timed("GET", "/contact/_export", admitted("search", false, (req, res) -> {
+            res.type("application/x-ndjson");
+            Writer output = new BufferedWriter(new OutputStreamWriter(res.raw().getOutputStream(),
+                    StandardCharsets.UTF_8));
+            handler.export(output);
+            output.flush();
+            return "";
+        })));
+
+        post("/contact/_bulk", timed("POST", "/contact/_bulk", admitted("write", false, (req, res) -> {
+            res.type("application/json");
+            BufferedReader input = new BufferedReader(new InputStreamReader(rawInputStream(req.raw()),
+                    StandardCharsets.UTF_8));
+            return handler.bulk(input);
+        })));
+
+        post("/contact/_mget", timed("POST", "/contact/_mget", admitted("read", true, (req, res) -> {
+            return handler.getAll(req.body());
+        })));
+
+        post("/contact/_search", timed("POST", "/contact/_search", admitted("search", true, (req, res) -> {
+            return handler.search(req.body());
+        })));
+
+        get("/contact/_suggest", timed("GET", "/contact/_suggest", admitted("search", true, (req, res) -> {
+            String prefix = req.queryParams("prefix");
+            String size = req.queryParams("size");
+            try {
+                return handler.suggest(prefix == null ? "" : prefix, size == null ? 10 : Integer.parseInt(size));
+            } catch (NumberFormatException e) {
+                return "{Invalid size: " + size + "}";
+            }
+        })));
+
+        if (dedup != null) {
+            registerDuplicates(new DuplicateRequestHandler(dedup, converter,
+                    Config.getInt("contacts.dedup.parallelism", Runtime.getRuntime().availableProcessors())));
+        }
+
+        if (feed != null) {
+            registerChangeFeed(new ChangeFeedRequestHandler(feed,
+                    TimeUnit.SECONDS.toMillis(Config.getLong("contacts.changes.heartbeatSeconds", 15))));
+        }
+
+        // never limited, so that it answers while the backend is overloaded
+        CircuitBreaker circuit = breaker;
+        get("/health", (req, res) -> {
+            res.type("application/json");
+            StringBuilder output = new StringBuilder("{\"status\":\"ok\",");
+            if (circuit != null) {
+                output.append("\"circuit\":\"").append(circuit.state().name().toLowerCase(Locale.ROOT)).append("\",");
+            }
+            output.append("\"budgets\":{");
+            for (Map.Entry<String, AdaptiveLimiter> budget : budgets.entrySet()) {
+                if (output.charAt(output.length() - 1) != '{') {
+                    output.append(',');
+                }
+                output.append('"').append(budget.getKey()).append("\":{\"limit\":").append(budget.getValue().limit())
+                        .append(",\"inFlight\":").append(budget.getValue().inFlight()).append('}');
+            }
+            return output.append("}}").toString();
+        });
+
+        get("/metrics", (req, res) -> {
+            res.type("text/plain; version=0.0.4; charset=utf-8");
+            StringWriter output = new StringWriter();
+            metrics.write(output);
+            return output.toString();
         });
 
-        get("/contact", (req, res) -> {
+        if (Config.getBoolean("contacts.async", false)) {
+            registerAsyncRoutes(handler);
+        } else {
+            registerRoutes(handler);
+        }
+    }
+
+    private static void registerRoutes(SparkContactRequestHandler handler) {
+
+        get("/contact/:name", timed("GET", "/contact/:name", admitted("read", true,
+                (req, res) -> getContact(handler, req, res))));
+
+        get("/contact", timed("GET", "/contact", admitted("search", true, (req, res) -> {
             String query = req.queryParams("query");
             int pageSize = Integer.parseInt(req.queryParams("pageSize"));
+            String cursor = req.queryParams("cursor");
+            if (cursor != null) {
+                return handler.get(query, pageSize, cursor);
+            }
             int page = Integer.parseInt(req.queryParams("page"));
-            return handler.get(query, pageSize, page);
-        });
+            res.type("application/json");
+            OutputStream output = res.raw().getOutputStream();
+            handler.get(query, pageSize, page, output);
+            output.flush();
+            return "";
+        })));
 
-        post("/contact", (req, res) -> {
+        post("/contact", timed("POST", "/contact", admitted("write", true, (req, res) -> {
             String json = req.body();
             return handler.post(json);
-        });
+        })));
 
-        put("/contact/:name", (req, res) -> {
+        put("/contact/:name", timed("PUT", "/contact/:name", admitted("write", true, (req, res) -> {
             String key = req.params(":name");
             String json = req.body();
-            return handler.put(key, json);
-        });
+            return tagged(res, handler.put(key, json, req.headers("If-Match")));
+        })));
+
+        delete("/contact/:name", timed("DELETE", "/contact/:name", admitted("write", true, (req, res) -> {
+            String key = req.params(":name");
+            return tagged(res, handler.delete(key, req.headers("If-Match")));
+        })));
+    }
+
+    /**
+     * Sets up the Jetty server from the contacts.http settings: its port, gzip
+     * compression, and whether requests run on Spark's pool of platform
+     * threads ("platform", the default) or each on its own virtual thread
+     * ("virtual", which needs Java 21).
+     */
+    private static void configureServer() {
+        port(Config.getInt("contacts.http.port", 4567));
+        boolean gzip = Config.getBoolean("contacts.http.gzip", true);
+        String threads = Config.get("contacts.http.threads", "platform");
+        ThreadPool pool;
+        switch (threads) {
+            case "platform":
+                pool = null;
+                break;
+            case "virtual":
+                pool = new VirtualThreadPool();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown contacts.http.threads mode: " + threads);
+        }
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory(new ServerFactory(
+                gzip ? Config.getInt("contacts.http.gzipMinBytes", 1024) : ServerFactory.NO_GZIP, pool)));
+    }
+
+    /**
+     * Registers GET /contact/_changes, which streams the change feed as
+     * Server-Sent Events from the after parameter or Last-Event-ID header. Each
+     * stream holds a Jetty thread for as long as it is open, so the streams
+     * open at once are capped by the "changes" budget, whose limit is fixed
+     * at contacts.changes.maxStreams whether or not admission control is
+     * enabled: how long a stream lasts is up to the client, not the load.
+     */
+    private static void registerChangeFeed(ChangeFeedRequestHandler changes) {
+        long maxStream = Config.getLong("contacts.changes.maxStreamSeconds", 0);
+        int maxStreams = Config.getInt("contacts.changes.maxStreams", 16);
+        addBudget("changes", new AdaptiveLimiter(maxStreams, maxStreams, maxStreams, 1));
+        get("/contact/_changes", timed("GET", "/contact/_changes", admitted("changes", false, (req, res) -> {
+            long after;
+            try {
+                after = changes.resumeFrom(req.queryParams("after"), req.headers("Last-Event-ID"));
+            } catch (IllegalArgumentException e) {
+                return "{Invalid after: " + e.getMessage() + "}";
+            }
+            res.type("text/event-stream; charset=utf-8");
+            res.header("Cache-Control", "no-cache");
+            Writer output = new BufferedWriter(new OutputStreamWriter(res.raw().getOutputStream(),
+                    StandardCharsets.UTF_8));
+            try {
+                changes.stream(after, output, maxStream, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                // the client went away
+            }
+            return "";
+        })));
+    }
+
+    /**
+     * Registers POST /contact/_duplicates, which lists the likely duplicates
+     * of the contact in its body, and GET /contact/_duplicates, which streams
+     * every pair of likely duplicates in the maintained index as
+     * newline-delimited JSON.
+     */
+    private static void registerDuplicates(DuplicateRequestHandler duplicates) {
+        post("/contact/_duplicates", timed("POST", "/contact/_duplicates", admitted("search", true, (req, res) -> {
+            res.type("application/json");
+            return duplicates.check(req.body());
+        })));
+
+        get("/contact/_duplicates", timed("GET", "/contact/_duplicates", admitted("search", false, (req, res) -> {
+            res.type("application/x-ndjson");
+            Writer output = new BufferedWriter(new OutputStreamWriter(res.raw().getOutputStream(),
+                    StandardCharsets.UTF_8));
+            duplicates.findAll(output);
+            output.flush();
+            return "";
+        })));
+    }
+
+    /**
+     * Registers the same routes as registerRoutes, but each one suspends its
+     * request and returns the Jetty thread to the pool while the database works;
+     * the response is written from a small responder pool once the handler's
+     * future completes.
+     */
+    private static void registerAsyncRoutes(SparkContactRequestHandler handler) {
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Config.getInt("contacts.async.responderThreads", 4), r -> {
+                    Thread thread = new Thread(r, "contacts-async-responder");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        AsyncResponder responder = new AsyncResponder(executor, Config.getLong("contacts.async.timeoutMillis", 30000));
+
+        // binary encodings and conditional writes have no asynchronous variants yet, so
+        // they are served synchronously
+        get("/contact/:name", timed("GET", "/contact/:name", admitted("read", true, (req, res) -> {
+            String key = req.params(":name");
+            if (ContactBinaryConverter.negotiate(req.headers("Accept")) != null) {
+                return getContact(handler, req, res);
+            }
+            res.raw().addHeader("Vary", "Accept");
+            return respondTagged(req, handler.getAsync(key, req.headers("If-None-Match")), responder);
+        })));
 
-        delete("/contact/:name", (req, res) -> {
+        get("/contact", timed("GET", "/contact", admitted("search", true, (req, res) -> {
+            String query = req.queryParams("query");
+            int pageSize = Integer.parseInt(req.queryParams("pageSize"));
+            String cursor = req.queryParams("cursor");
+            if (cursor != null) { // cursor pages have no asynchronous variant yet
+                return handler.get(query, pageSize, cursor);
+            }
+            int page = Integer.parseInt(req.queryParams("page"));
+            return respondAsync(req, handler.getAsync(query, pageSize, page), responder);
+        })));
+
+        post("/contact", timed("POST", "/contact", admitted("write", true, (req, res) -> {
+            String json = req.body();
+            return respondAsync(req, handler.postAsync(json), responder);
+        })));
+
+        put("/contact/:name", timed("PUT", "/contact/:name", admitted("write", true, (req, res) -> {
+            String key = req.params(":name");
+            String json = req.body();
+            if (req.headers("If-Match") != null) {
+                return tagged(res, handler.put(key, json, req.headers("If-Match")));
+            }
+            return respondAsync(req, handler.putAsync(key, json), responder);
+        })));
+
+        delete("/contact/:name", timed("DELETE", "/contact/:name", admitted("write", true, (req, res) -> {
             String key = req.params(":name");
-            return handler.delete(key);
+            if (req.headers("If-Match") != null) {
+                return tagged(res, handler.delete(key, req.headers("If-Match")));
+            }
+            return respondAsync(req, handler.deleteAsync(key), responder);
+        })));
+    }
+
+    /**
+     * Serves GET /contact/:name as JSON, or in a binary encoding if the Accept
+     * header asks for one, honouring If-None-Match.
+     */
+    private static Object getContact(SparkContactRequestHandler handler, Request req, Response res) {
+        String key = req.params(":name");
+        String ifNoneMatch = req.headers("If-None-Match");
+        ContactBinaryConverter encoding = ContactBinaryConverter.negotiate(req.headers("Accept"));
+        res.raw().addHeader("Vary", "Accept");
+        if (encoding == null) {
+            return tagged(res, handler.get(key, ifNoneMatch));
+        }
+        res.type(encoding.mediaType());
+        return tagged(res, handler.get(key, ifNoneMatch, encoding));
+    }
+
+    /**
+     * Sets the status, ETag and (for stale contacts) Warning headers of a
+     * conditional request's response.
+     * @return the body to send.
+     */
+    private static <T> T tagged(Response res, TaggedResponse<T> response) {
+        res.status(response.status());
+        if (response.etag() != null) {
+            res.header("ETag", response.etag());
+        }
+        if (response.stale()) {
+            res.header("Warning", "110 - \"Response is Stale\"");
+        }
+        return response.body();
+    }
+
+    /**
+     * Suspends the request until @body completes and answers it with @body
+     * as JSON; see AsyncResponder.
+     */
+    private static Object respondAsync(Request req, CompletableFuture<?> body, AsyncResponder responder) {
+        return respondTagged(req, body.thenApply(result -> new TaggedResponse<>(TaggedResponse.OK,
+                String.valueOf(result), null)), responder);
+    }
+
+    /**
+     * Suspends the request until @response completes and answers it with its
+     * status, headers and body; see AsyncResponder.
+     */
+    private static Object respondTagged(Request req, CompletableFuture<TaggedResponse<String>> response,
+                                        AsyncResponder responder) {
+        Long start = req.attribute(START_ATTRIBUTE);
+        LatencyHistogram latency = req.attribute(LATENCY_ATTRIBUTE);
+        AdaptiveLimiter budget = req.attribute(ADMISSION_ATTRIBUTE);
+        responder.respond(req.raw(), response, () -> {
+            if (latency != null) {
+                latency.recordSince(start);
+            }
+            if (budget != null) {
+                budget.release(System.nanoTime() - start);
+            }
         });
+        return "";
+    }
+
+    /**
+     * Wraps @route so that the time taken to handle each request is recorded
+     * under @method and @path (the route pattern, so that keys and queries do
+     * not create new series). Requests suspended by respondAsync are recorded
+     * when their response has been written instead.
+     */
+    private static Route timed(String method, String path, Route route) {
+        LatencyHistogram latency = metrics.histogram(HTTP_LATENCY, HTTP_LATENCY_HELP, "method", method, "route", path);
+        return (req, res) -> {
+            long start = System.nanoTime();
+            req.attribute(START_ATTRIBUTE, start);
+            req.attribute(LATENCY_ATTRIBUTE, latency);
+            try {
+                return route.handle(req, res);
+            } finally {
+                if (!req.raw().isAsyncStarted()) {
+                    latency.recordSince(start);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a limiter for each budget, each sized by the contacts.admission
+     * settings (contacts.admission.<budget>.maxLimit overriding the shared
+     * maxLimit), and exposes their limits and in-flight requests as gauges.
+     */
+    private static void createBudgets() {
+        int minLimit = Config.getInt("contacts.admission.minLimit", 4);
+        int initialLimit = Config.getInt("contacts.admission.initialLimit", 20);
+        int maxLimit = Config.getInt("contacts.admission.maxLimit", 50);
+        double tolerance = Config.getDouble("contacts.admission.latencyTolerance", 2.0);
+        for (String name : BUDGETS) {
+            int budgetMax = Config.getInt("contacts.admission." + name + ".maxLimit", maxLimit);
+            addBudget(name, new AdaptiveLimiter(Math.min(minLimit, budgetMax), Math.min(initialLimit, budgetMax),
+                    budgetMax, tolerance));
+        }
+    }
+
+    private static void addBudget(String name, AdaptiveLimiter budget) {
+        metrics.gauge("contacts_admission_limit", "Requests each budget currently admits at once.",
+                budget::limit, "budget", name);
+        metrics.gauge("contacts_admission_in_flight", "Requests admitted by each budget and not yet finished.",
+                budget::inFlight, "budget", name);
+        budgets.put(name, budget);
+    }
+
+    /**
+     * Wraps @route so that it only runs if the named budget has room for
+     * another request; otherwise it is refused at once with 503 Service
+     * Unavailable rather than waiting for a Jetty thread or the backend.
+     * Admitted requests hold their place until their response is written.
+     * @param sampled = whether the request's latency should adjust the
+     *        budget's limit; false for routes whose duration depends on the
+     *        size of the request, such as exports and bulk imports.
+     */
+    private static Route admitted(String name, boolean sampled, Route route) {
+        AdaptiveLimiter budget = budgets.get(name);
+        if (budget == null) {
+            return route;
+        }
+        LongAdder rejected = metrics.counter("contacts_http_rejected_total",
+                "Requests refused because their budget was full.", "budget", name);
+        return (req, res) -> {
+            if (!budget.tryAcquire()) {
+                rejected.increment();
+                res.status(503);
+                res.header("Retry-After", "1");
+                return "{Service overloaded}";
+            }
+            long start = System.nanoTime();
+            try {
+                if (sampled) {
+                    req.attribute(ADMISSION_ATTRIBUTE, budget);
+                }
+                return route.handle(req, res);
+            } finally {
+                if (!req.raw().isAsyncStarted()) {
+                    if (sampled) {
+                        budget.release(System.nanoTime() - start);
+                    } else {
+                        budget.release();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Spark buffers the whole request body in memory the first time it is read;
+     * bulk imports read the underlying servlet stream instead so that memory use
+     * does not grow with the size of the upload.
+     */
+    private static InputStream rawInputStream(HttpServletRequest request) throws IOException {
+        while (request instanceof HttpServletRequestWrapper) {
+            request = (HttpServletRequest) ((HttpServletRequestWrapper) request).getRequest();
+        }
+        return request.getInputStream();
+    }
+
+    /**
+     * Creates the contacts index and alias if they do not exist yet, or moves
+     * the data to a new index if contacts.elasticsearch.reindex is set. As
+     * Elasticsearch may still be starting, failed attempts are retried; if
+     * none succeeds the service does not start, since its first write would
+     * otherwise create the index with a dynamic mapping.
+     * @throws IllegalStateException if every attempt failed.
+     */
+    private static void provisionIndex(ElasticSearchClientConfig config) {
+        int attempts = Math.max(1, Config.getInt("contacts.elasticsearch.provisionAttempts", 10));
+        long retryMillis = Config.getLong("contacts.elasticsearch.provisionRetryMillis", 3000);
+        for (int attempt = 1; ; attempt++) {
+            try (ElasticSearchIndexManager indices = new ElasticSearchIndexManager(config,
+                    Config.getInt("contacts.elasticsearch.shards", 1),
+                    Config.getInt("contacts.elasticsearch.replicas", 1))) {
+                if (Config.getBoolean("contacts.elasticsearch.reindex", false)) {
+                    indices.reindex();
+                } else {
+                    indices.ensureIndex();
+                }
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= attempts) {
+                    throw new IllegalStateException("Could not provision the contacts index in " + attempts
+                            + " attempts", e);
+                }
+                LOG.warn("Could not provision the contacts index (attempt {} of {}), retrying in {} ms",
+                        attempt, attempts, retryMillis, e);
+            }
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while provisioning the contacts index", e);
+            }
+        }
+    }
+
+    /**
+     * Selects the JSON converter from the contacts.converter setting:
+     * "streaming" (the default), which reads and writes stored documents as
+     * bytes with Jackson, or "gson" for the reflection-based Contact methods.
+     */
+    private static Converter<Contact, String> createConverter() {
+        String converter = Config.get("contacts.converter", "streaming");
+        switch (converter) {
+            case "streaming":
+                return new ContactStreamingConverter();
+            case "gson":
+                return new ContactJsonConverter();
+            default:
+                throw new IllegalArgumentException("Unknown contacts.converter: " + converter);
+        }
+    }
+
+    /**
+     * Closes the layers of the database access object in the given order,
+     * skipping those not configured and carrying on past any that fail.
+     */
+    private static void closeAll(Closeable... layers) {
+        for (Closeable layer : layers) {
+            if (layer == null) {
+                continue;
+            }
+            try {
+                layer.close();
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not close {}", layer.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    /**
+     * Selects the storage backend from the contacts.dao setting: "elasticsearch"
+     * (the default) or "embedded" for the in-process store.
+     */
+    private static DAO<Contact, DAOResponse<Contact>> createDAO(Converter<Contact, String> converter) {
+        String backend = Config.get("contacts.dao", "elasticsearch");
+        switch (backend) {
+            case "elasticsearch":
+                String hosts = Config.get("contacts.elasticsearch.hosts",
+                        Config.get("contacts.elasticsearch.scheme", "http") + "://"
+                                + Config.get("contacts.elasticsearch.host", "localhost") + ":"
+                                + Config.getInt("contacts.elasticsearch.port", 9200));
+                ElasticSearchClientConfig config = new ElasticSearchClientConfig(ElasticSearchClientConfig.parseHosts(hosts))
+                        .withTimeouts(Config.getInt("contacts.elasticsearch.connectTimeoutMillis", 1000),
+                                Config.getInt("contacts.elasticsearch.socketTimeoutMillis", 30000))
+                        .withPool(Config.getInt("contacts.elasticsearch.maxConnections", 30),
+                                Config.getInt("contacts.elasticsearch.maxConnectionsPerNode", 10))
+                        .withSniffing(Config.getInt("contacts.elasticsearch.sniffIntervalMillis", 0))
+                        .withReadRetries(Config.getInt("contacts.elasticsearch.readRetries", 2),
+                                Config.getLong("contacts.elasticsearch.retryBackoffMillis", 50))
+                        .withRefreshPolicy(WriteRequest.RefreshPolicy.parse(
+                                Config.get("contacts.elasticsearch.refreshPolicy", "false")));
+                if (Config.getBoolean("contacts.elasticsearch.manageIndex", true)) {
+                    provisionIndex(config);
+                }
+                return new ElasticSearchDAO(config, converter);
+            case "embedded":
+                return new EmbeddedDAO(
+                        Paths.get(Config.get("contacts.embedded.dir", "data")),
+                        Config.getLong("contacts.embedded.snapshotIntervalSeconds", 300),
+                        converter);
+            default:
+                throw new IllegalArgumentException("Unknown contacts.dao backend: " + backend);
+        }
     }
 }
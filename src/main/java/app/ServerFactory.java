@@ -0,0 +1,71 @@
+package app;
+
+/**
+ * Creates the Jetty server Spark runs on, optionally with its own thread pool
+ * (e.g. a VirtualThreadPool) and with every request passing through Jetty's
+ * GzipHandler. Responses of at least minGzipSize bytes (or of unknown
+ * length, such as streamed search pages and exports) are gzip compressed for
+ * clients that send Accept-Encoding: gzip, for every method and for every
+ * content type that is not already compressed (such as images). Event
+ * streams are left uncompressed, as each event must reach the client as soon
+ * as it is flushed.
+ * Requests reach Spark through an AsyncResponder.Handler, so that routes can
+ * answer them asynchronously. Spark installs its handler with setHandler
+ * once the server is created, so the server wraps whatever handler it is
+ * given.
+ */
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.jetty.JettyServerFactory;
+
+class ServerFactory implements JettyServerFactory {
+
+    static final int NO_GZIP = -1;
+
+    private final int minGzipSize;
+    private final ThreadPool threadPool;
+
+    /**
+     * @param minGzipSize = the smallest response, in bytes, worth compressing,
+     *        or NO_GZIP to send every response uncompressed.
+     * @param threadPool = the pool requests are handled on, or null for the
+     *        pool Spark would create.
+     */
+    ServerFactory(int minGzipSize, ThreadPool threadPool) {
+        this.minGzipSize = minGzipSize;
+        this.threadPool = threadPool;
+    }
+
+    // the same pool Spark's own factory creates
+    public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+        if (threadPool != null || maxThreads <= 0) {
+            return create(threadPool);
+        }
+        return create(new QueuedThreadPool(maxThreads, minThreads > 0 ? minThreads : 8,
+                threadTimeoutMillis > 0 ? threadTimeoutMillis : 60000));
+    }
+
+    public Server create(ThreadPool pool) {
+        return new Server(pool) {
+            @Override
+            public void setHandler(Handler handler) {
+                AsyncResponder.Handler async = new AsyncResponder.Handler();
+                async.setHandler(handler);
+                if (minGzipSize == NO_GZIP) {
+                    super.setHandler(async);
+                    return;
+                }
+                GzipHandler gzip = new GzipHandler();
+                gzip.setMinGzipSize(minGzipSize);
+                gzip.setIncludedMethods("GET", "POST", "PUT", "DELETE");
+                gzip.addExcludedMimeTypes("text/event-stream");
+                gzip.setHandler(async);
+                super.setHandler(gzip);
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package app;
+
+/**
+ * A Jetty thread pool that runs every task on a new virtual thread (Java 21
+ * and later), so that requests blocked on the backend, such as the
+ * synchronous Elasticsearch client's calls, cost a small heap object rather
+ * than a platform thread each, and the number of requests in flight is no
+ * longer capped by the size of a pool. The service is built for Java 8, so
+ * the virtual thread executor is looked up by reflection; available()
+ * reports whether the running JVM provides it.
+ * Code that blocks while holding a monitor (synchronized) pins its virtual
+ * thread to a carrier thread on Java 21, so waits that may be long use
+ * java.util.concurrent locks instead.
+ */
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private final ExecutorService executor;
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * @throws IllegalStateException if the JVM does not support virtual
+     *        threads.
+     */
+    public VirtualThreadPool() {
+        Method factory = newVirtualThreadPerTaskExecutor();
+        if (factory == null) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later; running on "
+                    + System.getProperty("java.version"));
+        }
+        try {
+            executor = (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create a virtual thread executor", e);
+        }
+    }
+
+    /**
+     * @return whether the running JVM supports virtual threads.
+     */
+    public static boolean available() {
+        return newVirtualThreadPerTaskExecutor() != null;
+    }
+
+    private static Method newVirtualThreadPerTaskExecutor() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            running.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Waits for the pool to stop and its running tasks to finish.
+     */
+    public void join() throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+            // keep waiting, as QueuedThreadPool.join does
+        }
+    }
+
+    /**
+     * @return the number of tasks running, each on its own thread.
+     */
+    public int getThreads() {
+        return running.get();
+    }
+
+    // a thread is created for each task, so none is ever idle and the pool is never short of them
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(getStopTimeout(), TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package app.admission;
+
+/**
+ * Limits how many requests may be in flight at once, adjusting the limit to
+ * the latency they are seeing, in the style of TCP Vegas / Netflix's gradient
+ * limiter. Latencies are averaged over windows of WINDOW_SAMPLES requests;
+ * the lowest window average is taken as the latency of an unloaded backend.
+ * At the end of each window the limit is moved towards
+ *      limit * min(1, tolerance * unloaded / average) + sqrt(limit)
+ * so it shrinks once requests take more than @tolerance times as long as
+ * unloaded ones (the backend is queueing them) and otherwise grows by about
+ * the square root of the limit, but only while the limit is actually being
+ * used. The unloaded latency is re-measured every RESET_WINDOWS windows, so a
+ * lasting change in the backend's speed is learned rather than treated as
+ * load. Requests over the limit are refused at once instead of waiting.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AdaptiveLimiter {
+
+    static final int WINDOW_SAMPLES = 20;
+    static final int RESET_WINDOWS = 100;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    // guarded by this
+    private int samples;
+    private long sampleSum;
+    private int peakInFlight;
+    private long unloadedLatency;
+    private int windows;
+
+    /**
+     * @param minLimit = the lowest the limit may fall to.
+     * @param initialLimit = the limit before any latency has been seen.
+     * @param maxLimit = the highest the limit may rise to.
+     * @param tolerance = how many times the unloaded latency requests may
+     *        take before the limit is reduced, e.g. 2.
+     * @throws IllegalArgumentException if the limits are not ordered or
+     *        @tolerance is less than 1.
+     */
+    public AdaptiveLimiter(int minLimit, int initialLimit, int maxLimit, double tolerance) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit || tolerance < 1) {
+            throw new IllegalArgumentException("expected 1 <= minLimit <= initialLimit <= maxLimit and tolerance >= 1,"
+                    + " got " + minLimit + ", " + initialLimit + ", " + maxLimit + " and " + tolerance);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * @return whether a request may start; if so, it must call release once
+     *        it is done.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ends a request admitted by tryAcquire, feeding its latency into the
+     * limit.
+     * @param latencyNanos = how long the request took, in nanoseconds.
+     */
+    public void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        sample(Math.max(latencyNanos, 1), current);
+    }
+
+    /**
+     * Ends a request admitted by tryAcquire without feeding its latency into
+     * the limit, for requests (such as exports) whose duration depends on how
+     * much they do rather than on how loaded the backend is.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void sample(long latencyNanos, int inFlightAtEnd) {
+        samples++;
+        sampleSum += latencyNanos;
+        peakInFlight = Math.max(peakInFlight, inFlightAtEnd);
+        if (samples < WINDOW_SAMPLES) {
+            return;
+        }
+
+        long average = sampleSum / samples;
+        if (unloadedLatency == 0 || average < unloadedLatency || ++windows >= RESET_WINDOWS) {
+            unloadedLatency = average;
+            windows = 0;
+        }
+        double current = limit;
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1, tolerance * unloadedLatency / average));
+        // an unused limit says nothing about whether a higher one would be safe
+        double target = gradient == 1 && peakInFlight < current / 2 ? current
+                : current * gradient + Math.sqrt(current);
+        limit = Math.max(minLimit, Math.min(maxLimit, current * (1 - SMOOTHING) + target * SMOOTHING));
+
+        samples = 0;
+        sampleSum = 0;
+        peakInFlight = 0;
+    }
+}
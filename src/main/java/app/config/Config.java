@@ -0,0 +1,41 @@
+package app.config;
+
+/**
+ * Reads application settings from JVM system properties (e.g.
+ * -Dcontacts.dao=embedded), falling back to environment variables named
+ * after the property (e.g. CONTACTS_DAO=embedded) and finally to the
+ * supplied default.
+ */
+
+import java.util.Locale;
+
+public final class Config {
+
+    private Config() {
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(key.toUpperCase(Locale.ROOT).replace('.', '_'));
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return Integer.parseInt(get(key, Integer.toString(defaultValue)));
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        return Long.parseLong(get(key, Long.toString(defaultValue)));
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        return Double.parseDouble(get(key, Double.toString(defaultValue)));
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, Boolean.toString(defaultValue)));
+    }
+
+}
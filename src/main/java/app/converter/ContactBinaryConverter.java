@@ -0,0 +1,130 @@
+package app.converter;
+
+/**
+ * Converts Contact objects to and from a compact binary encoding of the same
+ * document as ContactJsonConverter produces: CBOR (RFC 7049) or Smile, a
+ * binary JSON. Both are written with the Jackson encoders that Elasticsearch
+ * uses for its own binary formats. Errors are encoded as {"error": message}.
+ */
+
+import app.models.Contact;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Map;
+
+public class ContactBinaryConverter implements Converter<Contact, byte[]> {
+
+    public static final ContactBinaryConverter CBOR = new ContactBinaryConverter(XContentType.CBOR);
+    public static final ContactBinaryConverter SMILE = new ContactBinaryConverter(XContentType.SMILE);
+
+    private final XContentType type;
+
+    private ContactBinaryConverter(XContentType type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the media type of the encoding, e.g. "application/cbor".
+     */
+    public String mediaType() {
+        return type.mediaTypeWithoutParameters();
+    }
+
+    public byte[] to(Contact contact) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+        try (XContentBuilder builder = XContentFactory.contentBuilder(type, output)) {
+            builder.startObject()
+                    .field("name", contact.getName())
+                    .field("phone", contact.getPhone())
+                    .field("email", contact.getEmail())
+                    .endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    public Contact from(byte[] encoded) {
+        try (XContentParser parser = type.xContent().createParser(NamedXContentRegistry.EMPTY,
+                DeprecationHandler.THROW_UNSUPPORTED_OPERATION, encoded)) {
+            Map<String, Object> fields = parser.map();
+            return new Contact(string(fields, "name"), string(fields, "phone"), string(fields, "email"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String string(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * @return @message encoded as {"error": message}.
+     */
+    public byte[] error(String message) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+        try (XContentBuilder builder = XContentFactory.contentBuilder(type, output)) {
+            builder.startObject().field("error", message).endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Picks the encoding a client asked for in its Accept header: the first
+     * media type listed (and not refused with q=0) that is either JSON, any
+     * type, or one of the binary encodings. Quality values are otherwise
+     * ignored, as clients list their preferred type first.
+     * @param accept = the Accept header of the request, or null.
+     * @return CBOR or SMILE, or null if JSON should be sent.
+     */
+    public static ContactBinaryConverter negotiate(String accept) {
+        if (accept == null) {
+            return null;
+        }
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String mediaType = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (refused(parts)) {
+                continue;
+            }
+            if (mediaType.equals(CBOR.mediaType())) {
+                return CBOR;
+            }
+            if (mediaType.equals(SMILE.mediaType())) {
+                return SMILE;
+            }
+            if (mediaType.equals("application/json") || mediaType.equals("application/*")
+                    || mediaType.equals("*/*")) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean refused(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,159 @@
+package app.converter;
+
+/**
+ * Converts Contact objects to and from JSON with Jackson's streaming parser
+ * and generator, the same ones Elasticsearch uses, instead of Gson's
+ * reflection. A document is read token by token straight into the three
+ * fields, which are cleaned and validated once as the Contact is constructed;
+ * Contact.fromJsonString builds an intermediate Contact and then validates a
+ * copy of it. Stored documents are read from, and written to, their UTF-8
+ * bytes without a String in between, and each thread reuses its output
+ * buffers (Jackson recycles its own per thread).
+ * Like Gson's lenient reader, unquoted field names, single quotes and
+ * comments are accepted, numbers and booleans are read as their text, and
+ * unknown fields are ignored. Gson escapes HTML characters (such as < and &)
+ * as escape sequences; they are written as they are here, which is equivalent
+ * JSON.
+ */
+
+import app.models.Contact;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public class ContactStreamingConverter implements Converter<Contact, String>, SourceConverter<Contact> {
+
+    // buffers that grew past this for an unusually large contact are not kept
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+
+    private static final JsonFactory factory = new JsonFactory()
+            .enable(JsonParser.Feature.ALLOW_COMMENTS)
+            .enable(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES)
+            .enable(JsonParser.Feature.ALLOW_SINGLE_QUOTES);
+
+    private static final ThreadLocal<CharArrayWriter> chars = ThreadLocal.withInitial(() -> new CharArrayWriter(256));
+    private static final ThreadLocal<ByteArrayOutputStream> bytes =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(256));
+
+    public String to(Contact contact) {
+        CharArrayWriter output = chars.get();
+        output.reset();
+        try (JsonGenerator generator = factory.createGenerator(output)) {
+            write(contact, generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String json = output.toString();
+        if (output.size() > MAX_RETAINED_BUFFER) {
+            chars.remove();
+        }
+        return json;
+    }
+
+    public BytesReference toSource(Contact contact) {
+        ByteArrayOutputStream output = bytes.get();
+        output.reset();
+        try (JsonGenerator generator = factory.createGenerator(output)) {
+            write(contact, generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        BytesReference source = new BytesArray(output.toByteArray());
+        if (output.size() > MAX_RETAINED_BUFFER) {
+            bytes.remove();
+        }
+        return source;
+    }
+
+    private static void write(Contact contact, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", contact.getName());
+        generator.writeStringField("phone", contact.getPhone());
+        generator.writeStringField("email", contact.getEmail());
+        generator.writeEndObject();
+    }
+
+    /**
+     * @throws IllegalArgumentException if @json is not a JSON object whose
+     *        name, phone and email (if present) are strings, numbers,
+     *        booleans or null.
+     */
+    public Contact from(String json) {
+        try (JsonParser parser = factory.createParser(json)) {
+            return read(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a contact from a UTF-8 JSON document, without copying it if it is
+     * held in a single array.
+     * @throws IllegalArgumentException as from(String).
+     */
+    public Contact fromSource(BytesReference source) {
+        BytesRef json = source.toBytesRef();
+        return from(json.bytes, json.offset, json.length);
+    }
+
+    /**
+     * Reads a contact from the @length bytes of UTF-8 JSON starting at
+     * @offset of @json.
+     * @throws IllegalArgumentException as from(String).
+     */
+    public Contact from(byte[] json, int offset, int length) {
+        try (JsonParser parser = factory.createParser(json, offset, length)) {
+            return read(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private static Contact read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Invalid JSON: expected an object");
+        }
+        String name = null;
+        String phone = null;
+        String email = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            boolean structured = value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY;
+            switch (field) {
+                case "name":
+                    name = text(parser, field, structured);
+                    break;
+                case "phone":
+                    phone = text(parser, field, structured);
+                    break;
+                case "email":
+                    email = text(parser, field, structured);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (parser.nextToken() != null) {
+            throw new IllegalArgumentException("Invalid JSON: unexpected content after the object");
+        }
+        return new Contact(name, phone, email);
+    }
+
+    private static String text(JsonParser parser, String field, boolean structured) throws IOException {
+        if (structured) {
+            throw new IllegalArgumentException("Invalid JSON: expected a string for " + field);
+        }
+        return parser.getValueAsString();
+    }
+
+}
@@ -0,0 +1,79 @@
+package app.converter;
+
+/**
+ * Decorates another converter with latency histograms for each direction, so
+ * that the time spent serializing and deserializing contacts can be told
+ * apart from the time spent in the database and the web framework.
+ * Stored documents are passed to the wrapped converter as bytes if it is a
+ * SourceConverter, and otherwise decoded to a String (E must then be String).
+ * @param <I> = the type corresponding to the data model.
+ * @param <E> = the encoded representation.
+ */
+
+import app.metrics.LatencyHistogram;
+import app.metrics.MetricsRegistry;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.nio.charset.StandardCharsets;
+
+public class MetricsConverter<I, E> implements Converter<I, E>, SourceConverter<I> {
+
+    private static final String LATENCY = "contacts_converter_latency_seconds";
+    private static final String LATENCY_HELP = "Time taken to serialize (to) and deserialize (from) contacts.";
+
+    private final Converter<I, E> converter;
+    private final LatencyHistogram to;
+    private final LatencyHistogram from;
+
+    public MetricsConverter(Converter<I, E> converter, MetricsRegistry registry) {
+        this.converter = converter;
+        this.to = registry.histogram(LATENCY, LATENCY_HELP, "operation", "to");
+        this.from = registry.histogram(LATENCY, LATENCY_HELP, "operation", "from");
+    }
+
+    public E to(I item) {
+        long start = System.nanoTime();
+        try {
+            return converter.to(item);
+        } finally {
+            to.recordSince(start);
+        }
+    }
+
+    public I from(E encoded) {
+        long start = System.nanoTime();
+        try {
+            return converter.from(encoded);
+        } finally {
+            from.recordSince(start);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public BytesReference toSource(I item) {
+        long start = System.nanoTime();
+        try {
+            if (converter instanceof SourceConverter) {
+                return ((SourceConverter<I>) converter).toSource(item);
+            }
+            return new BytesArray(((String) converter.to(item)).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            to.recordSince(start);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public I fromSource(BytesReference source) {
+        long start = System.nanoTime();
+        try {
+            if (converter instanceof SourceConverter) {
+                return ((SourceConverter<I>) converter).fromSource(source);
+            }
+            return converter.from((E) source.utf8ToString());
+        } finally {
+            from.recordSince(start);
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package app.converter;
+
+/**
+ * Converts instances of the data model to and from the UTF-8 JSON documents a
+ * data store holds (such as Elasticsearch's _source), without first decoding
+ * them to, or encoding them from, a String.
+ * @param <I> = the type corresponding to the data model.
+ */
+
+import org.elasticsearch.common.bytes.BytesReference;
+
+public interface SourceConverter<I> {
+
+    BytesReference toSource(I item);
+
+    I fromSource(BytesReference source);
+
+}
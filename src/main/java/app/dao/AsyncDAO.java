@@ -0,0 +1,24 @@
+package app.dao;
+
+/**
+ * Abstraction of a database / data store object whose operations complete
+ * asynchronously, so that callers do not hold a thread while the data store
+ * is working.
+ */
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncDAO<I, O extends DAOResponse<I>> {
+
+    CompletableFuture<O> getByKeyAsync(String key);
+
+    CompletableFuture<List<O>> getByQueryAsync(String query, int pageSize, int page);
+
+    CompletableFuture<O> postAsync(I toPost);
+
+    CompletableFuture<O> putAsync(String key, I toUpdate);
+
+    CompletableFuture<O> deleteAsync(String key);
+
+}
@@ -0,0 +1,238 @@
+package app.dao;
+
+/**
+ * Decorates another database access object so that posts from concurrent
+ * callers are grouped into micro-batches and sent with a single postAll (one
+ * bulk request for Elasticsearch). A batch is sent once it holds maxBatchSize
+ * posts or its first post has waited lingerMillis, whichever comes first, so
+ * a lone post is delayed by at most lingerMillis while a burst of posts is
+ * sent in a few large batches. Each caller receives the response for its own
+ * item. All other operations are passed straight through.
+ * @param <I> = the type corresponding to the data model.
+ * @param <O> = the type of response returned by the wrapped object.
+ */
+
+import app.dao.query.ContactSearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class BatchingDAO<I, O extends DAOResponse<I>> implements DAO<I, O>, Closeable {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final DAO<I, O> dao;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<Pending<I, O>> queue;
+    private final List<Thread> flushers = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * @param dao = the database access object to send batches to.
+     * @param maxBatchSize = the most posts sent in one batch.
+     * @param lingerMillis = how long the first post of a batch may wait for
+     *        others to join it.
+     * @param concurrency = how many batches may be in flight at once; posts
+     *        block once every flusher is busy and a further four batches'
+     *        worth are queued, so that a slow backend pushes back on callers.
+     */
+    public BatchingDAO(DAO<I, O> dao, int maxBatchSize, long lingerMillis, int concurrency) {
+        this.dao = dao;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.queue = new LinkedBlockingQueue<>(maxBatchSize * concurrency * 4);
+        for (int i = 0; i < concurrency; i++) {
+            Thread flusher = new Thread(this::flushLoop, "contacts-post-batcher-" + i);
+            flusher.setDaemon(true);
+            flusher.start();
+            flushers.add(flusher);
+        }
+    }
+
+    public O post(I toPost) {
+        try {
+            return postAsync(toPost).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queues @toPost for the next batch; the future completes once that batch
+     * has been sent.
+     */
+    public CompletableFuture<O> postAsync(I toPost) {
+        if (closed) {
+            throw new IllegalStateException("BatchingDAO is closed");
+        }
+        Pending<I, O> pending = new Pending<>(toPost);
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.result.completeExceptionally(e);
+            return pending.result;
+        }
+        // closed while queueing, so the flushers may have stopped; unless one has taken it, no one will
+        if (closed && queue.remove(pending)) {
+            pending.result.completeExceptionally(new IllegalStateException("BatchingDAO is closed"));
+        }
+        return pending.result;
+    }
+
+    private void flushLoop() {
+        List<Pending<I, O>> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending<I, O> first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    // take whatever is already queued, then wait out the linger time
+                    Pending<I, O> next = queue.poll();
+                    if (next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0 || (next = queue.poll(remaining, TimeUnit.NANOSECONDS)) == null) {
+                            break;
+                        }
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true; // nothing interrupts the flushers but a shutdown; drain and stop
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<Pending<I, O>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<I> items = new ArrayList<>(batch.size());
+        for (Pending<I, O> pending : batch) {
+            items.add(pending.item);
+        }
+        try {
+            List<O> results = dao.postAll(items);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(results.get(i));
+            }
+        } catch (RuntimeException e) {
+            for (Pending<I, O> pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting posts and waits for the queued ones to be sent.
+     */
+    public void close() throws IOException {
+        closed = true;
+        for (Thread flusher : flushers) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while sending queued posts", e);
+            }
+        }
+    }
+
+    public O getByKey(String key) {
+        return dao.getByKey(key);
+    }
+
+    public List<O> getByKeys(Collection<String> keys) {
+        return dao.getByKeys(keys);
+    }
+
+    public List<O> getByQuery(String query, int pageSize, int page) {
+        return dao.getByQuery(query, pageSize, page);
+    }
+
+    public QueryPage<O> getByQueryAfter(String query, int pageSize, String cursor) {
+        return dao.getByQueryAfter(query, pageSize, cursor);
+    }
+
+    public List<O> search(ContactSearch search) {
+        return dao.search(search);
+    }
+
+    public List<O> suggest(String prefix, int size) {
+        return dao.suggest(prefix, size);
+    }
+
+    public O getSourcesByQuery(String query, int pageSize, int page, SourceSink sink) throws IOException {
+        return dao.getSourcesByQuery(query, pageSize, page, sink);
+    }
+
+    public List<O> postAll(List<I> toPost) {
+        return dao.postAll(toPost);
+    }
+
+    public O put(String key, I toUpdate) {
+        return dao.put(key, toUpdate);
+    }
+
+    public O delete(String key) {
+        return dao.delete(key);
+    }
+
+    public O put(String key, I toUpdate, long version) {
+        return dao.put(key, toUpdate, version);
+    }
+
+    public O delete(String key, long version) {
+        return dao.delete(key, version);
+    }
+
+    public void scan(int batchSize, Consumer<O> consumer) {
+        dao.scan(batchSize, consumer);
+    }
+
+    public CompletableFuture<O> getByKeyAsync(String key) {
+        return dao.getByKeyAsync(key);
+    }
+
+    public CompletableFuture<List<O>> getByQueryAsync(String query, int pageSize, int page) {
+        return dao.getByQueryAsync(query, pageSize, page);
+    }
+
+    public CompletableFuture<O> putAsync(String key, I toUpdate) {
+        return dao.putAsync(key, toUpdate);
+    }
+
+    public CompletableFuture<O> deleteAsync(String key) {
+        return dao.deleteAsync(key);
+    }
+
+    private static final class Pending<I, O> {
+        private final I item;
+        private final CompletableFuture<O> result = new CompletableFuture<>();
+
+        private Pending(I item) {
+            this.item = item;
+        }
+    }
+
+}
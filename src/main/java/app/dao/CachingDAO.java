@@ -0,0 +1,288 @@
+package app.dao;
+
+/**
+ * Decorates another database access object with a bounded read-through cache
+ * of getByKey results. Entries are evicted least-recently-used once the cache
+ * is full and expire after a fixed time to live; post, put and delete
+ * invalidate the entries for the keys they touch. Only successful, fresh
+ * lookups are cached, so a missing record is always re-checked against the
+ * backend.
+ * @param <I> = the type corresponding to the data model.
+ * @param <O> = the type of response returned by the wrapped object.
+ */
+
+import app.dao.query.ContactSearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+public class CachingDAO<I, O extends DAOResponse<I>> implements DAO<I, O> {
+
+    private final DAO<I, O> dao;
+    private final Function<I, String> keyOf;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, CacheEntry<O>> cache;
+
+    // bumped on every write; a load that raced with a write is not cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param dao = the database access object to cache lookups for.
+     * @param keyOf = derives the unique key an item is stored under.
+     * @param maxSize = the maximum number of cached entries.
+     * @param ttl = how long an entry may be served before it is re-fetched.
+     * @param unit = the unit of @ttl.
+     */
+    public CachingDAO(DAO<I, O> dao, Function<I, String> keyOf, int maxSize, long ttl, TimeUnit unit) {
+        this(dao, keyOf, maxSize, unit.toNanos(ttl), System::nanoTime);
+    }
+
+    CachingDAO(DAO<I, O> dao, Function<I, String> keyOf, int maxSize, long ttlNanos, LongSupplier clock) {
+        this.dao = dao;
+        this.keyOf = keyOf;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        this.cache = new LinkedHashMap<String, CacheEntry<O>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<O>> eldest) {
+                boolean evict = size() > maxSize;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Serves a lookup from the cache if a live entry exists, otherwise from the
+     * wrapped object, caching the response if it was successful.
+     */
+    public O getByKey(String key) {
+        long now = clock.getAsLong();
+        O cached = lookup(key, now);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = invalidations.get();
+        return store(key, dao.getByKey(key), generation, now);
+    }
+
+    /**
+     * Asynchronous variant of getByKey; cache hits complete immediately.
+     */
+    public CompletableFuture<O> getByKeyAsync(String key) {
+        long now = clock.getAsLong();
+        O cached = lookup(key, now);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = invalidations.get();
+        return dao.getByKeyAsync(key).thenApply(response -> store(key, response, generation, now));
+    }
+
+    /**
+     * Serves each key from the cache where possible and fetches the rest from
+     * the wrapped object in one call.
+     */
+    public List<O> getByKeys(Collection<String> keys) {
+        long now = clock.getAsLong();
+        List<O> results = new ArrayList<>(keys.size());
+        List<String> missing = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (String key : keys) {
+            O cached = lookup(key, now);
+            if (cached == null) {
+                missing.add(key);
+                positions.add(results.size());
+            }
+            results.add(cached);
+        }
+        if (!missing.isEmpty()) {
+            long generation = invalidations.get();
+            List<O> fetched = dao.getByKeys(missing);
+            for (int i = 0; i < fetched.size(); i++) {
+                results.set(positions.get(i), store(missing.get(i), fetched.get(i), generation, now));
+            }
+        }
+        return results;
+    }
+
+    private O lookup(String key, long now) {
+        synchronized (cache) {
+            CacheEntry<O> entry = cache.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAt < 0) {
+                    hits.incrementAndGet();
+                    return entry.response;
+                }
+                cache.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private O store(String key, O response, long generation, long now) {
+        if (response.success() && !response.stale()) {
+            synchronized (cache) {
+                if (invalidations.get() == generation) {
+                    cache.put(key, new CacheEntry<>(response, now + ttlNanos));
+                }
+            }
+        }
+        return response;
+    }
+
+    public List<O> getByQuery(String query, int pageSize, int page) {
+        return dao.getByQuery(query, pageSize, page);
+    }
+
+    public QueryPage<O> getByQueryAfter(String query, int pageSize, String cursor) {
+        return dao.getByQueryAfter(query, pageSize, cursor);
+    }
+
+    public List<O> search(ContactSearch search) {
+        return dao.search(search);
+    }
+
+    public List<O> suggest(String prefix, int size) {
+        return dao.suggest(prefix, size);
+    }
+
+    public O getSourcesByQuery(String query, int pageSize, int page, SourceSink sink) throws IOException {
+        return dao.getSourcesByQuery(query, pageSize, page, sink);
+    }
+
+    public O post(I toPost) {
+        return posted(dao.post(toPost));
+    }
+
+    public CompletableFuture<O> postAsync(I toPost) {
+        return dao.postAsync(toPost).thenApply(this::posted);
+    }
+
+    private O posted(O response) {
+        if (response.success()) {
+            invalidate(keyOf.apply(response.payload()));
+        }
+        return response;
+    }
+
+    public List<O> postAll(List<I> toPost) {
+        List<O> results = dao.postAll(toPost);
+        for (O response : results) {
+            posted(response);
+        }
+        return results;
+    }
+
+    public O put(String key, I toUpdate) {
+        return updated(key, dao.put(key, toUpdate));
+    }
+
+    public CompletableFuture<O> putAsync(String key, I toUpdate) {
+        return dao.putAsync(key, toUpdate).thenApply(response -> updated(key, response));
+    }
+
+    public O put(String key, I toUpdate, long version) {
+        return updated(key, dao.put(key, toUpdate, version));
+    }
+
+    private O updated(String key, O response) {
+        invalidate(key);
+        return posted(response);
+    }
+
+    public O delete(String key) {
+        O response = dao.delete(key);
+        invalidate(key);
+        return response;
+    }
+
+    public O delete(String key, long version) {
+        O response = dao.delete(key, version);
+        invalidate(key);
+        return response;
+    }
+
+    public CompletableFuture<O> deleteAsync(String key) {
+        return dao.deleteAsync(key).thenApply(response -> {
+            invalidate(key);
+            return response;
+        });
+    }
+
+    public CompletableFuture<List<O>> getByQueryAsync(String query, int pageSize, int page) {
+        return dao.getByQueryAsync(query, pageSize, page);
+    }
+
+    public void scan(int batchSize, Consumer<O> consumer) {
+        dao.scan(batchSize, consumer);
+    }
+
+    private void invalidate(String key) {
+        synchronized (cache) {
+            invalidations.incrementAndGet();
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * @return the number of lookups served from the cache.
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups passed through to the wrapped object.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries dropped because the cache was full or
+     *        they had expired.
+     */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of entries currently cached.
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static final class CacheEntry<O> {
+        private final O response;
+        private final long expiresAt;
+
+        private CacheEntry(O response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package app.dao;
+
+/**
+ * A successful write recorded by ChangeFeedDAO: the @sequence number it was
+ * given in the feed, the @operation, the @key written, the @version the store
+ * reported for it (DAOResponse.NO_VERSION if none) and, for posts and puts,
+ * the @document stored under the key, as JSON. A rename is recorded as a
+ * DELETE of the old key followed by a PUT of the new one.
+ */
+
+public final class ChangeEvent {
+
+    public enum Operation { POST, PUT, DELETE }
+
+    private final long sequence;
+    private final Operation operation;
+    private final String key;
+    private final long version;
+    private final String document;
+
+    public ChangeEvent(long sequence, Operation operation, String key, long version, String document) {
+        this.sequence = sequence;
+        this.operation = operation;
+        this.key = key;
+        this.version = version;
+        this.document = document;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public Operation operation() {
+        return operation;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the stored document as JSON, or null for a DELETE.
+     */
+    public String document() {
+        return document;
+    }
+
+    /**
+     * @return the event as one line of the change log (without the line
+     *        break): sequence, operation, version, key and document separated
+     *        by tabs. JSON documents never hold a raw tab or line break.
+     */
+    String toLogLine() {
+        return sequence + "\t" + operation + "\t" + version + "\t" + key + "\t" + (document == null ? "" : document);
+    }
+
+    /**
+     * @return the event written by toLogLine, or null if @line is not a
+     *        complete record (e.g. a torn write at the end of the log).
+     */
+    static ChangeEvent fromLogLine(String line) {
+        String[] fields = line.split("\t", 5);
+        if (fields.length < 5) {
+            return null;
+        }
+        try {
+            return new ChangeEvent(Long.parseLong(fields[0]), Operation.valueOf(fields[1]), fields[3],
+                    Long.parseLong(fields[2]), fields[4].isEmpty() ? null : fields[4]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package app.dao;
+
+/**
+ * Decorates another database access object with a change feed: every
+ * successful post, put and delete made through it is recorded as a
+ * ChangeEvent with the next sequence number, so that consumers can follow the
+ * writes incrementally instead of re-reading every item. When a log file is
+ * given, events are appended to it as they are recorded, and the sequence
+ * carries on from the last event in the file after a restart; the most recent
+ * events are also kept in memory to serve consumers that are keeping up
+ * without reading the file. Once the log reaches its maximum size it is
+ * renamed with the suffix ".1", replacing the one rotated out before it, and
+ * a new log is started, so at most two logs' worth of events are kept on disk.
+ * The offset of every INDEX_INTERVAL-th event in each log is kept, so that a
+ * consumer reading from the log starts near its place rather than at the top.
+ * Events are numbered in the order the wrapped object completed the writes,
+ * which for concurrent writes to the same key may differ from the order the
+ * store applied them; the version of each event tells such writes apart.
+ * Writes made to the store by other instances are not seen.
+ * @param <I> = the type corresponding to the data model.
+ * @param <O> = the type of response returned by the wrapped object.
+ */
+
+import app.converter.Converter;
+import app.dao.query.ContactSearch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class ChangeFeedDAO<I, O extends DAOResponse<I>> implements DAO<I, O>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeFeedDAO.class);
+    static final int INDEX_INTERVAL = 256;
+
+    private final DAO<I, O> dao;
+    private final Function<I, String> keyOf;
+    private final Converter<I, String> converter;
+    private final Path file;
+    private final Path rotatedFile;
+    private final int retained;
+    private final long maxLogBytes;
+
+    // a lock rather than a monitor, so that consumers waiting for events do not pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition recorded = lock.newCondition();
+    // guarded by lock, as are the fields below
+    private final ArrayDeque<ChangeEvent> recent = new ArrayDeque<>();
+    private long lastSequence;
+    private OutputStream log;
+    private Segment active;
+    private Segment rotated;
+    private boolean closed;
+
+    /**
+     * @param dao = the database access object to record the writes of.
+     * @param keyOf = derives the unique key an item is stored under.
+     * @param converter = writes the items into the events as JSON.
+     * @param file = the log the events are appended to, created if it does
+     *        not exist; or null to keep events in memory only.
+     * @param retained = the number of most recent events kept in memory.
+     * @param maxLogBytes = the size at which the log is rotated, or 0 to let
+     *        it grow without limit.
+     */
+    public ChangeFeedDAO(DAO<I, O> dao, Function<I, String> keyOf, Converter<I, String> converter, Path file,
+                         int retained, long maxLogBytes) {
+        this.dao = dao;
+        this.keyOf = keyOf;
+        this.converter = converter;
+        this.file = file;
+        this.rotatedFile = file == null ? null : file.resolveSibling(file.getFileName() + ".1");
+        this.retained = Math.max(retained, 1);
+        this.maxLogBytes = maxLogBytes;
+        if (file == null) {
+            return;
+        }
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            recover();
+            log = open(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open change log " + file, e);
+        }
+    }
+
+    /**
+     * @return the sequence number of the most recent event, or 0 if there
+     *        has been none.
+     */
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fetches the events recorded after the one numbered @after, oldest first.
+     * Events no longer held in memory are read back from the log, starting
+     * at the nearest indexed event before them. A consumer that has fallen
+     * further behind than the events retained, in memory without a log or on
+     * disk once the log has been rotated twice since, receives the oldest one
+     * held, so it sees a gap in the sequence numbers.
+     * @param after = the sequence number of the last event already seen, or 0
+     *        for the start of the feed.
+     * @param max = the most events to return.
+     */
+    public List<ChangeEvent> read(long after, int max) throws IOException {
+        long last;
+        long start;
+        List<FileChannel> channels = new ArrayList<>(2);
+        lock.lock();
+        try {
+            last = lastSequence;
+            if (after >= last) {
+                return new ArrayList<>();
+            }
+            if (file == null || after + 1 >= recent.peekFirst().sequence()) {
+                List<ChangeEvent> events = new ArrayList<>(Math.min(max, recent.size()));
+                for (ChangeEvent event : recent) {
+                    if (events.size() >= max) {
+                        break;
+                    }
+                    if (event.sequence() > after) {
+                        events.add(event);
+                    }
+                }
+                return events;
+            }
+            // opened while holding the lock, so that a rotation cannot move the logs in between
+            Segment first = rotated != null && (active.offsets.isEmpty() || after + 1 < active.offsets.firstKey())
+                    ? rotated : active;
+            Map.Entry<Long, Long> nearest = first.offsets.floorEntry(after + 1);
+            start = nearest == null ? 0 : nearest.getValue();
+            try {
+                if (first == rotated) {
+                    channels.add(FileChannel.open(rotated.path, StandardOpenOption.READ));
+                }
+                channels.add(FileChannel.open(active.path, StandardOpenOption.READ));
+            } catch (IOException e) {
+                closeAll(channels);
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<ChangeEvent> events = new ArrayList<>();
+        try {
+            for (FileChannel channel : channels) {
+                channel.position(start);
+                start = 0;
+                BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.name()));
+                if (!readLog(reader, after, last, max, events)) {
+                    break;
+                }
+            }
+        } finally {
+            closeAll(channels);
+        }
+        return events;
+    }
+
+    /**
+     * Adds to @events those read from @reader numbered after @after and up to
+     * @last, until there are @max of them.
+     * @return whether the reader ran out before either limit was reached.
+     */
+    private static boolean readLog(BufferedReader reader, long after, long last, int max, List<ChangeEvent> events)
+            throws IOException {
+        // every record up to last was written in full before it was counted
+        String line;
+        while ((line = reader.readLine()) != null) {
+            ChangeEvent event = ChangeEvent.fromLogLine(line);
+            if (event == null || event.sequence() <= after) {
+                continue;
+            }
+            if (event.sequence() > last) {
+                return false;
+            }
+            events.add(event);
+            if (events.size() >= max) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void closeAll(List<FileChannel> channels) throws IOException {
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until an event is recorded after the one numbered @after, the
+     * feed is closed or @timeout passes.
+     * @return whether there are events after @after.
+     */
+    public boolean await(long after, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (lastSequence <= after && !closed && remaining > 0) {
+                remaining = recorded.awaitNanos(remaining);
+            }
+            return lastSequence > after;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(ChangeEvent.Operation operation, String key, long version, I item) {
+        String document = item == null ? null : converter.to(item);
+        lock.lock();
+        try {
+            append(new ChangeEvent(lastSequence + 1, operation, key, version, document));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // callers must hold lock
+    private void append(ChangeEvent event) {
+        if (log != null) {
+            byte[] line = (event.toLogLine() + "\n").getBytes(StandardCharsets.UTF_8);
+            try {
+                log.write(line);
+                active.add(event, line.length);
+            } catch (IOException e) {
+                // the write has already been made, so it is still passed on to consumers reading from memory
+                LOG.error("Could not append event {} to change log {}", event.sequence(), file, e);
+                resize();
+            }
+            if (maxLogBytes > 0 && active.bytes >= maxLogBytes) {
+                rotate();
+            }
+        } else if (closed) {
+            // a write that got past the shutdown order, e.g. one still in flight
+            LOG.warn("Change log {} is closed; event {} is only kept in memory", file, event.sequence());
+        }
+        lastSequence = event.sequence();
+        recent.addLast(event);
+        if (recent.size() > retained) {
+            recent.removeFirst();
+        }
+        recorded.signalAll();
+    }
+
+    private void posted(O response) {
+        if (response.success()) {
+            record(ChangeEvent.Operation.POST, keyOf.apply(response.payload()), response.version(),
+                    response.payload());
+        }
+    }
+
+    private void updated(String key, O response) {
+        if (!response.success()) {
+            return;
+        }
+        String newKey = keyOf.apply(response.payload());
+        lock.lock();
+        try {
+            if (!newKey.equals(key)) {
+                record(ChangeEvent.Operation.DELETE, key, DAOResponse.NO_VERSION, null);
+            }
+            record(ChangeEvent.Operation.PUT, newKey, response.version(), response.payload());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deleted(String key, O response) {
+        if (response.success()) {
+            record(ChangeEvent.Operation.DELETE, key, response.version(), null);
+        }
+    }
+
+    public O getByKey(String key) {
+        return dao.getByKey(key);
+    }
+
+    public List<O> getByKeys(Collection<String> keys) {
+        return dao.getByKeys(keys);
+    }
+
+    public List<O> getByQuery(String query, int pageSize, int page) {
+        return dao.getByQuery(query, pageSize, page);
+    }
+
+    public QueryPage<O> getByQueryAfter(String query, int pageSize, String cursor) {
+        return dao.getByQueryAfter(query, pageSize, cursor);
+    }
+
+    public List<O> search(ContactSearch search) {
+        return dao.search(search);
+    }
+
+    public List<O> suggest(String prefix, int size) {
+        return dao.suggest(prefix, size);
+    }
+
+    public O getSourcesByQuery(String query, int pageSize, int page, SourceSink sink) throws IOException {
+        return dao.getSourcesByQuery(query, pageSize, page, sink);
+    }
+
+    public O post(I toPost) {
+        O response = dao.post(toPost);
+        posted(response);
+        return response;
+    }
+
+    public CompletableFuture<O> postAsync(I toPost) {
+        return dao.postAsync(toPost).thenApply(response -> {
+            posted(response);
+            return response;
+        });
+    }
+
+    public List<O> postAll(List<I> toPost) {
+        List<O> results = dao.postAll(toPost);
+        lock.lock();
+        try {
+            for (O response : results) {
+                posted(response);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return results;
+    }
+
+    public O put(String key, I toUpdate) {
+        O response = dao.put(key, toUpdate);
+        updated(key, response);
+        return response;
+    }
+
+    public O put(String key, I toUpdate, long version) {
+        O response = dao.put(key, toUpdate, version);
+        updated(key, response);
+        return response;
+    }
+
+    public CompletableFuture<O> putAsync(String key, I toUpdate) {
+        return dao.putAsync(key, toUpdate).thenApply(response -> {
+            updated(key, response);
+            return response;
+        });
+    }
+
+    public O delete(String key) {
+        O response = dao.delete(key);
+        deleted(key, response);
+        return response;
+    }
+
+    public O delete(String key, long version) {
+        O response = dao.delete(key, version);
+        deleted(key, response);
+        return response;
+    }
+
+    public CompletableFuture<O> deleteAsync(String key) {
+        return dao.deleteAsync(key).thenApply(response -> {
+            deleted(key, response);
+            return response;
+        });
+    }
+
+    public CompletableFuture<O> getByKeyAsync(String key) {
+        return dao.getByKeyAsync(key);
+    }
+
+    public CompletableFuture<List<O>> getByQueryAsync(String query, int pageSize, int page) {
+        return dao.getByQueryAsync(query, pageSize, page);
+    }
+
+    public void scan(int batchSize, Consumer<O> consumer) {
+        dao.scan(batchSize, consumer);
+    }
+
+    /**
+     * Closes the log and wakes any consumers waiting for events; the wrapped
+     * object is not closed.
+     */
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            recorded.signalAll();
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Recounts the size of the active log after a failed append, which may
+     * have written part of its record, so that later offsets stay right.
+     * Callers must hold lock.
+     */
+    private void resize() {
+        try {
+            active.bytes = Files.size(active.path);
+        } catch (IOException e) {
+            LOG.error("Could not read the size of change log {}", file, e);
+        }
+    }
+
+    private static OutputStream open(Path file) throws IOException {
+        return Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Moves the full log aside, replacing the one moved aside before it, and
+     * starts a new one; if it cannot be moved, appending to it carries on.
+     * Callers must hold lock.
+     */
+    private void rotate() {
+        try {
+            log.close();
+            Files.move(file, rotatedFile, StandardCopyOption.REPLACE_EXISTING);
+            active.path = rotatedFile;
+            rotated = active;
+            active = new Segment(file);
+        } catch (IOException e) {
+            LOG.error("Could not rotate change log {}", file, e);
+        }
+        try {
+            log = open(file);
+        } catch (IOException e) {
+            log = null;
+            LOG.error("Could not reopen change log {}; events are only kept in memory from now on", file, e);
+        }
+    }
+
+    /**
+     * Loads the most recent events of the logs into memory, indexes them and
+     * continues the sequence from the last one, first cutting off a record
+     * left incomplete by a crash.
+     */
+    private void recover() throws IOException {
+        active = new Segment(file);
+        if (Files.exists(rotatedFile)) {
+            rotated = new Segment(rotatedFile);
+            load(rotated);
+        }
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer last = ByteBuffer.allocate(1);
+            while (end > 0) {
+                last.clear();
+                channel.read(last, end - 1);
+                if (last.get(0) == '\n') {
+                    break;
+                }
+                end--;
+            }
+            channel.truncate(end);
+        }
+        load(active);
+    }
+
+    private void load(Segment segment) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(segment.path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ChangeEvent event = ChangeEvent.fromLogLine(line);
+                // records are written as a line of UTF-8 ending in a newline
+                segment.add(event, line.getBytes(StandardCharsets.UTF_8).length + 1);
+                if (event != null) {
+                    lastSequence = event.sequence();
+                    recent.addLast(event);
+                    if (recent.size() > retained) {
+                        recent.removeFirst();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A log file, its size and the offsets of its first event and of every
+     * event numbered a multiple of INDEX_INTERVAL.
+     */
+    private static final class Segment {
+
+        private Path path;
+        private final TreeMap<Long, Long> offsets = new TreeMap<>();
+        private long bytes;
+
+        private Segment(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Counts a record of @length bytes appended to the file.
+         * @param event = the event it holds, or null if it is not readable.
+         */
+        private void add(ChangeEvent event, long length) {
+            if (event != null && (offsets.isEmpty() || event.sequence() % INDEX_INTERVAL == 0)) {
+                offsets.put(event.sequence(), bytes);
+            }
+            bytes += length;
+        }
+    }
+}
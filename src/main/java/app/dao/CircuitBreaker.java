@@ -0,0 +1,98 @@
+package app.dao;
+
+/**
+ * Tracks whether a backend is reachable, so that callers can fail fast during
+ * an outage instead of each waiting for a timeout. The circuit starts CLOSED
+ * and opens after failureThreshold consecutive failures; while OPEN every
+ * request is refused. Once openNanos have passed it is HALF_OPEN: a single
+ * trial request is let through, which closes the circuit if it succeeds and
+ * opens it again if it fails.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * @param failureThreshold = the number of consecutive failures that opens
+     *        the circuit.
+     * @param openTime = how long the circuit stays open before a trial
+     *        request is let through.
+     * @param unit = the unit of @openTime.
+     */
+    public CircuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+        this(failureThreshold, unit.toNanos(openTime), System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, long openNanos, LongSupplier clock) {
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.openNanos = openNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * @return whether a request may be sent to the backend; if so, its
+     *        outcome must be reported with onSuccess or onFailure.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * Reports that the backend answered, even if only to say that a record
+     * does not exist.
+     */
+    public synchronized void onSuccess() {
+        failures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Reports that the backend could not be reached.
+     */
+    public synchronized void onFailure() {
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    /**
+     * @return the state of the circuit, as of the last request; an OPEN
+     *        circuit whose time is up still reads OPEN until the next request.
+     */
+    public synchronized State state() {
+        return state;
+    }
+}
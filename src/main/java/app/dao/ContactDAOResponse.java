@@ -4,7 +4,9 @@ package app.dao;
  * Represents a response from a database access object; contains a @payload
  * (which may be null if the request is unsuccessful), an indicator of
  * the @success of the operation, a @message explaining what happened if
- * the operation failed, and an @exception if one was thrown by the operation.
+ * the operation failed, an @exception if one was thrown by the operation,
+ * the @version of the payload if the data store reports one, and whether
+ * the payload is @stale.
  */
 
 import app.models.Contact;
@@ -15,6 +17,8 @@ public class ContactDAOResponse implements DAOResponse<Contact> {
     private boolean success;
     private String message;
     private Exception exception;
+    private long version = NO_VERSION;
+    private boolean stale;
 
     public ContactDAOResponse(Contact payload, boolean success, String message, Exception exception) {
         this.payload = payload;
@@ -27,12 +31,26 @@ public class ContactDAOResponse implements DAOResponse<Contact> {
         this(payload, true, null, null);
     }
 
+    public ContactDAOResponse(Contact payload, long version) {
+        this(payload, true, null, null);
+        this.version = version;
+    }
+
     public ContactDAOResponse(String message) { this(null, false, message, null); }
 
     public ContactDAOResponse(String message, Exception exception) {
         this(null, false, message, exception);
     }
 
+    /**
+     * @return a copy of the successful @response, marked as stale.
+     */
+    public static ContactDAOResponse stale(DAOResponse<Contact> response) {
+        ContactDAOResponse copy = new ContactDAOResponse(response.payload(), response.version());
+        copy.stale = true;
+        return copy;
+    }
+
     public Contact payload() {
         return payload;
     }
@@ -48,4 +66,12 @@ public class ContactDAOResponse implements DAOResponse<Contact> {
     public Exception exception() {
         return exception;
     }
+
+    public long version() {
+        return version;
+    }
+
+    public boolean stale() {
+        return stale;
+    }
 }
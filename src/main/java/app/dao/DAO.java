@@ -1,21 +1,171 @@
 package app.dao;
 
 /**
- * Abstraction of a database / data store object
+ * Abstraction of a database / data store object. Every DAO can be used as an
+ * AsyncDAO: by default the asynchronous operations run the blocking ones on
+ * the calling thread and return completed futures, and implementations backed
+ * by a remote store override them with non-blocking calls.
  */
 
+import app.dao.query.ContactSearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-public interface DAO<I, O extends DAOResponse<I>> {
+public interface DAO<I, O extends DAOResponse<I>> extends AsyncDAO<I, O> {
 
     O getByKey(String key);
 
+    /**
+     * Fetches the items stored under each of @keys, in one round trip where
+     * the store allows it. By default each key is looked up in turn.
+     * @return one response per key, in the order of @keys, each the same as
+     *        getByKey would have returned for that key.
+     */
+    default List<O> getByKeys(Collection<String> keys) {
+        List<O> results = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            results.add(getByKey(key));
+        }
+        return results;
+    }
+
     List<O> getByQuery(String query, int pageSize, int page);
 
+    /**
+     * Fetches a page of the items matching @query, continuing after the page
+     * that returned @cursor. Unlike offset paging, the cost of a page does not
+     * grow with how deep into the results it is; implementations should order
+     * results by key and seek past the cursor. By default the cursor simply
+     * wraps an offset.
+     * @param cursor = the nextCursor of the previous page, or null (or empty)
+     *        for the first page.
+     * @throws IllegalArgumentException if @cursor is not a valid cursor.
+     */
+    default QueryPage<O> getByQueryAfter(String query, int pageSize, String cursor) {
+        int offset = cursor == null || cursor.isEmpty() ? 0 : Integer.parseInt(QueryPage.decodeCursor(cursor));
+        List<O> results = getByQuery(query, pageSize, offset);
+        boolean more = results.size() == pageSize && results.stream().allMatch(DAOResponse::success);
+        return new QueryPage<>(results, more ? QueryPage.encodeCursor(Integer.toString(offset + pageSize)) : null);
+    }
+
+    /**
+     * Fetches a page of the items matching a structured @search, in the order
+     * it asks for. Implementations should compile the query into exact and
+     * prefix lookups; by default it is run as the equivalent query string
+     * query, ordered as getByQuery orders results.
+     */
+    default List<O> search(ContactSearch search) {
+        return getByQuery(search.query().toQueryString(), search.pageSize(), search.offset());
+    }
+
+    /**
+     * Fetches up to @size items whose name starts with @prefix, for
+     * search-as-you-type. Implementations should use a dedicated prefix
+     * structure; by default this is a query for names with a word starting
+     * with the last word of @prefix.
+     * @param prefix = the beginning of a name, as typed so far.
+     */
+    default List<O> suggest(String prefix, int size) {
+        String[] words = prefix.replaceAll("[^A-Za-z\\s]", "").trim().toLowerCase(Locale.ROOT).split("\\s+");
+        if (words[words.length - 1].isEmpty()) {
+            return new ArrayList<>();
+        }
+        return getByQuery("name:" + words[words.length - 1] + "*", size, 0);
+    }
+
     O post(I toPost);
 
     O put(String key, I toUpdate);
 
     O delete(String key);
 
+    /**
+     * Updates the item stored under @key only if it is still at @version, so
+     * that concurrent writers cannot overwrite each other's changes unseen.
+     * Fails with the message "Version conflict" if the item has been written
+     * since. By default conditional writes are not supported.
+     * @param version = the version of the item the update was based on.
+     * @throws UnsupportedOperationException if the data store does not track
+     *        versions.
+     */
+    default O put(String key, I toUpdate, long version) {
+        throw new UnsupportedOperationException("Conditional writes are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Deletes the item stored under @key only if it is still at @version;
+     * see put(key, toUpdate, version).
+     */
+    default O delete(String key, long version) {
+        throw new UnsupportedOperationException("Conditional writes are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Passes the stored source of each item matching @query to @sink, in
+     * result order, without decoding it into the data model.
+     * @return a successful response with no payload, or an unsuccessful
+     *        response if the query failed, in which case nothing was passed to
+     *        the sink.
+     */
+    O getSourcesByQuery(String query, int pageSize, int page, SourceSink sink) throws IOException;
+
+    /**
+     * Adds a batch of items; implementations should override this with a
+     * single round trip to the data store where they can.
+     * @return one response per item, in the order the items were given.
+     */
+    default List<O> postAll(List<I> toPost) {
+        List<O> results = new ArrayList<>(toPost.size());
+        for (I item : toPost) {
+            results.add(post(item));
+        }
+        return results;
+    }
+
+    /**
+     * Passes every stored item to @consumer, fetching @batchSize items at a
+     * time. If the data store fails part way through, the consumer receives
+     * the unsuccessful response and the scan stops.
+     */
+    default void scan(int batchSize, Consumer<O> consumer) {
+        for (int offset = 0; ; offset += batchSize) {
+            List<O> batch = getByQuery("*", batchSize, offset);
+            for (O response : batch) {
+                consumer.accept(response);
+                if (!response.success()) {
+                    return;
+                }
+            }
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    default CompletableFuture<O> getByKeyAsync(String key) {
+        return CompletableFuture.completedFuture(getByKey(key));
+    }
+
+    default CompletableFuture<List<O>> getByQueryAsync(String query, int pageSize, int page) {
+        return CompletableFuture.completedFuture(getByQuery(query, pageSize, page));
+    }
+
+    default CompletableFuture<O> postAsync(I toPost) {
+        return CompletableFuture.completedFuture(post(toPost));
+    }
+
+    default CompletableFuture<O> putAsync(String key, I toUpdate) {
+        return CompletableFuture.completedFuture(put(key, toUpdate));
+    }
+
+    default CompletableFuture<O> deleteAsync(String key) {
+        return CompletableFuture.completedFuture(delete(key));
+    }
+
 }
@@ -7,6 +7,8 @@ package app.dao;
 
 public interface DAOResponse<T> {
 
+    long NO_VERSION = -1;
+
     T payload();
 
     boolean success();
@@ -15,4 +17,20 @@ public interface DAOResponse<T> {
 
     Exception exception();
 
+    /**
+     * @return the version of the payload as stored, which changes with every
+     *        write to it, or NO_VERSION if the data store does not report one.
+     */
+    default long version() {
+        return NO_VERSION;
+    }
+
+    /**
+     * @return whether the payload is a last known value served while the data
+     *        store could not be reached, rather than the value now stored.
+     */
+    default boolean stale() {
+        return false;
+    }
+
 }
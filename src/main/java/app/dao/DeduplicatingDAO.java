@@ -0,0 +1,290 @@
+package app.dao;
+
+/**
+ * Decorates another database access object with a DuplicateIndex of every
+ * item, so that each post is checked for likely duplicates (contacts with a
+ * similar name, or the same phone or email) before it is sent on. Posts with
+ * duplicates are counted, and rejected with "Possible duplicate of" and their
+ * keys if rejectDuplicates is set. Like SuggestingDAO's index, this one is
+ * built by scanning the wrapped object in the background, kept up to date by
+ * the writes made through this instance and rebuilt periodically; until the
+ * first build completes, posts are not checked.
+ * @param <I> = the type corresponding to the data model.
+ * @param <O> = the type of response returned by the wrapped object.
+ */
+
+import app.dao.query.ContactSearch;
+import app.dedup.ContactFingerprint;
+import app.dedup.DuplicateIndex;
+import app.dedup.DuplicateMatch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class DeduplicatingDAO<I, O extends DAOResponse<I>> implements DAO<I, O>, Closeable {
+
+    static final String POSSIBLE_DUPLICATE = "Possible duplicate of ";
+
+    private final DAO<I, O> dao;
+    private final Function<I, ContactFingerprint> fingerprintOf;
+    private final Function<String, O> failure;
+    private final boolean rejectDuplicates;
+    private final AtomicLong duplicatePosts = new AtomicLong();
+    private final RebuiltIndex<I, O, DuplicateIndex> index;
+    // shared by every findDuplicates() call; idle threads are let go
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "contacts-dedup-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param dao = the database access object to check posts against.
+     * @param fingerprintOf = derives what duplicates of an item are recognized
+     *        by, including its key.
+     * @param failure = creates an unsuccessful response with a message.
+     * @param newIndex = creates an empty index, with the threshold and window
+     *        to match with.
+     * @param rejectDuplicates = whether posts with likely duplicates are
+     *        rejected rather than only counted.
+     * @param rebuildInterval = how often the index is rebuilt from the wrapped
+     *        object; 0 builds it once.
+     * @param unit = the unit of @rebuildInterval.
+     */
+    public DeduplicatingDAO(DAO<I, O> dao, Function<I, ContactFingerprint> fingerprintOf, Function<String, O> failure,
+                            Supplier<DuplicateIndex> newIndex, boolean rejectDuplicates,
+                            long rebuildInterval, TimeUnit unit) {
+        this.dao = dao;
+        this.fingerprintOf = fingerprintOf;
+        this.failure = failure;
+        this.rejectDuplicates = rejectDuplicates;
+        this.index = new RebuiltIndex<>(dao, newIndex,
+                (target, response) -> target.add(fingerprintOf.apply(response.payload())), DuplicateIndex::remove,
+                "contacts-dedup-rebuilder", rebuildInterval, unit);
+    }
+
+    /**
+     * Replaces the index with one built from a scan of the wrapped object. If
+     * the scan fails, the current index is kept.
+     * @return whether the index was replaced.
+     */
+    public boolean rebuild() {
+        return index.rebuild();
+    }
+
+    /**
+     * @return the items held that are likely duplicates of @item, ordered by
+     *        descending score; none before the index is built.
+     */
+    public List<DuplicateMatch> duplicatesOf(I item) {
+        DuplicateIndex current = index.current();
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        return current.matches(fingerprintOf.apply(item));
+    }
+
+    /**
+     * Compares every item in the index with those it shares a block with on
+     * @parallelism threads. The index is the one kept up to date by the
+     * writes made through this instance, so writes made elsewhere since the
+     * last rebuild are not seen.
+     * @return every pair of likely duplicates, ordered by descending score; or
+     *        null before the index is built.
+     */
+    public List<DuplicateMatch> findDuplicates(int parallelism) {
+        DuplicateIndex current = index.current();
+        return current == null ? null : current.findAll(workers, parallelism);
+    }
+
+    /**
+     * @return the number of posts found to have likely duplicates.
+     */
+    public long duplicatePosts() {
+        return duplicatePosts.get();
+    }
+
+    /**
+     * @return the number of items in the index, or -1 before it is built.
+     */
+    public int size() {
+        DuplicateIndex current = index.current();
+        return current == null ? -1 : current.size();
+    }
+
+    /**
+     * @return the response rejecting @item if it has likely duplicates and
+     *        those are rejected, otherwise null.
+     */
+    private O check(I item) {
+        List<DuplicateMatch> matches = duplicatesOf(item);
+        if (matches.isEmpty()) {
+            return null;
+        }
+        duplicatePosts.incrementAndGet();
+        if (!rejectDuplicates) {
+            return null;
+        }
+        StringBuilder message = new StringBuilder(POSSIBLE_DUPLICATE);
+        for (int i = 0; i < matches.size(); i++) {
+            message.append(i == 0 ? "" : ", ").append(matches.get(i).duplicateKey());
+        }
+        return failure.apply(message.toString());
+    }
+
+    private void written(String removedKey, O response) {
+        index.written(removedKey, response);
+    }
+
+    public O getByKey(String key) {
+        return dao.getByKey(key);
+    }
+
+    public List<O> getByKeys(Collection<String> keys) {
+        return dao.getByKeys(keys);
+    }
+
+    public List<O> getByQuery(String query, int pageSize, int page) {
+        return dao.getByQuery(query, pageSize, page);
+    }
+
+    public QueryPage<O> getByQueryAfter(String query, int pageSize, String cursor) {
+        return dao.getByQueryAfter(query, pageSize, cursor);
+    }
+
+    public List<O> search(ContactSearch search) {
+        return dao.search(search);
+    }
+
+    public List<O> suggest(String prefix, int size) {
+        return dao.suggest(prefix, size);
+    }
+
+    public O getSourcesByQuery(String query, int pageSize, int page, SourceSink sink) throws IOException {
+        return dao.getSourcesByQuery(query, pageSize, page, sink);
+    }
+
+    public O post(I toPost) {
+        O rejection = check(toPost);
+        if (rejection != null) {
+            return rejection;
+        }
+        O response = dao.post(toPost);
+        written(null, response);
+        return response;
+    }
+
+    public CompletableFuture<O> postAsync(I toPost) {
+        O rejection = check(toPost);
+        if (rejection != null) {
+            return CompletableFuture.completedFuture(rejection);
+        }
+        return dao.postAsync(toPost).thenApply(response -> {
+            written(null, response);
+            return response;
+        });
+    }
+
+    /**
+     * Checks each item, and posts those not rejected in one call to the
+     * wrapped object; items are not checked against each other.
+     */
+    public List<O> postAll(List<I> toPost) {
+        List<O> results = new ArrayList<>(Collections.nCopies(toPost.size(), (O) null));
+        List<I> accepted = new ArrayList<>(toPost.size());
+        for (int i = 0; i < toPost.size(); i++) {
+            O rejection = check(toPost.get(i));
+            if (rejection == null) {
+                accepted.add(toPost.get(i));
+            } else {
+                results.set(i, rejection);
+            }
+        }
+        List<O> posted = accepted.isEmpty() ? Collections.emptyList() : dao.postAll(accepted);
+        for (int i = 0, j = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                O response = posted.get(j++);
+                written(null, response);
+                results.set(i, response);
+            }
+        }
+        return results;
+    }
+
+    public O put(String key, I toUpdate) {
+        O response = dao.put(key, toUpdate);
+        written(response.success() ? key : null, response);
+        return response;
+    }
+
+    public O put(String key, I toUpdate, long version) {
+        O response = dao.put(key, toUpdate, version);
+        written(response.success() ? key : null, response);
+        return response;
+    }
+
+    public CompletableFuture<O> putAsync(String key, I toUpdate) {
+        return dao.putAsync(key, toUpdate).thenApply(response -> {
+            written(response.success() ? key : null, response);
+            return response;
+        });
+    }
+
+    public O delete(String key) {
+        O response = dao.delete(key);
+        if (response.success()) {
+            written(key, null);
+        }
+        return response;
+    }
+
+    public O delete(String key, long version) {
+        O response = dao.delete(key, version);
+        if (response.success()) {
+            written(key, null);
+        }
+        return response;
+    }
+
+    public CompletableFuture<O> deleteAsync(String key) {
+        return dao.deleteAsync(key).thenApply(response -> {
+            if (response.success()) {
+                written(key, null);
+            }
+            return response;
+        });
+    }
+
+    public CompletableFuture<O> getByKeyAsync(String key) {
+        return dao.getByKeyAsync(key);
+    }
+
+    public CompletableFuture<List<O>> getByQueryAsync(String query, int pageSize, int page) {
+        return dao.getByQueryAsync(query, pageSize, page);
+    }
+
+    public void scan(int batchSize, Consumer<O> consumer) {
+        dao.scan(batchSize, consumer);
+    }
+
+    /**
+     * Stops rebuilding the index and the threads finding duplicates; the
+     * wrapped object is not closed.
+     */
+    public void close() {
+        index.close();
+        workers.shutdownNow();
+    }
+}
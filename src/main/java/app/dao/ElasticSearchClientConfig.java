@@ -0,0 +1,161 @@
+package app.dao;
+
+/**
+ * Connection settings for the Elasticsearch client used by ElasticSearchDAO:
+ * the nodes to send requests to (used round-robin, skipping nodes that have
+ * failed until they are retried after a back-off), the connect and socket
+ * timeouts, the size of the connection pool, whether to discover the rest of
+ * the cluster by sniffing, how often reads are retried and when writes are
+ * made visible to searches. The defaults are those of the Elasticsearch
+ * client, except that reads are retried twice.
+ */
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ElasticSearchClientConfig {
+
+    private final List<HttpHost> hosts;
+    private final int connectTimeoutMillis;
+    private final int socketTimeoutMillis;
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final int sniffIntervalMillis;
+    private final int readRetries;
+    private final long retryBackoffMillis;
+    private final RefreshPolicy refreshPolicy;
+
+    /**
+     * @param hosts = the Elasticsearch nodes to connect to.
+     */
+    public ElasticSearchClientConfig(List<HttpHost> hosts) {
+        this(hosts, RestClientBuilder.DEFAULT_CONNECT_TIMEOUT_MILLIS, RestClientBuilder.DEFAULT_SOCKET_TIMEOUT_MILLIS,
+                RestClientBuilder.DEFAULT_MAX_CONN_TOTAL, RestClientBuilder.DEFAULT_MAX_CONN_PER_ROUTE, 0, 2, 50, RefreshPolicy.NONE);
+    }
+
+    private ElasticSearchClientConfig(List<HttpHost> hosts, int connectTimeoutMillis, int socketTimeoutMillis,
+                                      int maxConnections, int maxConnectionsPerRoute, int sniffIntervalMillis,
+                                      int readRetries, long retryBackoffMillis, RefreshPolicy refreshPolicy) {
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("At least one Elasticsearch host is required");
+        }
+        this.hosts = Collections.unmodifiableList(new ArrayList<>(hosts));
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.socketTimeoutMillis = socketTimeoutMillis;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.sniffIntervalMillis = sniffIntervalMillis;
+        this.readRetries = readRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.refreshPolicy = refreshPolicy;
+    }
+
+    /**
+     * @param hosts = a comma-separated list of node URLs, e.g.
+     *        "http://es1:9200,http://es2:9200"; the scheme defaults to http
+     *        and the port to 9200.
+     */
+    public static List<HttpHost> parseHosts(String hosts) {
+        List<HttpHost> parsed = new ArrayList<>();
+        for (String host : hosts.split(",")) {
+            host = host.trim();
+            if (host.isEmpty()) {
+                continue;
+            }
+            HttpHost url = HttpHost.create(host);
+            parsed.add(url.getPort() < 0 ? new HttpHost(url.getHostName(), 9200, url.getSchemeName()) : url);
+        }
+        return parsed;
+    }
+
+    /**
+     * @param connectTimeoutMillis = how long to wait for a connection to a node.
+     * @param socketTimeoutMillis = how long to wait for data once connected; a
+     *        request that times out is failed over to the next node.
+     */
+    public ElasticSearchClientConfig withTimeouts(int connectTimeoutMillis, int socketTimeoutMillis) {
+        return new ElasticSearchClientConfig(hosts, connectTimeoutMillis, socketTimeoutMillis, maxConnections,
+                maxConnectionsPerRoute, sniffIntervalMillis, readRetries, retryBackoffMillis, refreshPolicy);
+    }
+
+    /**
+     * @param maxConnections = the maximum number of open connections in total.
+     * @param maxConnectionsPerRoute = the maximum number to any one node.
+     */
+    public ElasticSearchClientConfig withPool(int maxConnections, int maxConnectionsPerRoute) {
+        return new ElasticSearchClientConfig(hosts, connectTimeoutMillis, socketTimeoutMillis, maxConnections,
+                maxConnectionsPerRoute, sniffIntervalMillis, readRetries, retryBackoffMillis, refreshPolicy);
+    }
+
+    /**
+     * @param sniffIntervalMillis = how often to refresh the list of nodes from
+     *        the cluster (it is also refreshed after a node fails); 0 uses the
+     *        configured hosts only.
+     */
+    public ElasticSearchClientConfig withSniffing(int sniffIntervalMillis) {
+        return new ElasticSearchClientConfig(hosts, connectTimeoutMillis, socketTimeoutMillis, maxConnections,
+                maxConnectionsPerRoute, sniffIntervalMillis, readRetries, retryBackoffMillis, refreshPolicy);
+    }
+
+    /**
+     * @param readRetries = how many times a failed read is retried.
+     * @param retryBackoffMillis = the delay before the first retry, doubled
+     *        (with jitter) before each following one.
+     */
+    public ElasticSearchClientConfig withReadRetries(int readRetries, long retryBackoffMillis) {
+        return new ElasticSearchClientConfig(hosts, connectTimeoutMillis, socketTimeoutMillis, maxConnections,
+                maxConnectionsPerRoute, sniffIntervalMillis, readRetries, retryBackoffMillis, refreshPolicy);
+    }
+
+    /**
+     * @param refreshPolicy = when a write's changes become visible to searches:
+     *        NONE (at the next periodic refresh), WAIT_UNTIL (the write waits
+     *        for that refresh) or IMMEDIATE (forces a refresh; expensive).
+     */
+    public ElasticSearchClientConfig withRefreshPolicy(RefreshPolicy refreshPolicy) {
+        return new ElasticSearchClientConfig(hosts, connectTimeoutMillis, socketTimeoutMillis, maxConnections,
+                maxConnectionsPerRoute, sniffIntervalMillis, readRetries, retryBackoffMillis, refreshPolicy);
+    }
+
+    /**
+     * @return a client builder for the configured hosts, timeouts and pool.
+     */
+    RestClientBuilder clientBuilder() {
+        return RestClient.builder(hosts.toArray(new HttpHost[0]))
+                .setRequestConfigCallback(request -> request
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(socketTimeoutMillis))
+                .setHttpClientConfigCallback(client -> client
+                        .setMaxConnTotal(maxConnections)
+                        .setMaxConnPerRoute(maxConnectionsPerRoute))
+                // the client fails a request over to each node in turn within this time
+                .setMaxRetryTimeoutMillis(Math.max(socketTimeoutMillis, RestClientBuilder.DEFAULT_MAX_RETRY_TIMEOUT_MILLIS));
+    }
+
+    public List<HttpHost> hosts() {
+        return hosts;
+    }
+
+    public int sniffIntervalMillis() {
+        return sniffIntervalMillis;
+    }
+
+    public int readRetries() {
+        return readRetries;
+    }
+
+    public long retryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public RefreshPolicy refreshPolicy() {
+        return refreshPolicy;
+    }
+
+}
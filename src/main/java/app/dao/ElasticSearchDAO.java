@@ -1,45 +1,139 @@
 package app.dao;
 
 /**
- * Implementation of a database access object for Elasticsearch.
+ * Implementation of a database access object for Elasticsearch. Reads (key
+ * lookups and searches) that fail with a connection error or an overloaded
+ * cluster are retried with exponential back-off; writes are not, since a
+ * write whose response was lost may already have been applied.
  */
 
 import app.converter.Converter;
+import app.converter.SourceConverter;
+import app.dao.query.ContactSearch;
 import app.models.Contact;
 import org.apache.http.HttpHost;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.client.RestClient;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.sniff.ElasticsearchHostsSniffer;
+import org.elasticsearch.client.sniff.SniffOnFailureListener;
+import org.elasticsearch.client.sniff.Sniffer;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.suggest.SuggestBuilder;
+import org.elasticsearch.search.suggest.SuggestBuilders;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
+import org.elasticsearch.search.sort.SortOrder;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
-public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
+public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>>, Closeable {
+
+    // keyword subfield holding the same value as the document id, the contact
+    // key, which makes it a unique tiebreaker; sorting on _id itself would
+    // load its fielddata onto the heap
+    private static final String KEY_SORT_FIELD = "name.key";
+
+    // completion subfield of name created by ElasticSearchIndexManager
+    private static final String SUGGEST_FIELD = "name.suggest";
+
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
 
     private final RestHighLevelClient client;
+    private final Sniffer sniffer;
     private final Converter<Contact, String> converter;
+    private final int readRetries;
+    private final long retryBackoffMillis;
+    private final WriteRequest.RefreshPolicy refreshPolicy;
 
     public ElasticSearchDAO(String hostName, int portNum, String scheme, Converter<Contact, String> converter) {
-        client = new RestHighLevelClient(
-                RestClient.builder(
-                        new HttpHost(hostName, portNum, scheme)
-                )
-        );
+        this(new ElasticSearchClientConfig(Collections.singletonList(new HttpHost(hostName, portNum, scheme))),
+                converter);
+    }
+
+    /**
+     * @param config = the nodes, timeouts, connection pool and retry settings
+     *        of the client.
+     * @param converter = an implementation of Converter<S, T> that transforms
+     *        instances of the data model to JSON (used by Elasticsearch) and
+     *        vice-versa.
+     */
+    public ElasticSearchDAO(ElasticSearchClientConfig config, Converter<Contact, String> converter) {
+        if (config.sniffIntervalMillis() > 0) {
+            SniffOnFailureListener onFailure = new SniffOnFailureListener();
+            client = new RestHighLevelClient(config.clientBuilder().setFailureListener(onFailure));
+            boolean https = "https".equals(config.hosts().get(0).getSchemeName());
+            sniffer = Sniffer.builder(client.getLowLevelClient())
+                    .setSniffIntervalMillis(config.sniffIntervalMillis())
+                    .setHostsSniffer(new ElasticsearchHostsSniffer(client.getLowLevelClient(),
+                            ElasticsearchHostsSniffer.DEFAULT_SNIFF_REQUEST_TIMEOUT,
+                            https ? ElasticsearchHostsSniffer.Scheme.HTTPS : ElasticsearchHostsSniffer.Scheme.HTTP))
+                    .build();
+            onFailure.setSniffer(sniffer);
+        } else {
+            client = new RestHighLevelClient(config.clientBuilder());
+            sniffer = null;
+        }
+        this.converter = converter;
+        this.readRetries = config.readRetries();
+        this.retryBackoffMillis = config.retryBackoffMillis();
+        this.refreshPolicy = config.refreshPolicy();
+    }
+
+    /**
+     * @param client = a client configured by the caller, e.g. in tests; reads
+     *        are not retried.
+     */
+    public ElasticSearchDAO(RestHighLevelClient client, Converter<Contact, String> converter) {
+        this.client = client;
+        this.sniffer = null;
         this.converter = converter;
+        this.readRetries = 0;
+        this.retryBackoffMillis = 0;
+        this.refreshPolicy = WriteRequest.RefreshPolicy.NONE;
     }
 
     /**
@@ -67,12 +161,7 @@ public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
 
         try {
 
-            GetResponse response = client.get(request);
-            if (response.isExists()) {
-                daoResponse = new ContactDAOResponse(converter.from(response.getSourceAsString()));
-            } else {
-                daoResponse = new ContactDAOResponse("Record not found");
-            }
+            daoResponse = getResult(read(() -> client.get(request)));
 
         } catch (ElasticsearchException e) {
             daoResponse = new ContactDAOResponse("Elasticsearch error: " + e.status(), e);
@@ -83,6 +172,52 @@ public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
         return daoResponse;
     }
 
+    /**
+     * Fetches the documents stored under each of @keys with a single multi-get
+     * request.
+     * @param keys = the unique keys of the desired documents.
+     * @return a DAOResponse per key, in the order of @keys, wrapping the
+     *        Contact or conveying that it was not found; if the request fails
+     *        as a whole, every key gets the same error.
+     */
+    public List<DAOResponse<Contact>> getByKeys(Collection<String> keys) {
+
+        List<DAOResponse<Contact>> results = new ArrayList<>(keys.size());
+        if (keys.isEmpty()) {
+            return results;
+        }
+        MultiGetRequest request = new MultiGetRequest();
+        for (String key : keys) {
+            request.add("contacts", "doc", key);
+        }
+
+        DAOResponse<Contact> error;
+        try {
+
+            for (MultiGetItemResponse item : read(() -> client.multiGet(request)).getResponses()) {
+                if (item.isFailed()) {
+                    Exception cause = item.getFailure().getFailure();
+                    results.add(new ContactDAOResponse("Elasticsearch error: " + ExceptionsHelper.status(cause),
+                            cause));
+                } else {
+                    results.add(getResult(item.getResponse()));
+                }
+            }
+            return results;
+
+        } catch (ElasticsearchException e) {
+            error = new ContactDAOResponse("Elasticsearch error: " + e.status(), e);
+        } catch (IOException e) {
+            error = new ContactDAOResponse("Connection error", e);
+        }
+
+        results.clear();
+        for (int i = 0; i < keys.size(); i++) {
+            results.add(error);
+        }
+        return results;
+    }
+
     /**
      * Fetches a list of DAOResponses wrapping documents from Elasticsearch
      * based on a query string query passed as a string.
@@ -94,24 +229,135 @@ public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
      */
     public List<DAOResponse<Contact>> getByQuery(String query, int pageSize, int page) {
 
-        SearchRequest request = new SearchRequest("contacts");
+        SearchRequest request = searchRequest(query, pageSize, page);
+
+        List<DAOResponse<Contact>> results = new ArrayList<>();
+        try {
+
+            results = searchResults(read(() -> client.search(request)));
+
+        } catch (ElasticsearchException e) {
+            results.add(new ContactDAOResponse("Elasticsearch error: " + e.status(), e));
+        } catch (IOException e) {
+            results.add(new ContactDAOResponse("Connection error", e));
+        }
+
+        return results;
+    }
+
+    /**
+     * Fetches a page of documents matching a query string query, sorted by key
+     * and continuing after the key wrapped in @cursor using search_after, so
+     * that deep pages cost the same as the first and are not limited by the
+     * index's max result window.
+     * @param query = a query string query represented as a String.
+     * @param pageSize = the number of results to return per query.
+     * @param cursor = the nextCursor of the previous page, or null for the first.
+     * @return a QueryPage of DAOResponses wrapping Contact instances and the
+     *        cursor of the next page.
+     */
+    public QueryPage<DAOResponse<Contact>> getByQueryAfter(String query, int pageSize, String cursor) {
+
         SearchSourceBuilder builder = new SearchSourceBuilder();
-        builder.query(QueryBuilders.queryStringQuery(query));
-        builder.from(page);
+        builder.query(queryString(query));
+        builder.sort(KEY_SORT_FIELD, SortOrder.ASC);
         builder.size(pageSize);
+        if (cursor != null && !cursor.isEmpty()) {
+            builder.searchAfter(new Object[]{QueryPage.decodeCursor(cursor)});
+        }
+        SearchRequest request = new SearchRequest("contacts");
         request.source(builder);
 
         List<DAOResponse<Contact>> results = new ArrayList<>();
+        String nextCursor = null;
         try {
 
-            SearchResponse response = client.search(request);
-            SearchHits responseHits = response.getHits();
-            SearchHit[] hits = responseHits.getHits();
-
+            SearchResponse response = read(() -> client.search(request));
+            SearchHit[] hits = response.getHits().getHits();
             for (SearchHit hit : hits) {
-                results.add(
-                        new ContactDAOResponse(converter.from(hit.getSourceAsString()))
-                );
+                results.add(new ContactDAOResponse(fromSource(hit.getSourceRef())));
+            }
+            if (hits.length == pageSize && hits.length > 0) {
+                nextCursor = QueryPage.encodeCursor(hits[hits.length - 1].getId());
+            }
+
+        } catch (ElasticsearchException e) {
+            results.add(new ContactDAOResponse("Elasticsearch error: " + e.status(), e));
+        } catch (IOException e) {
+            results.add(new ContactDAOResponse("Connection error", e));
+        }
+
+        return new QueryPage<>(results, nextCursor);
+    }
+
+    /**
+     * Fetches a page of the contacts matching a structured @search, compiled
+     * by ElasticSearchQueryCompiler into unscored term and prefix filters
+     * rather than parsed as a query string. Requires an index created with
+     * the current mapping (see ElasticSearchIndexManager).
+     * @return a List of DAOResponses wrapping the matching contacts, or a
+     *        single unsuccessful response if the request failed.
+     */
+    public List<DAOResponse<Contact>> search(ContactSearch search) {
+
+        SortOrder order = search.descending() ? SortOrder.DESC : SortOrder.ASC;
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        builder.query(ElasticSearchQueryCompiler.compile(search.query()));
+        switch (search.sortField()) {
+            case PHONE:
+                builder.sort("phone", order);
+                break;
+            case EMAIL:
+                builder.sort("email.keyword", order);
+                break;
+            default:
+                break;
+        }
+        builder.sort(KEY_SORT_FIELD, search.sortField() == ContactSearch.SortField.KEY ? order : SortOrder.ASC);
+        builder.from(search.offset());
+        builder.size(search.pageSize());
+        SearchRequest request = new SearchRequest("contacts");
+        request.source(builder);
+
+        List<DAOResponse<Contact>> results = new ArrayList<>();
+        try {
+
+            results = searchResults(read(() -> client.search(request)));
+
+        } catch (ElasticsearchException e) {
+            results.add(new ContactDAOResponse("Elasticsearch error: " + e.status(), e));
+        } catch (IOException e) {
+            results.add(new ContactDAOResponse("Connection error", e));
+        }
+
+        return results;
+    }
+
+    /**
+     * Fetches the contacts whose name starts with @prefix (ignoring case and
+     * accents) from the completion suggester, which answers from an in-memory
+     * structure rather than by searching the index. Requires an index created
+     * with the current mapping (see ElasticSearchIndexManager).
+     * @param prefix = the beginning of a name, as typed so far.
+     * @param size = the maximum number of contacts to return.
+     * @return a List of DAOResponses wrapping the matching contacts, or a
+     *        single unsuccessful response if the request failed.
+     */
+    public List<DAOResponse<Contact>> suggest(String prefix, int size) {
+
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        builder.size(0);
+        builder.suggest(new SuggestBuilder().addSuggestion("names",
+                SuggestBuilders.completionSuggestion(SUGGEST_FIELD).prefix(prefix).size(size)));
+        SearchRequest request = new SearchRequest("contacts");
+        request.source(builder);
+
+        List<DAOResponse<Contact>> results = new ArrayList<>();
+        try {
+
+            CompletionSuggestion suggestion = read(() -> client.search(request)).getSuggest().getSuggestion("names");
+            for (CompletionSuggestion.Entry.Option option : suggestion.getOptions()) {
+                results.add(new ContactDAOResponse(fromSource(option.getHit().getSourceRef())));
             }
 
         } catch (ElasticsearchException e) {
@@ -123,6 +369,100 @@ public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
         return results;
     }
 
+    /**
+     * Copies the source of each document matching a query string query to
+     * @sink straight from the search response, without converting it to a
+     * Contact and back.
+     * @param query = a query string query represented as a String.
+     * @param pageSize = the number of results to return per query.
+     * @param page = the results offset.
+     * @param sink = receives the JSON source of each hit.
+     * @return a successful DAOResponse with no payload, or an error message /
+     *        exception if the search failed.
+     */
+    public DAOResponse<Contact> getSourcesByQuery(String query, int pageSize, int page, SourceSink sink)
+            throws IOException {
+
+        SearchResponse response;
+        try {
+            response = read(() -> client.search(searchRequest(query, pageSize, page)));
+        } catch (ElasticsearchException e) {
+            return new ContactDAOResponse("Elasticsearch error: " + e.status(), e);
+        } catch (IOException e) {
+            return new ContactDAOResponse("Connection error", e);
+        }
+
+        for (SearchHit hit : response.getHits().getHits()) {
+            BytesRefIterator chunks = hit.getSourceRef().iterator();
+            for (BytesRef chunk = chunks.next(); chunk != null; chunk = chunks.next()) {
+                sink.accept(chunk.bytes, chunk.offset, chunk.length);
+            }
+        }
+        return new ContactDAOResponse(null, true, null, null);
+    }
+
+    /**
+     * Reads a stored document, straight from its bytes if the converter is a
+     * SourceConverter.
+     */
+    @SuppressWarnings("unchecked")
+    private Contact fromSource(BytesReference source) {
+        if (converter instanceof SourceConverter) {
+            return ((SourceConverter<Contact>) converter).fromSource(source);
+        }
+        return converter.from(source.utf8ToString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private BytesReference toSource(Contact contact) {
+        if (converter instanceof SourceConverter) {
+            return ((SourceConverter<Contact>) converter).toSource(contact);
+        }
+        return new BytesArray(converter.to(contact));
+    }
+
+    private DAOResponse<Contact> getResult(GetResponse response) {
+        if (response.isExists()) {
+            return new ContactDAOResponse(fromSource(response.getSourceAsBytesRef()), response.getVersion());
+        }
+        return new ContactDAOResponse("Record not found");
+    }
+
+    /**
+     * Parses @query as a query string query, refusing terms that start with a
+     * wildcard (which must visit every term of the field); a bare "*" is
+     * turned into a match_all query.
+     */
+    private static QueryBuilder queryString(String query) {
+        if (query.trim().equals("*")) {
+            return QueryBuilders.matchAllQuery();
+        }
+        return QueryBuilders.queryStringQuery(query).allowLeadingWildcard(false);
+    }
+
+    private static SearchRequest searchRequest(String query, int pageSize, int page) {
+        SearchRequest request = new SearchRequest("contacts");
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        builder.query(queryString(query));
+        builder.from(page);
+        builder.size(pageSize);
+        request.source(builder);
+        return request;
+    }
+
+    private List<DAOResponse<Contact>> searchResults(SearchResponse response) {
+        SearchHits responseHits = response.getHits();
+        SearchHit[] hits = responseHits.getHits();
+
+        List<DAOResponse<Contact>> results = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            results.add(
+                    new ContactDAOResponse(fromSource(hit.getSourceRef()))
+            );
+        }
+        return results;
+    }
+
     /**
      * Adds a document to Elasticsearch.
      * @param contact = the Contact to add to Elasticsearch.
@@ -131,13 +471,11 @@ public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
      */
     public DAOResponse<Contact> post(Contact contact) {
         DAOResponse<Contact> daoResponse;
-        IndexRequest request = new IndexRequest("contacts", "doc", contact.getKey());
-        request.source(converter.to(contact), XContentType.JSON);
-        request.opType("create"); // enforce unique id
+        IndexRequest request = createRequest(contact);
 
         try {
-            IndexResponse result = client.index(request);
-            daoResponse = new ContactDAOResponse(contact);
+            IndexResponse result = client.index(request.setRefreshPolicy(refreshPolicy));
+            daoResponse = new ContactDAOResponse(contact, result.getVersion());
         } catch (ElasticsearchException e) {
             daoResponse = new ContactDAOResponse("Elasticseach error: " + e.status(), e);
         } catch (IOException e) {
@@ -146,8 +484,123 @@ public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
         return daoResponse;
     }
 
+    private IndexRequest createRequest(Contact contact) {
+        IndexRequest request = new IndexRequest("contacts", "doc", contact.getKey());
+        request.source(toSource(contact), XContentType.JSON);
+        request.opType("create"); // enforce unique id
+        return request;
+    }
+
     /**
-     * Updates a document in Elasticsearch.
+     * Adds a batch of documents to Elasticsearch in a single bulk request.
+     * @param contacts = the Contacts to add.
+     * @return a List of DAOResponses, one per contact in the order given, each
+     *         wrapping the added Contact or an error message / exception.
+     */
+    public List<DAOResponse<Contact>> postAll(List<Contact> contacts) {
+
+        List<DAOResponse<Contact>> results = new ArrayList<>(contacts.size());
+        List<Integer> requested = new ArrayList<>(contacts.size());
+        BulkRequest request = new BulkRequest();
+        request.setRefreshPolicy(refreshPolicy);
+        for (Contact contact : contacts) {
+            if (contact == null || contact.getName() == null) {
+                results.add(new ContactDAOResponse("Invalid contact: a name is required"));
+                continue;
+            }
+            requested.add(results.size());
+            results.add(null);
+            request.add(createRequest(contact));
+        }
+
+        if (request.numberOfActions() == 0) {
+            return results;
+        }
+
+        try {
+
+            BulkItemResponse[] items = client.bulk(request).getItems();
+            for (int i = 0; i < items.length; i++) {
+                int position = requested.get(i);
+                if (items[i].isFailed()) {
+                    BulkItemResponse.Failure failure = items[i].getFailure();
+                    results.set(position, new ContactDAOResponse("Elasticsearch error: " + failure.getStatus(),
+                            failure.getCause()));
+                } else {
+                    results.set(position, new ContactDAOResponse(contacts.get(position), items[i].getVersion()));
+                }
+            }
+
+        } catch (ElasticsearchException e) {
+            fill(results, requested, new ContactDAOResponse("Elasticsearch error: " + e.status(), e));
+        } catch (IOException e) {
+            fill(results, requested, new ContactDAOResponse("Connection error", e));
+        }
+
+        return results;
+    }
+
+    private static void fill(List<DAOResponse<Contact>> results, List<Integer> positions,
+                             DAOResponse<Contact> response) {
+        for (int position : positions) {
+            results.set(position, response);
+        }
+    }
+
+    /**
+     * Passes every document in Elasticsearch to @consumer using a scroll, so
+     * that only one batch of hits is held in memory at a time.
+     * @param batchSize = the number of documents fetched per scroll request.
+     * @param consumer = receives a DAOResponse wrapping each Contact, or a
+     *        single unsuccessful response if the scroll fails.
+     */
+    public void scan(int batchSize, Consumer<DAOResponse<Contact>> consumer) {
+
+        SearchRequest request = new SearchRequest("contacts");
+        request.scroll(SCROLL_KEEP_ALIVE);
+        request.source(new SearchSourceBuilder()
+                .query(QueryBuilders.matchAllQuery())
+                .sort(FieldSortBuilder.DOC_FIELD_NAME)
+                .size(batchSize));
+
+        String scrollId = null;
+        try {
+
+            SearchResponse response = client.search(request);
+            scrollId = response.getScrollId();
+            SearchHit[] hits = response.getHits().getHits();
+            while (hits.length > 0) {
+                for (SearchHit hit : hits) {
+                    consumer.accept(new ContactDAOResponse(fromSource(hit.getSourceRef())));
+                }
+                response = client.searchScroll(new SearchScrollRequest(scrollId).scroll(SCROLL_KEEP_ALIVE));
+                scrollId = response.getScrollId();
+                hits = response.getHits().getHits();
+            }
+
+        } catch (ElasticsearchException e) {
+            consumer.accept(new ContactDAOResponse("Elasticsearch error: " + e.status(), e));
+        } catch (IOException e) {
+            consumer.accept(new ContactDAOResponse("Connection error", e));
+        } finally {
+            if (scrollId != null) {
+                ClearScrollRequest clear = new ClearScrollRequest();
+                clear.addScrollId(scrollId);
+                try {
+                    client.clearScroll(clear);
+                } catch (ElasticsearchException | IOException e) {
+                    // the scroll expires on its own after SCROLL_KEEP_ALIVE
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates a document in Elasticsearch. If the name (and therefore the unique
+     * key) is unchanged this is a single partial update request; otherwise the
+     * existing document is fetched and the renamed document is created and the
+     * old one deleted in a single bulk request, creating before deleting so the
+     * contact is never missing from the index.
      * @param key = the unique key under which the desired document is stored in
      *        ElasticSearch.
      * @param contact = the updated Contact information (some fields may be null
@@ -157,17 +610,203 @@ public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
      *        operation fails.
      */
     public DAOResponse<Contact> put(String key, Contact contact) {
+        return put(key, contact, DAOResponse.NO_VERSION);
+    }
+
+    /**
+     * Updates a document only if its _version is still @version: the update,
+     * or the delete of the old document when renaming, is sent with that
+     * version, so Elasticsearch rejects it if the document has been written
+     * since. A rename that loses this race is rolled back.
+     * @return as put(key, contact), or "Version conflict" if the document has
+     *        been written since.
+     */
+    public DAOResponse<Contact> put(String key, Contact contact, long version) {
+        if (contact.getName() == null || contact.getKey().equals(key)) {
+            return update(key, contact, version);
+        }
+        return rename(key, contact, version);
+    }
 
-        // unique id will change if name is updated, so new entry must be created
-        DAOResponse<Contact> deleteResponse = delete(key);
+    private DAOResponse<Contact> update(String key, Contact contact, long version) {
 
-        if (deleteResponse.success()) {
-            contact = deleteResponse.payload().copyFrom(contact);
-        } else {
-            return deleteResponse;
+        DAOResponse<Contact> daoResponse;
+        UpdateRequest request = updateRequest(key, contact, version);
+
+        try {
+            UpdateResponse response = client.update(request);
+            daoResponse = updateResult(response);
+        } catch (ElasticsearchException e) {
+            daoResponse = updateFailure(e);
+        } catch (IOException e) {
+            daoResponse = new ContactDAOResponse("Connection error", e);
+        }
+
+        return daoResponse;
+    }
+
+    private UpdateRequest updateRequest(String key, Contact contact, long version) {
+        UpdateRequest request = new UpdateRequest("contacts", "doc", key);
+        request.doc(partialDocument(contact));
+        request.fetchSource(true);
+        request.setRefreshPolicy(refreshPolicy);
+        if (version != DAOResponse.NO_VERSION) {
+            request.version(version);
         }
+        return request;
+    }
 
-        return post(contact);
+    private DAOResponse<Contact> updateResult(UpdateResponse response) {
+        return new ContactDAOResponse(fromSource(response.getGetResult().sourceRef()), response.getVersion());
+    }
+
+    private static DAOResponse<Contact> updateFailure(ElasticsearchException e) {
+        if (e.status() == RestStatus.NOT_FOUND) {
+            return new ContactDAOResponse("Record not found");
+        }
+        if (e.status() == RestStatus.CONFLICT) {
+            return new ContactDAOResponse("Version conflict", e);
+        }
+        return new ContactDAOResponse("Elasticsearch error: " + e.status(), e);
+    }
+
+    private DAOResponse<Contact> rename(String key, Contact contact, long version) {
+
+        DAOResponse<Contact> daoResponse;
+        String newKey = contact.getKey();
+
+        try {
+
+            MultiGetItemResponse[] items = read(() -> client.multiGet(renameLookup(key, newKey))).getResponses();
+            DAOResponse<Contact> rejection = checkRename(items, version);
+            if (rejection != null) {
+                return rejection;
+            }
+
+            GetResponse existing = items[0].getResponse();
+            Contact updated = fromSource(existing.getSourceAsBytesRef()).copyFrom(contact);
+            BulkItemResponse[] results = client.bulk(renameRequest(key, newKey, updated, version)).getItems();
+            if (results[0].isFailed() && deleted(results[1])) {
+                // lost a race for the new key; the delete still ran, so put the old document back
+                client.index(restoreRequest(key, existing));
+            } else if (!results[0].isFailed() && !deleted(results[1])) {
+                // the old document was written or deleted since it was read; take the new one back out
+                client.delete(new DeleteRequest("contacts", "doc", newKey).setRefreshPolicy(refreshPolicy));
+            }
+            daoResponse = renameResult(results, updated);
+
+        } catch (ElasticsearchException e) {
+            daoResponse = new ContactDAOResponse("Elasticsearch error: " + e.status(), e);
+        } catch (IOException e) {
+            daoResponse = new ContactDAOResponse("Connection error", e);
+        }
+
+        return daoResponse;
+    }
+
+    private static MultiGetRequest renameLookup(String key, String newKey) {
+        return new MultiGetRequest()
+                .add("contacts", "doc", key)
+                .add("contacts", "doc", newKey);
+    }
+
+    /**
+     * @return an unsuccessful DAOResponse if the document to rename is missing
+     *        or not at @version (unless it is NO_VERSION), the new key is
+     *        taken or the lookup failed; otherwise null.
+     */
+    private static DAOResponse<Contact> checkRename(MultiGetItemResponse[] items, long version) {
+        for (MultiGetItemResponse item : items) {
+            if (item.isFailed()) {
+                Exception e = item.getFailure().getFailure();
+                return new ContactDAOResponse("Elasticsearch error: " + ExceptionsHelper.status(e), e);
+            }
+        }
+        if (!items[0].getResponse().isExists()) {
+            return new ContactDAOResponse("Record not found");
+        }
+        if (version != DAOResponse.NO_VERSION && items[0].getResponse().getVersion() != version) {
+            return new ContactDAOResponse("Version conflict");
+        }
+        if (items[1].getResponse().isExists()) {
+            return new ContactDAOResponse("Elasticsearch error: " + RestStatus.CONFLICT);
+        }
+        return null;
+    }
+
+    private BulkRequest renameRequest(String key, String newKey, Contact updated, long version) {
+        BulkRequest request = new BulkRequest();
+        request.setRefreshPolicy(refreshPolicy);
+        request.add(new IndexRequest("contacts", "doc", newKey)
+                .source(toSource(updated), XContentType.JSON)
+                .opType("create"));
+        DeleteRequest delete = new DeleteRequest("contacts", "doc", key);
+        if (version != DAOResponse.NO_VERSION) {
+            delete.version(version);
+        }
+        request.add(delete);
+        return request;
+    }
+
+    private IndexRequest restoreRequest(String key, GetResponse existing) {
+        return new IndexRequest("contacts", "doc", key)
+                .source(existing.getSourceAsBytesRef(), XContentType.JSON)
+                .opType("create")
+                .setRefreshPolicy(refreshPolicy);
+    }
+
+    /**
+     * @return the renamed contact if both the create and the delete succeeded;
+     *        otherwise the error of the first that failed ("Record not found"
+     *        or "Version conflict" if the old document was deleted or
+     *        written since it was read), the other having been undone.
+     */
+    private static DAOResponse<Contact> renameResult(BulkItemResponse[] results, Contact updated) {
+        if (results[0].isFailed()) {
+            BulkItemResponse.Failure failure = results[0].getFailure();
+            return new ContactDAOResponse("Elasticsearch error: " + failure.getStatus(), failure.getCause());
+        }
+        if (results[1].isFailed()) {
+            BulkItemResponse.Failure failure = results[1].getFailure();
+            if (failure.getStatus() == RestStatus.NOT_FOUND) {
+                return new ContactDAOResponse("Record not found");
+            }
+            if (failure.getStatus() == RestStatus.CONFLICT) {
+                return new ContactDAOResponse("Version conflict", failure.getCause());
+            }
+            return new ContactDAOResponse("Elasticsearch error: " + failure.getStatus(), failure.getCause());
+        }
+        if (!deleted(results[1])) {
+            return new ContactDAOResponse("Record not found");
+        }
+        return new ContactDAOResponse(updated, results[0].getVersion());
+    }
+
+    /**
+     * @return whether the bulk item @delete removed a document; a delete of a
+     *        missing document is not a failure in a bulk response, only a
+     *        "not_found" result.
+     */
+    private static boolean deleted(BulkItemResponse delete) {
+        return !delete.isFailed() && delete.getResponse().getResult() != DocWriteResponse.Result.NOT_FOUND;
+    }
+
+    /**
+     * Builds a partial document holding only the non-null fields of @contact,
+     * so that fields missing from an update are left untouched.
+     */
+    private static Map<String, Object> partialDocument(Contact contact) {
+        Map<String, Object> document = new HashMap<>();
+        if (contact.getName() != null) {
+            document.put("name", contact.getName());
+        }
+        if (contact.getPhone() != null) {
+            document.put("phone", contact.getPhone());
+        }
+        if (contact.getEmail() != null) {
+            document.put("email", contact.getEmail());
+        }
+        return document;
     }
 
     /**
@@ -179,20 +818,36 @@ public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
      *        operation fails.
      */
     public DAOResponse<Contact> delete(String key){
+        return delete(key, DAOResponse.NO_VERSION);
+    }
+
+    /**
+     * Removes a document only if its _version is still @version, which is
+     * sent with the delete request so that Elasticsearch enforces it.
+     * @return as delete(key), or "Version conflict" if the document has been
+     *        written since.
+     */
+    public DAOResponse<Contact> delete(String key, long version) {
 
         DAOResponse<Contact> daoResponse;
         DAOResponse<Contact> getResponse = getByKey(key);
 
-        if (getResponse.success()) {
+        if (getResponse.success() && version != DAOResponse.NO_VERSION && getResponse.version() != version) {
+            daoResponse = new ContactDAOResponse("Version conflict");
+        } else if (getResponse.success()) {
 
             try {
 
-                DeleteRequest request = new DeleteRequest("contacts", "doc", key);
+                DeleteRequest request = new DeleteRequest("contacts", "doc", key).setRefreshPolicy(refreshPolicy);
+                if (version != DAOResponse.NO_VERSION) {
+                    request.version(version);
+                }
                 DeleteResponse deleteResponse = client.delete(request);
                 daoResponse = new ContactDAOResponse(getResponse.payload());
 
             } catch (ElasticsearchException e) {
-                daoResponse = new ContactDAOResponse("Elasticsearch error: " + e.status(), e);
+                daoResponse = new ContactDAOResponse(e.status() == RestStatus.CONFLICT ? "Version conflict"
+                        : "Elasticsearch error: " + e.status(), e);
             } catch (IOException e) {
                 daoResponse = new ContactDAOResponse("Connection error", e);
             }
@@ -204,4 +859,173 @@ public class ElasticSearchDAO implements DAO<Contact, DAOResponse<Contact>> {
         return daoResponse;
     }
 
+    /**
+     * Asynchronous variant of getByKey; the returned future completes on the
+     * Elasticsearch client's I/O thread and never completes exceptionally.
+     */
+    public CompletableFuture<DAOResponse<Contact>> getByKeyAsync(String key) {
+        CompletableFuture<DAOResponse<Contact>> future = new CompletableFuture<>();
+        client.getAsync(new GetRequest("contacts", "doc", key),
+                listener(future, this::getResult, ElasticSearchDAO::failure));
+        return future;
+    }
+
+    /**
+     * Asynchronous variant of getByQuery.
+     */
+    public CompletableFuture<List<DAOResponse<Contact>>> getByQueryAsync(String query, int pageSize, int page) {
+        CompletableFuture<List<DAOResponse<Contact>>> future = new CompletableFuture<>();
+        client.searchAsync(searchRequest(query, pageSize, page), listener(future, this::searchResults,
+                e -> Collections.singletonList(failure(e))));
+        return future;
+    }
+
+    /**
+     * Asynchronous variant of post.
+     */
+    public CompletableFuture<DAOResponse<Contact>> postAsync(Contact contact) {
+        CompletableFuture<DAOResponse<Contact>> future = new CompletableFuture<>();
+        client.indexAsync(createRequest(contact).setRefreshPolicy(refreshPolicy),
+                listener(future, response -> new ContactDAOResponse(contact, response.getVersion()),
+                        ElasticSearchDAO::failure));
+        return future;
+    }
+
+    /**
+     * Asynchronous variant of put, with the same single round trip for updates
+     * that keep the key and lookup plus bulk request for renames.
+     */
+    public CompletableFuture<DAOResponse<Contact>> putAsync(String key, Contact contact) {
+        if (contact.getName() == null || contact.getKey().equals(key)) {
+            CompletableFuture<DAOResponse<Contact>> future = new CompletableFuture<>();
+            client.updateAsync(updateRequest(key, contact, DAOResponse.NO_VERSION), listener(future, this::updateResult,
+                    e -> e instanceof ElasticsearchException ? updateFailure((ElasticsearchException) e) : failure(e)));
+            return future;
+        }
+
+        String newKey = contact.getKey();
+        CompletableFuture<MultiGetItemResponse[]> lookup = new CompletableFuture<>();
+        client.multiGetAsync(renameLookup(key, newKey),
+                ActionListener.wrap(response -> lookup.complete(response.getResponses()), lookup::completeExceptionally));
+
+        return lookup.thenCompose(items -> {
+            DAOResponse<Contact> rejection = checkRename(items, DAOResponse.NO_VERSION);
+            if (rejection != null) {
+                return CompletableFuture.completedFuture(rejection);
+            }
+            GetResponse existing = items[0].getResponse();
+            Contact updated = fromSource(existing.getSourceAsBytesRef()).copyFrom(contact);
+            CompletableFuture<DAOResponse<Contact>> future = new CompletableFuture<>();
+            client.bulkAsync(renameRequest(key, newKey, updated, DAOResponse.NO_VERSION), listener(future, response -> {
+                BulkItemResponse[] results = response.getItems();
+                if (results[0].isFailed() && deleted(results[1])) {
+                    client.indexAsync(restoreRequest(key, existing), ActionListener.wrap(r -> { }, e -> { }));
+                } else if (!results[0].isFailed() && !deleted(results[1])) {
+                    client.deleteAsync(new DeleteRequest("contacts", "doc", newKey).setRefreshPolicy(refreshPolicy),
+                            ActionListener.wrap(r -> { }, e -> { }));
+                }
+                return renameResult(results, updated);
+            }, ElasticSearchDAO::failure));
+            return future;
+        }).exceptionally(e -> failure(unwrap(e)));
+    }
+
+    /**
+     * Asynchronous variant of delete.
+     */
+    public CompletableFuture<DAOResponse<Contact>> deleteAsync(String key) {
+        return getByKeyAsync(key).thenCompose(getResponse -> {
+            if (!getResponse.success()) { // document to be deleted doesn't exist, just pass old response
+                return CompletableFuture.completedFuture(getResponse);
+            }
+            CompletableFuture<DAOResponse<Contact>> future = new CompletableFuture<>();
+            client.deleteAsync(new DeleteRequest("contacts", "doc", key).setRefreshPolicy(refreshPolicy),
+                    listener(future, response -> getResponse, ElasticSearchDAO::failure));
+            return future;
+        });
+    }
+
+    /**
+     * Stops sniffing for nodes and closes the client's connections.
+     */
+    public void close() throws IOException {
+        if (sniffer != null) {
+            sniffer.close();
+        }
+        client.close();
+    }
+
+    @FunctionalInterface
+    private interface Read<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Runs @read, retrying it up to readRetries times if it fails with a
+     * connection error or because the cluster is overloaded. The client has
+     * already tried every node by then, so each retry waits twice as long as
+     * the one before (with jitter, so that clients do not retry in step).
+     */
+    private <T> T read(Read<T> read) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return read.call();
+            } catch (IOException | ElasticsearchException e) {
+                if (attempt >= readRetries || !retryable(e)) {
+                    throw e;
+                }
+            }
+            long backoff = retryBackoffMillis << attempt;
+            try {
+                Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while retrying");
+            }
+        }
+    }
+
+    private static boolean retryable(Exception e) {
+        if (e instanceof ElasticsearchException) {
+            RestStatus status = ((ElasticsearchException) e).status();
+            return status == RestStatus.SERVICE_UNAVAILABLE || status == RestStatus.TOO_MANY_REQUESTS
+                    || status == RestStatus.BAD_GATEWAY || status == RestStatus.GATEWAY_TIMEOUT;
+        }
+        return true;
+    }
+
+    /**
+     * Adapts a CompletableFuture to the client's callback interface, turning both
+     * the response and any failure into a value so that callers only ever see
+     * DAOResponses.
+     */
+    private static <R, T> ActionListener<R> listener(CompletableFuture<T> future, Function<R, T> onResponse,
+                                                     Function<Exception, T> onFailure) {
+        return new ActionListener<R>() {
+            public void onResponse(R response) {
+                try {
+                    future.complete(onResponse.apply(response));
+                } catch (RuntimeException e) {
+                    future.complete(onFailure.apply(e));
+                }
+            }
+
+            public void onFailure(Exception e) {
+                future.complete(onFailure.apply(e));
+            }
+        };
+    }
+
+    private static DAOResponse<Contact> failure(Exception e) {
+        if (e instanceof IOException) {
+            return new ContactDAOResponse("Connection error", e);
+        }
+        return new ContactDAOResponse("Elasticsearch error: " + ExceptionsHelper.status(e), e);
+    }
+
+    private static Exception unwrap(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+    }
+
 }
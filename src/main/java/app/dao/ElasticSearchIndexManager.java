@@ -0,0 +1,301 @@
+package app.dao;
+
+/**
+ * Provisions the Elasticsearch index behind ElasticSearchDAO. The DAO always
+ * addresses the "contacts" alias, which points at a versioned index
+ * (contacts_v1, contacts_v2, ...) created with an explicit mapping:
+ *      name         text, with subfields
+ *                   name.folded (lowercased, accents folded: "jose" finds "José"),
+ *                   name.prefix (edge n-grams, for fast search-as-you-type),
+ *                   name.key    (keyword holding the contact's unique key, the
+ *                               tiebreaker results are sorted and paged on) and
+ *                   name.suggest (completion field used by suggest)
+ *      phone        keyword normalized to its digits ("(630) 615-1042" is 6306151042)
+ *      email        text, with email.keyword (lowercased keyword) and
+ *                   email.domain (the lowercased part after the @)
+ * Unknown fields are rejected, and searches without a field only look at
+ * name, name.folded, phone and email rather than every field. An index
+ * template applies the same settings to any contacts_v* index, e.g. one
+ * created by a manual reindex.
+ * When the mapping changes, MAPPING_VERSION is bumped and reindex() copies
+ * the documents into the new index before moving the alias to it in a single
+ * atomic step, so searches are served throughout. Writes made while the copy
+ * runs go to the old index, so reindexing should be done while writes are
+ * paused (or followed by a catch-up of the writes made in the meantime).
+ */
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+public class ElasticSearchIndexManager implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElasticSearchIndexManager.class);
+
+    public static final String ALIAS = "contacts";
+    static final int MAPPING_VERSION = 3;
+    // the longest name prefix held in name.prefix
+    static final int NAME_PREFIX_MAX_GRAM = 20;
+
+    private final RestHighLevelClient client;
+    private final int shards;
+    private final int replicas;
+
+    /**
+     * @param config = the client settings; the manager opens its own client,
+     *        which close() releases.
+     * @param shards = the number of primary shards of a new index.
+     * @param replicas = the number of replicas of each shard.
+     */
+    public ElasticSearchIndexManager(ElasticSearchClientConfig config, int shards, int replicas) {
+        this.client = new RestHighLevelClient(config.clientBuilder());
+        this.shards = shards;
+        this.replicas = replicas;
+    }
+
+    public static String indexName(int version) {
+        return ALIAS + "_v" + version;
+    }
+
+    /**
+     * Installs the index template and, if there is neither a contacts alias
+     * nor a contacts index yet, creates the current version of the index and
+     * points the alias at it. An existing index is left as it is, with a
+     * warning if it does not have the current mapping.
+     * @return the name of the index the DAO will use.
+     */
+    public String ensureIndex() throws IOException {
+        putTemplate();
+
+        String current = aliasedIndex();
+        if (current != null) {
+            if (!current.equals(indexName(MAPPING_VERSION))) {
+                LOG.warn("The {} alias points at {}, not {}; reindex to use the current mapping",
+                        ALIAS, current, indexName(MAPPING_VERSION));
+            }
+            return current;
+        }
+        if (client.indices().exists(new GetIndexRequest().indices(ALIAS))) {
+            LOG.warn("{} is an index with a dynamic mapping, not an alias; reindex to use the current mapping",
+                    ALIAS);
+            return ALIAS;
+        }
+
+        String index = indexName(MAPPING_VERSION);
+        createIndex(index);
+        client.indices().updateAliases(new IndicesAliasesRequest()
+                .addAliasAction(AliasActions.add().index(index).alias(ALIAS)));
+        LOG.info("Created {} with mapping version {}", index, MAPPING_VERSION);
+        return index;
+    }
+
+    /**
+     * Copies every document into the current version of the index and then,
+     * in one atomic alias update, points the alias at it. The previous index
+     * is kept (for rollback) unless it was a plain "contacts" index, which has
+     * to be deleted in the same step for the alias to take its name.
+     * @return the name of the index the alias now points at.
+     */
+    public String reindex() throws IOException {
+        putTemplate();
+
+        String target = indexName(MAPPING_VERSION);
+        String source = aliasedIndex();
+        boolean legacy = false;
+        if (source == null) {
+            if (!client.indices().exists(new GetIndexRequest().indices(ALIAS))) {
+                return ensureIndex();
+            }
+            source = ALIAS;
+            legacy = true;
+        }
+        if (source.equals(target)) {
+            LOG.info("{} already points at {}", ALIAS, target);
+            return target;
+        }
+
+        if (!client.indices().exists(new GetIndexRequest().indices(target))) {
+            createIndex(target);
+        }
+        String body = Strings.toString(XContentFactory.jsonBuilder().startObject()
+                .startObject("source").field("index", source).endObject()
+                .startObject("dest").field("index", target).endObject()
+                .endObject());
+        performRequest("POST", "/_reindex", Collections.singletonMap("wait_for_completion", "true"), body);
+
+        IndicesAliasesRequest swap = new IndicesAliasesRequest();
+        if (legacy) {
+            swap.addAliasAction(AliasActions.removeIndex().index(source));
+        } else {
+            swap.addAliasAction(AliasActions.remove().index(source).alias(ALIAS));
+        }
+        swap.addAliasAction(AliasActions.add().index(target).alias(ALIAS));
+        client.indices().updateAliases(swap);
+        LOG.info("Reindexed {} into {} and moved the {} alias", source, target, ALIAS);
+        return target;
+    }
+
+    private void createIndex(String index) throws IOException {
+        CreateIndexRequest request = new CreateIndexRequest(index);
+        request.source(Strings.toString(indexBody(XContentFactory.jsonBuilder().startObject()).endObject()),
+                XContentType.JSON);
+        client.indices().create(request);
+    }
+
+    // the high-level client has no template API in this version
+    private void putTemplate() throws IOException {
+        XContentBuilder template = XContentFactory.jsonBuilder().startObject()
+                .array("index_patterns", ALIAS + "_v*");
+        performRequest("PUT", "/_template/" + ALIAS, Collections.emptyMap(),
+                Strings.toString(indexBody(template).endObject()));
+    }
+
+    /**
+     * @return the index the alias points at, or null if there is no alias.
+     */
+    private String aliasedIndex() throws IOException {
+        Response response;
+        try {
+            response = client.getLowLevelClient().performRequest("GET", "/_alias/" + ALIAS);
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+        JsonObject indices = new JsonParser().parse(EntityUtils.toString(response.getEntity())).getAsJsonObject();
+        if (indices.size() != 1) {
+            throw new IOException("The " + ALIAS + " alias points at " + indices.size() + " indices: " + indices.keySet());
+        }
+        return indices.keySet().iterator().next();
+    }
+
+    private void performRequest(String method, String endpoint, Map<String, String> params, String body)
+            throws IOException {
+        client.getLowLevelClient().performRequest(method, endpoint, params,
+                new NStringEntity(body, ContentType.APPLICATION_JSON));
+    }
+
+    /**
+     * Adds the "settings" and "mappings" of a contacts index to @builder.
+     */
+    XContentBuilder indexBody(XContentBuilder builder) throws IOException {
+        builder.startObject("settings")
+                .field("number_of_shards", shards)
+                .field("number_of_replicas", replicas)
+                .array("index.query.default_field", "name", "name.folded", "phone", "email")
+                .startObject("analysis")
+                    .startObject("char_filter")
+                        .startObject("digits_only")
+                            .field("type", "pattern_replace").field("pattern", "[^0-9]").field("replacement", "")
+                        .endObject()
+                        .startObject("letters_only")
+                            .field("type", "pattern_replace").field("pattern", "[^A-Za-z]").field("replacement", "")
+                        .endObject()
+                    .endObject()
+                    .startObject("tokenizer")
+                        .startObject("after_at")
+                            .field("type", "pattern").field("pattern", "@(.+)$").field("group", 1)
+                        .endObject()
+                    .endObject()
+                    .startObject("filter")
+                        .startObject("name_edge_ngram")
+                            .field("type", "edge_ngram").field("min_gram", 1).field("max_gram", NAME_PREFIX_MAX_GRAM)
+                        .endObject()
+                    .endObject()
+                    .startObject("normalizer")
+                        .startObject("phone_digits")
+                            .field("type", "custom").array("char_filter", "digits_only")
+                        .endObject()
+                        // the same key as Contact.getKey(): ASCII letters only, lower case
+                        .startObject("contact_key")
+                            .field("type", "custom").array("char_filter", "letters_only").array("filter", "lowercase")
+                        .endObject()
+                        .startObject("lowercase_folded")
+                            .field("type", "custom").array("filter", "lowercase", "asciifolding")
+                        .endObject()
+                    .endObject()
+                    .startObject("analyzer")
+                        .startObject("name_folded")
+                            .field("type", "custom").field("tokenizer", "standard")
+                            .array("filter", "lowercase", "asciifolding")
+                        .endObject()
+                        .startObject("name_prefix")
+                            .field("type", "custom").field("tokenizer", "standard")
+                            .array("filter", "lowercase", "asciifolding", "name_edge_ngram")
+                        .endObject()
+                        .startObject("email_domain")
+                            .field("type", "custom").field("tokenizer", "after_at").array("filter", "lowercase")
+                        .endObject()
+                    .endObject()
+                .endObject()
+                .endObject();
+
+        builder.startObject("mappings")
+                .startObject("doc")
+                    .field("dynamic", "strict")
+                    .startObject("properties")
+                        .startObject("name")
+                            .field("type", "text")
+                            .startObject("fields")
+                                .startObject("folded")
+                                    .field("type", "text").field("analyzer", "name_folded")
+                                .endObject()
+                                .startObject("prefix")
+                                    .field("type", "text").field("analyzer", "name_prefix")
+                                    .field("search_analyzer", "name_folded")
+                                .endObject()
+                                .startObject("key")
+                                    .field("type", "keyword").field("normalizer", "contact_key")
+                                .endObject()
+                                .startObject("suggest")
+                                    .field("type", "completion").field("analyzer", "name_folded")
+                                .endObject()
+                            .endObject()
+                        .endObject()
+                        .startObject("phone")
+                            .field("type", "keyword").field("normalizer", "phone_digits")
+                        .endObject()
+                        .startObject("email")
+                            .field("type", "text")
+                            .startObject("fields")
+                                .startObject("keyword")
+                                    .field("type", "keyword").field("normalizer", "lowercase_folded")
+                                    .field("ignore_above", 256)
+                                .endObject()
+                                .startObject("domain")
+                                    .field("type", "text").field("analyzer", "email_domain")
+                                .endObject()
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject()
+                .endObject();
+        return builder;
+    }
+
+    public void close() throws IOException {
+        client.close();
+    }
+
+}
@@ -0,0 +1,75 @@
+package app.dao;
+
+/**
+ * Compiles a ContactQuery into an Elasticsearch query against the fields of
+ * the managed mapping (see ElasticSearchIndexManager), using only term and
+ * prefix lookups on normalized fields:
+ *      phone        term on phone, whose normalizer keeps only digits
+ *      emailDomain  term on email.domain
+ *      namePrefix   a term per word on the edge n-grams in name.prefix, or a
+ *                   prefix query on name.folded for words longer than the
+ *                   longest n-gram
+ *      all, any     bool filter / should, not bool must_not
+ * compile() wraps the result in a constant_score query, so the whole query
+ * runs in filter context: nothing is scored and Elasticsearch can cache the
+ * clauses' results between searches.
+ */
+
+import app.dao.query.ContactQuery;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+
+import java.util.List;
+
+class ElasticSearchQueryCompiler implements ContactQuery.Visitor<QueryBuilder> {
+
+    private static final ElasticSearchQueryCompiler INSTANCE = new ElasticSearchQueryCompiler();
+
+    static QueryBuilder compile(ContactQuery query) {
+        return QueryBuilders.constantScoreQuery(query.accept(INSTANCE));
+    }
+
+    public QueryBuilder matchAll() {
+        return QueryBuilders.matchAllQuery();
+    }
+
+    public QueryBuilder phone(String digits) {
+        return QueryBuilders.termQuery("phone", digits);
+    }
+
+    public QueryBuilder emailDomain(String domain) {
+        return QueryBuilders.termQuery("email.domain", domain);
+    }
+
+    public QueryBuilder namePrefix(List<String> words) {
+        BoolQueryBuilder bool = QueryBuilders.boolQuery();
+        for (String word : words) {
+            bool.filter(word.length() <= ElasticSearchIndexManager.NAME_PREFIX_MAX_GRAM
+                    ? QueryBuilders.termQuery("name.prefix", word)
+                    : QueryBuilders.prefixQuery("name.folded", word));
+        }
+        return words.size() == 1 ? bool.filter().get(0) : bool;
+    }
+
+    public QueryBuilder all(List<ContactQuery> clauses) {
+        BoolQueryBuilder bool = QueryBuilders.boolQuery();
+        for (ContactQuery clause : clauses) {
+            bool.filter(clause.accept(this));
+        }
+        return bool;
+    }
+
+    public QueryBuilder any(List<ContactQuery> clauses) {
+        BoolQueryBuilder bool = QueryBuilders.boolQuery().minimumShouldMatch(1);
+        for (ContactQuery clause : clauses) {
+            bool.should(clause.accept(this));
+        }
+        return bool;
+    }
+
+    public QueryBuilder not(ContactQuery clause) {
+        return QueryBuilders.boolQuery().mustNot(clause.accept(this));
+    }
+
+}
@@ -0,0 +1,695 @@
+package app.dao;
+
+/**
+ * Implementation of a database access object that keeps contacts in process.
+ * Contacts are held in a concurrent hash map keyed by their unique key, with
+ * an inverted index of field terms for queries. When a data directory is
+ * given, every mutation is appended to a write-ahead log before it is applied
+ * and the full contact set is periodically written to a snapshot, after which
+ * the log is discarded; on startup the snapshot is loaded and the log is
+ * replayed on top of it.
+ * Every write gives the contact a new version, taken from a counter that
+ * starts at the time the store was opened in microseconds, so versions keep
+ * increasing across restarts without being stored.
+ */
+
+import app.converter.Converter;
+import app.dao.query.ContactQuery;
+import app.dao.query.ContactSearch;
+import app.models.Contact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class EmbeddedDAO implements DAO<Contact, DAOResponse<Contact>>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedDAO.class);
+
+    private static final String SNAPSHOT_FILE = "contacts.snapshot";
+    private static final String LOG_FILE = "contacts.log";
+    private static final String ROTATED_LOG_FILE = "contacts.log.old";
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private static final char UPSERT = 'P';
+    private static final char REMOVE = 'D';
+
+    private static final String[] FIELDS = {"name", "phone", "email"};
+
+    private final Converter<Contact, String> converter;
+    private final ConcurrentHashMap<String, Contact> contacts = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<>();
+    private long lastVersion = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()); // guarded by writeLock
+    private final Map<String, ConcurrentSkipListMap<String, Set<String>>> index = new HashMap<>();
+
+    // serializes writers so that the log order matches the order mutations are applied
+    private final Object writeLock = new Object();
+
+    private final Path directory;
+    private final ScheduledExecutorService snapshotter;
+    private Writer log;
+
+    /**
+     * Constructor for a durable store.
+     * @param directory = the directory holding the snapshot and write-ahead log;
+     *        created if it does not exist.
+     * @param snapshotIntervalSeconds = how often to write a snapshot and truncate
+     *        the log (0 disables periodic snapshots).
+     * @param converter = an implementation of Converter<S, T> used to write
+     *        contacts to, and read them back from, the snapshot and log.
+     */
+    public EmbeddedDAO(Path directory, long snapshotIntervalSeconds, Converter<Contact, String> converter) {
+        this.converter = converter;
+        this.directory = directory;
+        for (String field : FIELDS) {
+            index.put(field, new ConcurrentSkipListMap<>());
+        }
+
+        if (directory == null) {
+            snapshotter = null;
+            return;
+        }
+
+        try {
+            Files.createDirectories(directory);
+            recover();
+            log = openLog();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open contact store in " + directory, e);
+        }
+
+        if (snapshotIntervalSeconds > 0) {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "contacts-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotter.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    LOG.warn("Snapshot of contact store failed", e);
+                }
+            }, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            snapshotter = null;
+        }
+    }
+
+    /**
+     * Constructor for a purely in-memory store with no persistence.
+     */
+    public EmbeddedDAO(Converter<Contact, String> converter) {
+        this(null, 0, converter);
+    }
+
+    /**
+     * Fetches a contact with a single hash lookup.
+     * @param key = the unique key under which the desired contact is stored.
+     * @return A DAOResponse which wraps the stored Contact, or conveys that
+     *        the record does not exist.
+     */
+    public DAOResponse<Contact> getByKey(String key) {
+        // the version is read first: apply() sets it after the contact, so it is never newer
+        Long version = key == null ? null : versions.get(key);
+        Contact contact = key == null ? null : contacts.get(key);
+        if (contact == null) {
+            return new ContactDAOResponse("Record not found");
+        }
+        return new ContactDAOResponse(contact, version == null ? DAOResponse.NO_VERSION : version);
+    }
+
+    /**
+     * Fetches contacts matching a query from the inverted index. Supported
+     * clauses are field:value and field:prefix* (for the name, phone and email
+     * fields) as well as bare value and prefix* terms, which match any field;
+     * whitespace separated clauses are OR'ed together, and an empty query or
+     * "*" matches everything. Results are ordered by key.
+     * @param query = the query string.
+     * @param pageSize = the number of results to return per query.
+     * @param page = the results offset.
+     * @return a List of DAOResponses wrapping the matching Contact instances.
+     */
+    public List<DAOResponse<Contact>> getByQuery(String query, int pageSize, int page) {
+        List<DAOResponse<Contact>> results = new ArrayList<>();
+        int skipped = 0;
+        for (String key : search(query)) {
+            if (results.size() >= pageSize) {
+                break;
+            }
+            Contact contact = contacts.get(key);
+            if (contact == null) { // removed since the index was read
+                continue;
+            }
+            if (skipped++ < page) {
+                continue;
+            }
+            results.add(new ContactDAOResponse(contact));
+        }
+        return results;
+    }
+
+    /**
+     * Fetches the page of contacts matching @query whose keys come after the
+     * key wrapped in @cursor, seeking straight to it in the ordered index.
+     */
+    public QueryPage<DAOResponse<Contact>> getByQueryAfter(String query, int pageSize, String cursor) {
+        NavigableSet<String> matches = search(query);
+        if (cursor != null && !cursor.isEmpty()) {
+            matches = matches.tailSet(QueryPage.decodeCursor(cursor), false);
+        }
+
+        List<DAOResponse<Contact>> results = new ArrayList<>();
+        String last = null;
+        for (String key : matches) {
+            if (results.size() >= pageSize) {
+                break;
+            }
+            Contact contact = contacts.get(key);
+            if (contact != null) {
+                results.add(new ContactDAOResponse(contact));
+                last = key;
+            }
+        }
+        return new QueryPage<>(results, results.size() == pageSize && last != null ? QueryPage.encodeCursor(last) : null);
+    }
+
+    /**
+     * Fetches a page of the contacts matching a structured @search by testing
+     * each contact in key order. Results ordered by key stop at the end of
+     * the page; other orders sort every match. Contacts without the sort
+     * field come last.
+     */
+    public List<DAOResponse<Contact>> search(ContactSearch search) {
+        ContactQuery query = search.query();
+        List<DAOResponse<Contact>> results = new ArrayList<>();
+        if (search.sortField() == ContactSearch.SortField.KEY) {
+            int skipped = 0;
+            for (String key : search.descending() ? keys.descendingSet() : keys) {
+                if (results.size() >= search.pageSize()) {
+                    break;
+                }
+                Contact contact = contacts.get(key);
+                if (contact != null && query.matches(contact) && skipped++ >= search.offset()) {
+                    results.add(new ContactDAOResponse(contact));
+                }
+            }
+            return results;
+        }
+
+        Function<Contact, String> field = search.sortField() == ContactSearch.SortField.PHONE
+                ? contact -> contact.getPhone() == null ? null : contact.getPhone().replaceAll("[^0-9]", "")
+                : contact -> contact.getEmail() == null ? null : contact.getEmail().toLowerCase(Locale.ROOT);
+        Comparator<String> values = search.descending() ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        List<Contact> matches = new ArrayList<>();
+        for (Contact contact : contacts.values()) {
+            if (query.matches(contact)) {
+                matches.add(contact);
+            }
+        }
+        matches.sort(Comparator.comparing(field, Comparator.nullsLast(values)).thenComparing(Contact::getKey));
+        for (int i = search.offset(); i < matches.size() && results.size() < search.pageSize(); i++) {
+            results.add(new ContactDAOResponse(matches.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Passes the JSON representation of each contact matching @query to @sink.
+     */
+    public DAOResponse<Contact> getSourcesByQuery(String query, int pageSize, int page, SourceSink sink)
+            throws IOException {
+        for (DAOResponse<Contact> response : getByQuery(query, pageSize, page)) {
+            byte[] source = converter.to(response.payload()).getBytes(StandardCharsets.UTF_8);
+            sink.accept(source, 0, source.length);
+        }
+        return new ContactDAOResponse(null, true, null, null);
+    }
+
+    /**
+     * Adds a contact, failing if a contact with the same key already exists.
+     * @param contact = the Contact to add.
+     * @return a DAOResponse wrapping the added Contact if successful
+     *         or an error message / exception in the case of failure.
+     */
+    public DAOResponse<Contact> post(Contact contact) {
+        if (contact == null || contact.getName() == null || contact.getKey().isEmpty()) {
+            return new ContactDAOResponse("Invalid contact: a name is required");
+        }
+
+        String key = contact.getKey();
+        Contact stored = new Contact(contact);
+        synchronized (writeLock) {
+            if (contacts.containsKey(key)) {
+                return new ContactDAOResponse("Record already exists");
+            }
+            try {
+                append(UPSERT + "\t" + converter.to(stored) + "\n");
+            } catch (IOException e) {
+                return new ContactDAOResponse("Storage error", e);
+            }
+            return new ContactDAOResponse(stored, apply(key, stored));
+        }
+    }
+
+    /**
+     * Adds a batch of contacts, writing all of their log records at once.
+     * @param toPost = the Contacts to add.
+     * @return one DAOResponse per contact, in the order given.
+     */
+    public List<DAOResponse<Contact>> postAll(List<Contact> toPost) {
+        List<DAOResponse<Contact>> results = new ArrayList<>(toPost.size());
+        synchronized (writeLock) {
+            Map<String, Contact> accepted = new LinkedHashMap<>();
+            List<Integer> positions = new ArrayList<>();
+            StringBuilder records = new StringBuilder();
+            for (Contact contact : toPost) {
+                if (contact == null || contact.getName() == null || contact.getKey().isEmpty()) {
+                    results.add(new ContactDAOResponse("Invalid contact: a name is required"));
+                    continue;
+                }
+                String key = contact.getKey();
+                if (contacts.containsKey(key) || accepted.containsKey(key)) {
+                    results.add(new ContactDAOResponse("Record already exists"));
+                    continue;
+                }
+                Contact stored = new Contact(contact);
+                accepted.put(key, stored);
+                positions.add(results.size());
+                records.append(UPSERT).append('\t').append(converter.to(stored)).append('\n');
+                results.add(new ContactDAOResponse(stored));
+            }
+
+            try {
+                append(records.toString());
+            } catch (IOException e) {
+                DAOResponse<Contact> failure = new ContactDAOResponse("Storage error", e);
+                for (int i = 0; i < results.size(); i++) {
+                    if (results.get(i).success()) {
+                        results.set(i, failure);
+                    }
+                }
+                return results;
+            }
+            int applied = 0;
+            for (Map.Entry<String, Contact> entry : accepted.entrySet()) {
+                long version = apply(entry.getKey(), entry.getValue());
+                results.set(positions.get(applied++), new ContactDAOResponse(entry.getValue(), version));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Updates a contact in place, moving it to a new key if its name changes.
+     * @param key = the unique key under which the contact is stored.
+     * @param contact = the updated Contact information (some fields may be null
+     *        if they are not updated).
+     * @return a DAOResponse wrapping the updated Contact if successful, or an
+     *        error message and exception if the operation fails.
+     */
+    public DAOResponse<Contact> put(String key, Contact contact) {
+        return put(key, contact, DAOResponse.NO_VERSION);
+    }
+
+    /**
+     * Updates a contact only if it is still at @version.
+     * @return as put(key, contact), or "Version conflict" if the contact has
+     *        been written since.
+     */
+    public DAOResponse<Contact> put(String key, Contact contact, long version) {
+        if (contact == null) {
+            return new ContactDAOResponse("Invalid contact");
+        }
+
+        Contact updated;
+        synchronized (writeLock) {
+            Contact existing = key == null ? null : contacts.get(key);
+            if (existing == null) {
+                return new ContactDAOResponse("Record not found");
+            }
+            if (version != DAOResponse.NO_VERSION && versions.get(key) != version) {
+                return new ContactDAOResponse("Version conflict");
+            }
+
+            // stored contacts are never mutated, so readers holding one see a stable value
+            updated = new Contact(existing).copyFrom(contact);
+            String newKey = updated.getKey();
+            boolean renamed = !newKey.equals(key);
+            if (renamed && (newKey.isEmpty() || contacts.containsKey(newKey))) {
+                return new ContactDAOResponse(newKey.isEmpty() ? "Invalid contact: a name is required"
+                        : "Record already exists");
+            }
+
+            try {
+                // both records in one write, so a rename is never half logged
+                String record = UPSERT + "\t" + converter.to(updated) + "\n";
+                append(renamed ? REMOVE + "\t" + key + "\n" + record : record);
+            } catch (IOException e) {
+                return new ContactDAOResponse("Storage error", e);
+            }
+
+            if (renamed) {
+                remove(key);
+            }
+            return new ContactDAOResponse(updated, apply(newKey, updated));
+        }
+    }
+
+    /**
+     * Removes a contact.
+     * @param key = the unique key under which the contact is stored.
+     * @return a DAOResponse wrapping the deleted Contact if successful, or an
+     *        error message and exception if the operation fails.
+     */
+    public DAOResponse<Contact> delete(String key) {
+        return delete(key, DAOResponse.NO_VERSION);
+    }
+
+    /**
+     * Removes a contact only if it is still at @version.
+     * @return as delete(key), or "Version conflict" if the contact has been
+     *        written since.
+     */
+    public DAOResponse<Contact> delete(String key, long version) {
+        Contact existing;
+        synchronized (writeLock) {
+            existing = key == null ? null : contacts.get(key);
+            if (existing == null) {
+                return new ContactDAOResponse("Record not found");
+            }
+            if (version != DAOResponse.NO_VERSION && versions.get(key) != version) {
+                return new ContactDAOResponse("Version conflict");
+            }
+            try {
+                append(REMOVE + "\t" + key + "\n");
+            } catch (IOException e) {
+                return new ContactDAOResponse("Storage error", e);
+            }
+            remove(key);
+        }
+        return new ContactDAOResponse(existing);
+    }
+
+    /**
+     * Passes every contact to @consumer in key order.
+     */
+    public void scan(int batchSize, Consumer<DAOResponse<Contact>> consumer) {
+        for (String key : keys) {
+            Contact contact = contacts.get(key);
+            if (contact != null) {
+                consumer.accept(new ContactDAOResponse(contact));
+            }
+        }
+    }
+
+    /**
+     * Writes every contact to a new snapshot and discards the log records it
+     * covers. Writers are only blocked while the log is rotated and the
+     * contact set is copied, not while the snapshot is written out.
+     */
+    public void snapshot() throws IOException {
+        if (directory == null) {
+            return;
+        }
+
+        List<Contact> copy;
+        synchronized (writeLock) {
+            log.close();
+            Path current = directory.resolve(LOG_FILE);
+            Path rotated = directory.resolve(ROTATED_LOG_FILE);
+            if (Files.exists(rotated)) { // an earlier snapshot failed; keep its records too
+                Files.write(rotated, Files.readAllBytes(current), StandardOpenOption.APPEND);
+                Files.delete(current);
+            } else {
+                Files.move(current, rotated);
+            }
+            log = openLog();
+            copy = new ArrayList<>(contacts.values());
+        }
+
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Contact contact : copy) {
+                writer.write(converter.to(contact));
+                writer.write('\n');
+            }
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(directory.resolve(ROTATED_LOG_FILE));
+    }
+
+    /**
+     * Stops periodic snapshots, waiting for one already running to finish,
+     * writes a final snapshot and closes the log. If the running snapshot
+     * does not finish within CLOSE_TIMEOUT_SECONDS the final one is skipped,
+     * as the two would overwrite each other's files; the log still holds
+     * every write for the next start.
+     */
+    public void close() throws IOException {
+        boolean stopped = true;
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                stopped = snapshotter.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = false;
+            }
+        }
+        if (directory != null) {
+            try {
+                if (!stopped) {
+                    throw new IOException("Gave up waiting for the periodic snapshot of " + directory
+                            + "; the log will be replayed on the next start");
+                }
+                snapshot();
+            } finally {
+                synchronized (writeLock) {
+                    log.close();
+                }
+            }
+        }
+    }
+
+    private NavigableSet<String> search(String query) {
+        String trimmed = query == null ? "" : query.trim();
+        if (trimmed.isEmpty() || trimmed.equals("*")) {
+            return keys;
+        }
+
+        NavigableSet<String> matches = new TreeSet<>();
+        for (String clause : trimmed.split("\\s+")) {
+            int colon = clause.indexOf(':');
+            String field = colon > 0 ? clause.substring(0, colon) : null;
+            String value = unquote(colon > 0 ? clause.substring(colon + 1) : clause).toLowerCase(Locale.ROOT);
+
+            for (String target : field == null || field.equals("*") ? FIELDS : new String[]{field}) {
+                ConcurrentSkipListMap<String, Set<String>> terms = index.get(target);
+                if (terms == null) { // unknown field
+                    continue;
+                }
+                if (value.endsWith("*")) {
+                    String prefix = value.substring(0, value.length() - 1);
+                    Map<String, Set<String>> range = prefix.isEmpty() ? terms
+                            : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+                    for (Set<String> termKeys : range.values()) {
+                        matches.addAll(termKeys);
+                    }
+                } else {
+                    Set<String> termKeys = terms.get(value);
+                    if (termKeys != null) {
+                        matches.addAll(termKeys);
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * Splits a field value into the terms it can be found by: the whole value,
+     * each run of letters or digits, and (for values like phone numbers) all of
+     * its digits run together; all lower case.
+     */
+    static Set<String> terms(String value) {
+        Set<String> terms = new HashSet<>();
+        if (value == null) {
+            return terms;
+        }
+
+        String lower = value.toLowerCase(Locale.ROOT);
+        terms.add(lower);
+        StringBuilder token = new StringBuilder();
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+                if (c >= '0' && c <= '9') {
+                    digits.append(c);
+                }
+            } else if (token.length() > 0) {
+                terms.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            terms.add(token.toString());
+        }
+        if (digits.length() > 0) {
+            terms.add(digits.toString());
+        }
+        return terms;
+    }
+
+    private static String[] values(Contact contact) {
+        return new String[]{contact.getName(), contact.getPhone(), contact.getEmail()};
+    }
+
+    /**
+     * Stores @contact under @key with a new version; callers must hold writeLock.
+     * @return the new version.
+     */
+    private long apply(String key, Contact contact) {
+        Contact previous = contacts.put(key, contact);
+        if (previous != null) {
+            unindex(key, previous);
+        }
+        String[] values = values(contact);
+        for (int i = 0; i < FIELDS.length; i++) {
+            ConcurrentSkipListMap<String, Set<String>> terms = index.get(FIELDS[i]);
+            for (String term : terms(values[i])) {
+                terms.computeIfAbsent(term, t -> ConcurrentHashMap.newKeySet()).add(key);
+            }
+        }
+        keys.add(key);
+        versions.put(key, ++lastVersion);
+        return lastVersion;
+    }
+
+    // callers must hold writeLock
+    private void remove(String key) {
+        Contact previous = contacts.remove(key);
+        keys.remove(key);
+        versions.remove(key);
+        if (previous != null) {
+            unindex(key, previous);
+        }
+    }
+
+    private void unindex(String key, Contact contact) {
+        String[] values = values(contact);
+        for (int i = 0; i < FIELDS.length; i++) {
+            ConcurrentSkipListMap<String, Set<String>> terms = index.get(FIELDS[i]);
+            for (String term : terms(values[i])) {
+                terms.computeIfPresent(term, (t, termKeys) -> {
+                    termKeys.remove(key);
+                    return termKeys.isEmpty() ? null : termKeys;
+                });
+            }
+        }
+    }
+
+    // callers must hold writeLock
+    private void append(String record) throws IOException {
+        if (log != null) {
+            log.write(record);
+            log.flush();
+        }
+    }
+
+    private Writer openLog() throws IOException {
+        return Files.newBufferedWriter(directory.resolve(LOG_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void recover() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        Contact contact = converter.from(line);
+                        apply(contact.getKey(), contact);
+                    }
+                }
+            }
+        }
+        replay(directory.resolve(ROTATED_LOG_FILE));
+        replay(directory.resolve(LOG_FILE));
+        LOG.info("Recovered {} contacts from {}", contacts.size(), directory);
+    }
+
+    private void replay(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 2 || line.charAt(1) != '\t') {
+                    continue; // torn write at the end of the log
+                }
+                String body = line.substring(2);
+                if (line.charAt(0) == UPSERT) {
+                    try {
+                        Contact contact = converter.from(body);
+                        apply(contact.getKey(), contact);
+                    } catch (RuntimeException e) {
+                        LOG.warn("Skipping unreadable log record in {}", file);
+                    }
+                } else if (line.charAt(0) == REMOVE) {
+                    remove(body);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of contacts currently stored.
+     */
+    public int size() {
+        return contacts.size();
+    }
+
+}
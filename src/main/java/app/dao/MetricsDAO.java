@@ -0,0 +1,336 @@
+package app.dao;
+
+/**
+ * Decorates another database access object with a latency histogram and
+ * outcome counters per operation (get, mget, query, search, suggest, post,
+ * put, delete, post_all and scan). Outcomes are "success" or the category of
+ * the failure message, i.e. the message up to its first colon: "Connection
+ * error", "Record not found", "Elasticsearch error" and so on; an exception
+ * thrown by the wrapped object is counted as "exception" and rethrown.
+ * @param <I> = the type corresponding to the data model.
+ * @param <O> = the type of response returned by the wrapped object.
+ */
+
+import app.dao.query.ContactSearch;
+import app.metrics.LatencyHistogram;
+import app.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+public class MetricsDAO<I, O extends DAOResponse<I>> implements DAO<I, O> {
+
+    private static final String LATENCY = "contacts_dao_latency_seconds";
+    private static final String LATENCY_HELP = "Time taken by database access object operations.";
+    private static final String OPERATIONS = "contacts_dao_operations_total";
+    private static final String OPERATIONS_HELP = "Database access object operations by outcome.";
+
+    private final DAO<I, O> dao;
+    private final Operation get;
+    private final Operation multiGet;
+    private final Operation search;
+    private final Operation suggest;
+    private final Operation query;
+    private final Operation post;
+    private final Operation put;
+    private final Operation delete;
+    private final Operation postAll;
+    private final Operation scan;
+
+    /**
+     * @param dao = the database access object to measure.
+     * @param registry = where to register the metrics.
+     */
+    public MetricsDAO(DAO<I, O> dao, MetricsRegistry registry) {
+        this.dao = dao;
+        this.get = new Operation(registry, "get");
+        this.multiGet = new Operation(registry, "mget");
+        this.search = new Operation(registry, "search");
+        this.suggest = new Operation(registry, "suggest");
+        this.query = new Operation(registry, "query");
+        this.post = new Operation(registry, "post");
+        this.put = new Operation(registry, "put");
+        this.delete = new Operation(registry, "delete");
+        this.postAll = new Operation(registry, "post_all");
+        this.scan = new Operation(registry, "scan");
+    }
+
+    public O getByKey(String key) {
+        long start = System.nanoTime();
+        try {
+            return get.record(start, dao.getByKey(key));
+        } catch (RuntimeException e) {
+            throw get.failed(start, e);
+        }
+    }
+
+    /**
+     * The latency is recorded once per call; the outcome once per key.
+     */
+    public List<O> getByKeys(Collection<String> keys) {
+        long start = System.nanoTime();
+        try {
+            List<O> results = dao.getByKeys(keys);
+            multiGet.latency.recordSince(start);
+            for (O response : results) {
+                multiGet.count(response);
+            }
+            return results;
+        } catch (RuntimeException e) {
+            throw multiGet.failed(start, e);
+        }
+    }
+
+    public List<O> getByQuery(String query, int pageSize, int page) {
+        long start = System.nanoTime();
+        try {
+            return this.query.recordAll(start, dao.getByQuery(query, pageSize, page));
+        } catch (RuntimeException e) {
+            throw this.query.failed(start, e);
+        }
+    }
+
+    public QueryPage<O> getByQueryAfter(String query, int pageSize, String cursor) {
+        long start = System.nanoTime();
+        try {
+            QueryPage<O> page = dao.getByQueryAfter(query, pageSize, cursor);
+            this.query.recordAll(start, page.results());
+            return page;
+        } catch (RuntimeException e) {
+            throw this.query.failed(start, e);
+        }
+    }
+
+    public List<O> search(ContactSearch search) {
+        long start = System.nanoTime();
+        try {
+            return this.search.recordAll(start, dao.search(search));
+        } catch (RuntimeException e) {
+            throw this.search.failed(start, e);
+        }
+    }
+
+    public List<O> suggest(String prefix, int size) {
+        long start = System.nanoTime();
+        try {
+            return suggest.recordAll(start, dao.suggest(prefix, size));
+        } catch (RuntimeException e) {
+            throw suggest.failed(start, e);
+        }
+    }
+
+    public O getSourcesByQuery(String query, int pageSize, int page, SourceSink sink) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return this.query.record(start, dao.getSourcesByQuery(query, pageSize, page, sink));
+        } catch (IOException | RuntimeException e) {
+            this.query.failed(start);
+            throw e;
+        }
+    }
+
+    public O post(I toPost) {
+        long start = System.nanoTime();
+        try {
+            return post.record(start, dao.post(toPost));
+        } catch (RuntimeException e) {
+            throw post.failed(start, e);
+        }
+    }
+
+    public O put(String key, I toUpdate) {
+        long start = System.nanoTime();
+        try {
+            return put.record(start, dao.put(key, toUpdate));
+        } catch (RuntimeException e) {
+            throw put.failed(start, e);
+        }
+    }
+
+    public O delete(String key) {
+        long start = System.nanoTime();
+        try {
+            return delete.record(start, dao.delete(key));
+        } catch (RuntimeException e) {
+            throw delete.failed(start, e);
+        }
+    }
+
+    public O put(String key, I toUpdate, long version) {
+        long start = System.nanoTime();
+        try {
+            return put.record(start, dao.put(key, toUpdate, version));
+        } catch (RuntimeException e) {
+            throw put.failed(start, e);
+        }
+    }
+
+    public O delete(String key, long version) {
+        long start = System.nanoTime();
+        try {
+            return delete.record(start, dao.delete(key, version));
+        } catch (RuntimeException e) {
+            throw delete.failed(start, e);
+        }
+    }
+
+    /**
+     * The latency is recorded once per batch; the outcome once per item.
+     */
+    public List<O> postAll(List<I> toPost) {
+        long start = System.nanoTime();
+        try {
+            List<O> results = dao.postAll(toPost);
+            postAll.latency.recordSince(start);
+            for (O response : results) {
+                postAll.count(response);
+            }
+            return results;
+        } catch (RuntimeException e) {
+            throw postAll.failed(start, e);
+        }
+    }
+
+    /**
+     * The latency is that of the whole scan, including the time taken by
+     * @consumer; the outcome is that of the last response it was given.
+     */
+    public void scan(int batchSize, Consumer<O> consumer) {
+        long start = System.nanoTime();
+        Object[] last = new Object[1];
+        try {
+            dao.scan(batchSize, response -> {
+                last[0] = response;
+                consumer.accept(response);
+            });
+        } catch (RuntimeException e) {
+            throw scan.failed(start, e);
+        }
+        @SuppressWarnings("unchecked")
+        O response = (O) last[0];
+        if (response == null) {
+            scan.latency.recordSince(start);
+            scan.count("success");
+        } else {
+            scan.record(start, response);
+        }
+    }
+
+    public CompletableFuture<O> getByKeyAsync(String key) {
+        long start = System.nanoTime();
+        return get.recordAsync(start, dao.getByKeyAsync(key));
+    }
+
+    public CompletableFuture<List<O>> getByQueryAsync(String query, int pageSize, int page) {
+        long start = System.nanoTime();
+        return dao.getByQueryAsync(query, pageSize, page).whenComplete((results, error) -> {
+            if (error == null) {
+                this.query.recordAll(start, results);
+            } else {
+                this.query.failed(start);
+            }
+        });
+    }
+
+    public CompletableFuture<O> postAsync(I toPost) {
+        long start = System.nanoTime();
+        return post.recordAsync(start, dao.postAsync(toPost));
+    }
+
+    public CompletableFuture<O> putAsync(String key, I toUpdate) {
+        long start = System.nanoTime();
+        return put.recordAsync(start, dao.putAsync(key, toUpdate));
+    }
+
+    public CompletableFuture<O> deleteAsync(String key) {
+        long start = System.nanoTime();
+        return delete.recordAsync(start, dao.deleteAsync(key));
+    }
+
+    /**
+     * @return "success" for a successful response, otherwise the message of
+     *        @response up to its first colon (so that the key, status or
+     *        field named after it does not create a new counter).
+     */
+    static String outcome(DAOResponse<?> response) {
+        if (response.success()) {
+            return "success";
+        }
+        String message = response.message();
+        if (message == null || message.isEmpty()) {
+            return "error";
+        }
+        int colon = message.indexOf(':');
+        return colon < 0 ? message : message.substring(0, colon);
+    }
+
+    private final class Operation {
+        private final MetricsRegistry registry;
+        private final String name;
+        private final LatencyHistogram latency;
+        private final ConcurrentMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+        private Operation(MetricsRegistry registry, String name) {
+            this.registry = registry;
+            this.name = name;
+            this.latency = registry.histogram(LATENCY, LATENCY_HELP, "operation", name);
+        }
+
+        private O record(long start, O response) {
+            latency.recordSince(start);
+            count(response);
+            return response;
+        }
+
+        // a failed query is returned as a list holding the one error response
+        private List<O> recordAll(long start, List<O> results) {
+            latency.recordSince(start);
+            O failure = null;
+            for (O response : results) {
+                if (!response.success()) {
+                    failure = response;
+                    break;
+                }
+            }
+            count(failure == null ? "success" : outcome(failure));
+            return results;
+        }
+
+        private CompletableFuture<O> recordAsync(long start, CompletableFuture<O> future) {
+            return future.whenComplete((response, error) -> {
+                if (error == null) {
+                    record(start, response);
+                } else {
+                    failed(start);
+                }
+            });
+        }
+
+        private RuntimeException failed(long start, RuntimeException e) {
+            failed(start);
+            return e;
+        }
+
+        private void failed(long start) {
+            latency.recordSince(start);
+            count("exception");
+        }
+
+        private void count(O response) {
+            count(outcome(response));
+        }
+
+        private void count(String outcome) {
+            outcomes.computeIfAbsent(outcome,
+                    o -> registry.counter(OPERATIONS, OPERATIONS_HELP, "operation", name, "outcome", o))
+                    .increment();
+        }
+    }
+
+}
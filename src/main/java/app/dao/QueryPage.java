@@ -0,0 +1,47 @@
+package app.dao;
+
+/**
+ * One page of results from a cursor-paginated query, along with the opaque
+ * cursor that fetches the page after it (null once the results run out).
+ * @param <O> = the type of response wrapping each result.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+public class QueryPage<O> {
+
+    private final List<O> results;
+    private final String nextCursor;
+
+    public QueryPage(List<O> results, String nextCursor) {
+        this.results = results;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<O> results() {
+        return results;
+    }
+
+    public String nextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Wraps a position (such as the last key of a page) in an opaque, URL-safe
+     * cursor.
+     */
+    public static String encodeCursor(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Recovers the position from a cursor made by encodeCursor.
+     * @throws IllegalArgumentException if @cursor was not made by encodeCursor.
+     */
+    public static String decodeCursor(String cursor) {
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,144 @@
+package app.dao;
+
+/**
+ * An in-process index of the items of a database access object, for the
+ * decorators that answer from memory. It is built by scanning the object in
+ * the background, kept up to date by the writes its owner passes to written(),
+ * and rebuilt periodically to pick up writes made elsewhere. While a rebuild
+ * is scanning, writes are applied both to the current index and to the one
+ * being built, so that the new index misses none of them.
+ * @param <I> = the type corresponding to the data model.
+ * @param <O> = the type of response returned by the scanned object.
+ * @param <X> = the type of the index.
+ */
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+final class RebuiltIndex<I, O extends DAOResponse<I>, X> implements Closeable {
+
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    private final DAO<I, O> dao;
+    private final Supplier<X> newIndex;
+    private final BiConsumer<X, O> add;
+    private final BiConsumer<X, String> remove;
+    private final ScheduledExecutorService rebuilder;
+
+    private volatile X index;
+    // the index being built, if any, which must also see concurrent writes
+    private volatile X building;
+
+    /**
+     * Starts the first build at once.
+     * @param dao = the database access object to index.
+     * @param newIndex = creates an empty index.
+     * @param add = adds a successful response's item to an index, replacing
+     *        any held under the same key.
+     * @param remove = removes the item held under a key from an index.
+     * @param threadName = the name of the thread rebuilding the index.
+     * @param rebuildInterval = how often the index is rebuilt from @dao; 0
+     *        builds it once.
+     * @param unit = the unit of @rebuildInterval.
+     */
+    RebuiltIndex(DAO<I, O> dao, Supplier<X> newIndex, BiConsumer<X, O> add, BiConsumer<X, String> remove,
+                 String threadName, long rebuildInterval, TimeUnit unit) {
+        this.dao = dao;
+        this.newIndex = newIndex;
+        this.add = add;
+        this.remove = remove;
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (rebuildInterval > 0) {
+            rebuilder.scheduleWithFixedDelay(this::rebuild, 0, rebuildInterval, unit);
+        } else {
+            rebuilder.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * @return the index, or null before the first build completes.
+     */
+    X current() {
+        return index;
+    }
+
+    /**
+     * Replaces the index with one built from a scan of the wrapped object. If
+     * the scan fails, the current index is kept.
+     * @return whether the index was replaced.
+     */
+    synchronized boolean rebuild() {
+        X fresh = newIndex.get();
+        building = fresh;
+        boolean[] failed = new boolean[1];
+        try {
+            dao.scan(SCAN_BATCH_SIZE, response -> {
+                if (response.success()) {
+                    add.accept(fresh, response);
+                } else {
+                    failed[0] = true;
+                }
+            });
+        } catch (RuntimeException e) {
+            failed[0] = true;
+        }
+        // swapped in before building is cleared, so that a write reading
+        // building before the index cannot miss both
+        if (!failed[0]) {
+            index = fresh;
+        }
+        building = null;
+        return !failed[0];
+    }
+
+    /**
+     * Applies a write made through the owner to the current index and the one
+     * being built.
+     * @param removedKey = the key an item was removed from, or null.
+     * @param response = the response holding the item written, or null; an
+     *        unsuccessful one is ignored.
+     */
+    void written(String removedKey, O response) {
+        for (X target : targets()) {
+            if (removedKey != null) {
+                remove.accept(target, removedKey);
+            }
+            if (response != null && response.success()) {
+                add.accept(target, response);
+            }
+        }
+    }
+
+    private List<X> targets() {
+        // building is read first: once it is seen cleared, the index it held
+        // has been swapped in, whereas reading the index first could pick the
+        // one a rebuild is about to discard and then miss its replacement
+        List<X> targets = new ArrayList<>(2);
+        X next = building;
+        X current = index;
+        if (next != null) {
+            targets.add(next);
+        }
+        if (current != null && current != next) {
+            targets.add(current);
+        }
+        return targets;
+    }
+
+    /**
+     * Stops rebuilding the index.
+     */
+    public void close() {
+        rebuilder.shutdownNow();
+    }
+}
@@ -0,0 +1,349 @@
+package app.dao;
+
+/**
+ * Decorates another database access object with a circuit breaker, so that
+ * while its data store is unreachable requests fail at once with
+ * "Circuit open" instead of each waiting for the client's timeout. A response
+ * counts as a failure of the store when it is a "Connection error" or carries
+ * an IOException; any other answer, including "Record not found", shows the
+ * store is reachable.
+ * The last known value of up to staleMaxSize recently read or written items
+ * is also kept, so that getByKey (and getByKeys) can still answer with it,
+ * marked as stale, while the circuit is open or the store cannot be reached.
+ * @param <I> = the type corresponding to the data model.
+ * @param <O> = the type of response returned by the wrapped object.
+ */
+
+import app.dao.query.ContactSearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+public class ResilientDAO<I, O extends DAOResponse<I>> implements DAO<I, O> {
+
+    static final String CIRCUIT_OPEN = "Circuit open";
+    private static final String CONNECTION_ERROR = "Connection error";
+
+    private final DAO<I, O> dao;
+    private final Function<I, String> keyOf;
+    private final Function<String, O> failure;
+    private final UnaryOperator<O> stale;
+    private final CircuitBreaker breaker;
+    private final LinkedHashMap<String, O> lastKnown;
+
+    /**
+     * @param dao = the database access object to protect.
+     * @param keyOf = derives the unique key an item is stored under.
+     * @param failure = creates an unsuccessful response with a message.
+     * @param stale = copies a successful response, marking it as stale.
+     * @param breaker = the circuit breaker for the wrapped object's store.
+     * @param staleMaxSize = the number of last known values kept (0 keeps
+     *        none).
+     */
+    public ResilientDAO(DAO<I, O> dao, Function<I, String> keyOf, Function<String, O> failure, UnaryOperator<O> stale,
+                        CircuitBreaker breaker, int staleMaxSize) {
+        this.dao = dao;
+        this.keyOf = keyOf;
+        this.failure = failure;
+        this.stale = stale;
+        this.breaker = breaker;
+        this.lastKnown = new LinkedHashMap<String, O>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, O> eldest) {
+                return size() > staleMaxSize;
+            }
+        };
+    }
+
+    public CircuitBreaker breaker() {
+        return breaker;
+    }
+
+    /**
+     * @return whether @response shows that the data store could not be
+     *        reached.
+     */
+    static boolean unreachable(DAOResponse<?> response) {
+        return !response.success() && (CONNECTION_ERROR.equals(response.message())
+                || response.exception() instanceof IOException);
+    }
+
+    /**
+     * Sends a call to the wrapped object if the circuit allows it and reports
+     * its outcome, as judged from @outcome of its result.
+     * @return the result, or null if the circuit is open.
+     */
+    private <T> T call(Supplier<T> call, Function<T, O> outcome) {
+        if (!breaker.allowRequest()) {
+            return null;
+        }
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            breaker.onFailure();
+            throw e;
+        }
+        report(result == null ? null : outcome.apply(result));
+        return result;
+    }
+
+    private void report(O response) {
+        if (response != null && unreachable(response)) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+    }
+
+    private <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call, Function<T, O> outcome) {
+        if (!breaker.allowRequest()) {
+            return null;
+        }
+        try {
+            return call.get().whenComplete((result, error) -> {
+                if (error != null) {
+                    breaker.onFailure();
+                } else {
+                    report(result == null ? null : outcome.apply(result));
+                }
+            });
+        } catch (RuntimeException e) {
+            breaker.onFailure();
+            throw e;
+        }
+    }
+
+    private O first(List<O> results) {
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    private O open() {
+        return failure.apply(CIRCUIT_OPEN);
+    }
+
+    private List<O> openList() {
+        return new ArrayList<>(Collections.singletonList(open()));
+    }
+
+    /**
+     * @return @response, remembering it if it is successful; or the last
+     *        known value of @key, marked stale, if @response (null if the
+     *        circuit is open) shows the store could not be reached.
+     */
+    private O read(String key, O response) {
+        if (response != null && !unreachable(response)) {
+            if (response.success()) {
+                remember(key, response);
+            } else {
+                forget(key);
+            }
+            return response;
+        }
+        O known;
+        synchronized (lastKnown) {
+            known = lastKnown.get(key);
+        }
+        if (known != null) {
+            return stale.apply(known);
+        }
+        return response == null ? open() : response;
+    }
+
+    private void remember(String key, O response) {
+        synchronized (lastKnown) {
+            lastKnown.put(key, response);
+        }
+    }
+
+    private void forget(String key) {
+        synchronized (lastKnown) {
+            lastKnown.remove(key);
+        }
+    }
+
+    private O posted(O response) {
+        if (response.success()) {
+            remember(keyOf.apply(response.payload()), response);
+        }
+        return response;
+    }
+
+    private O updated(String key, O response) {
+        if (response.success()) {
+            forget(key);
+        }
+        return posted(response);
+    }
+
+    private O deleted(String key, O response) {
+        if (response.success()) {
+            forget(key);
+        }
+        return response;
+    }
+
+    public O getByKey(String key) {
+        return read(key, call(() -> dao.getByKey(key), response -> response));
+    }
+
+    public CompletableFuture<O> getByKeyAsync(String key) {
+        CompletableFuture<O> response = callAsync(() -> dao.getByKeyAsync(key), result -> result);
+        if (response == null) {
+            return CompletableFuture.completedFuture(read(key, null));
+        }
+        return response.thenApply(result -> read(key, result));
+    }
+
+    public List<O> getByKeys(Collection<String> keys) {
+        List<O> fetched = call(() -> dao.getByKeys(keys), this::first);
+        List<O> results = new ArrayList<>(keys.size());
+        int i = 0;
+        for (String key : keys) {
+            results.add(read(key, fetched == null ? null : fetched.get(i++)));
+        }
+        return results;
+    }
+
+    public List<O> getByQuery(String query, int pageSize, int page) {
+        List<O> results = call(() -> dao.getByQuery(query, pageSize, page), this::first);
+        return results == null ? openList() : results;
+    }
+
+    public CompletableFuture<List<O>> getByQueryAsync(String query, int pageSize, int page) {
+        CompletableFuture<List<O>> results = callAsync(() -> dao.getByQueryAsync(query, pageSize, page), this::first);
+        return results == null ? CompletableFuture.completedFuture(openList()) : results;
+    }
+
+    public QueryPage<O> getByQueryAfter(String query, int pageSize, String cursor) {
+        QueryPage<O> page = call(() -> dao.getByQueryAfter(query, pageSize, cursor), result -> first(result.results()));
+        return page == null ? new QueryPage<>(openList(), null) : page;
+    }
+
+    public List<O> search(ContactSearch search) {
+        List<O> results = call(() -> dao.search(search), this::first);
+        return results == null ? openList() : results;
+    }
+
+    public List<O> suggest(String prefix, int size) {
+        List<O> results = call(() -> dao.suggest(prefix, size), this::first);
+        return results == null ? openList() : results;
+    }
+
+    public O getSourcesByQuery(String query, int pageSize, int page, SourceSink sink) throws IOException {
+        if (!breaker.allowRequest()) {
+            return open();
+        }
+        O response;
+        try {
+            response = dao.getSourcesByQuery(query, pageSize, page, sink);
+        } catch (IOException | RuntimeException e) {
+            breaker.onFailure();
+            throw e;
+        }
+        report(response);
+        return response;
+    }
+
+    public O post(I toPost) {
+        O response = call(() -> dao.post(toPost), result -> result);
+        return response == null ? open() : posted(response);
+    }
+
+    public CompletableFuture<O> postAsync(I toPost) {
+        CompletableFuture<O> response = callAsync(() -> dao.postAsync(toPost), result -> result);
+        return response == null ? CompletableFuture.completedFuture(open()) : response.thenApply(this::posted);
+    }
+
+    public List<O> postAll(List<I> toPost) {
+        List<O> results = call(() -> dao.postAll(toPost), this::first);
+        if (results == null) {
+            results = new ArrayList<>(toPost.size());
+            for (int i = 0; i < toPost.size(); i++) {
+                results.add(open());
+            }
+            return results;
+        }
+        for (O response : results) {
+            posted(response);
+        }
+        return results;
+    }
+
+    public O put(String key, I toUpdate) {
+        O response = call(() -> dao.put(key, toUpdate), result -> result);
+        return response == null ? open() : updated(key, response);
+    }
+
+    public O put(String key, I toUpdate, long version) {
+        O response = call(() -> dao.put(key, toUpdate, version), result -> result);
+        return response == null ? open() : updated(key, response);
+    }
+
+    public CompletableFuture<O> putAsync(String key, I toUpdate) {
+        CompletableFuture<O> response = callAsync(() -> dao.putAsync(key, toUpdate), result -> result);
+        return response == null ? CompletableFuture.completedFuture(open())
+                : response.thenApply(result -> updated(key, result));
+    }
+
+    public O delete(String key) {
+        O response = call(() -> dao.delete(key), result -> result);
+        return response == null ? open() : deleted(key, response);
+    }
+
+    public O delete(String key, long version) {
+        O response = call(() -> dao.delete(key, version), result -> result);
+        return response == null ? open() : deleted(key, response);
+    }
+
+    public CompletableFuture<O> deleteAsync(String key) {
+        CompletableFuture<O> response = callAsync(() -> dao.deleteAsync(key), result -> result);
+        return response == null ? CompletableFuture.completedFuture(open())
+                : response.thenApply(result -> deleted(key, result));
+    }
+
+    /**
+     * Passes through a scan, reporting to the breaker whether it failed to
+     * reach the store; while the circuit is open the consumer receives a
+     * single "Circuit open" response.
+     */
+    public void scan(int batchSize, Consumer<O> consumer) {
+        if (!breaker.allowRequest()) {
+            consumer.accept(open());
+            return;
+        }
+        AtomicReference<O> failed = new AtomicReference<>();
+        try {
+            dao.scan(batchSize, response -> {
+                if (!response.success()) {
+                    failed.set(response);
+                }
+                consumer.accept(response);
+            });
+        } catch (RuntimeException e) {
+            breaker.onFailure();
+            throw e;
+        }
+        report(failed.get());
+    }
+
+    /**
+     * @return the number of last known values held.
+     */
+    public int staleSize() {
+        synchronized (lastKnown) {
+            return lastKnown.size();
+        }
+    }
+}
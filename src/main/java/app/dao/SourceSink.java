@@ -0,0 +1,15 @@
+package app.dao;
+
+/**
+ * Receives the stored source of a document as raw bytes, so that it can be
+ * copied to its destination without being decoded into the data model.
+ */
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface SourceSink {
+
+    void accept(byte[] bytes, int offset, int length) throws IOException;
+
+}
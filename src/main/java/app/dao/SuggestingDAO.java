@@ -0,0 +1,272 @@
+package app.dao;
+
+/**
+ * Decorates another database access object with an in-process prefix index of
+ * item names, so that suggest is answered from memory instead of by the
+ * backend. The index holds every suffix of a name that starts at a word,
+ * folded to lowercase without accents, so "Jake Evans" is found by both
+ * "jake e" and "ev". It is built by scanning the wrapped object in the
+ * background, kept up to date by the writes made through this instance, and
+ * rebuilt periodically to pick up writes made elsewhere; until the first
+ * build completes, suggest is passed through.
+ * @param <I> = the type corresponding to the data model.
+ * @param <O> = the type of response returned by the wrapped object.
+ */
+
+import app.dao.query.ContactSearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+public class SuggestingDAO<I, O extends DAOResponse<I>> implements DAO<I, O>, Closeable {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private final DAO<I, O> dao;
+    private final Function<I, String> keyOf;
+    private final Function<I, String> nameOf;
+    private final RebuiltIndex<I, O, Index<O>> index;
+
+    /**
+     * @param dao = the database access object to index.
+     * @param keyOf = derives the unique key an item is stored under.
+     * @param nameOf = derives the name an item is suggested by.
+     * @param rebuildInterval = how often the index is rebuilt from the wrapped
+     *        object; 0 builds it once.
+     * @param unit = the unit of @rebuildInterval.
+     */
+    public SuggestingDAO(DAO<I, O> dao, Function<I, String> keyOf, Function<I, String> nameOf,
+                         long rebuildInterval, TimeUnit unit) {
+        this.dao = dao;
+        this.keyOf = keyOf;
+        this.nameOf = nameOf;
+        this.index = new RebuiltIndex<>(dao, Index::new, this::add, SuggestingDAO::remove,
+                "contacts-suggest-rebuilder", rebuildInterval, unit);
+    }
+
+    /**
+     * Replaces the index with one built from a scan of the wrapped object. If
+     * the scan fails, the current index is kept.
+     * @return whether the index was replaced.
+     */
+    public boolean rebuild() {
+        return index.rebuild();
+    }
+
+    /**
+     * @return up to @size items with a word of their name starting with
+     *        @prefix, ignoring case and accents, ordered by the matching part
+     *        of the name.
+     */
+    public List<O> suggest(String prefix, int size) {
+        Index<O> current = index.current();
+        if (current == null) {
+            return dao.suggest(prefix, size);
+        }
+        String from = normalize(prefix);
+        List<O> results = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        if (from.isEmpty()) {
+            return results;
+        }
+        for (Map.Entry<String, O> entry : current.terms.subMap(from, true, from + Character.MAX_VALUE, false).entrySet()) {
+            if (results.size() >= size) {
+                break;
+            }
+            if (seen.add(keyOf.apply(entry.getValue().payload()))) {
+                results.add(entry.getValue());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return @text in lowercase without accents, with runs of whitespace
+     *        collapsed to a single space and none at either end.
+     */
+    static String normalize(String text) {
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SPACES.matcher(folded.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private void add(Index<O> target, O response) {
+        String key = keyOf.apply(response.payload());
+        String raw = nameOf.apply(response.payload());
+        String name = raw == null ? "" : normalize(raw);
+        List<String> terms = new ArrayList<>();
+        for (int start = 0; !name.isEmpty(); ) {
+            terms.add(name.substring(start) + '\u0000' + key);
+            start = name.indexOf(' ', start) + 1;
+            if (start == 0) {
+                break;
+            }
+        }
+        synchronized (target) {
+            remove(target, key);
+            for (String term : terms) {
+                target.terms.put(term, response);
+            }
+            target.termsByKey.put(key, terms);
+        }
+    }
+
+    private static <O> void remove(Index<O> target, String key) {
+        synchronized (target) {
+            List<String> terms = target.termsByKey.remove(key);
+            if (terms != null) {
+                for (String term : terms) {
+                    target.terms.remove(term);
+                }
+            }
+        }
+    }
+
+    private void written(String removedKey, O response) {
+        index.written(removedKey, response);
+    }
+
+    public O getByKey(String key) {
+        return dao.getByKey(key);
+    }
+
+    public List<O> getByKeys(Collection<String> keys) {
+        return dao.getByKeys(keys);
+    }
+
+    public List<O> getByQuery(String query, int pageSize, int page) {
+        return dao.getByQuery(query, pageSize, page);
+    }
+
+    public QueryPage<O> getByQueryAfter(String query, int pageSize, String cursor) {
+        return dao.getByQueryAfter(query, pageSize, cursor);
+    }
+
+    public List<O> search(ContactSearch search) {
+        return dao.search(search);
+    }
+
+    public O getSourcesByQuery(String query, int pageSize, int page, SourceSink sink) throws IOException {
+        return dao.getSourcesByQuery(query, pageSize, page, sink);
+    }
+
+    public O post(I toPost) {
+        O response = dao.post(toPost);
+        written(null, response);
+        return response;
+    }
+
+    public CompletableFuture<O> postAsync(I toPost) {
+        return dao.postAsync(toPost).thenApply(response -> {
+            written(null, response);
+            return response;
+        });
+    }
+
+    public List<O> postAll(List<I> toPost) {
+        List<O> results = dao.postAll(toPost);
+        for (O response : results) {
+            written(null, response);
+        }
+        return results;
+    }
+
+    public O put(String key, I toUpdate) {
+        O response = dao.put(key, toUpdate);
+        written(response.success() ? key : null, response);
+        return response;
+    }
+
+    public O put(String key, I toUpdate, long version) {
+        O response = dao.put(key, toUpdate, version);
+        written(response.success() ? key : null, response);
+        return response;
+    }
+
+    public CompletableFuture<O> putAsync(String key, I toUpdate) {
+        return dao.putAsync(key, toUpdate).thenApply(response -> {
+            written(response.success() ? key : null, response);
+            return response;
+        });
+    }
+
+    public O delete(String key) {
+        O response = dao.delete(key);
+        if (response.success()) {
+            written(key, null);
+        }
+        return response;
+    }
+
+    public O delete(String key, long version) {
+        O response = dao.delete(key, version);
+        if (response.success()) {
+            written(key, null);
+        }
+        return response;
+    }
+
+    public CompletableFuture<O> deleteAsync(String key) {
+        return dao.deleteAsync(key).thenApply(response -> {
+            if (response.success()) {
+                written(key, null);
+            }
+            return response;
+        });
+    }
+
+    public CompletableFuture<O> getByKeyAsync(String key) {
+        return dao.getByKeyAsync(key);
+    }
+
+    public CompletableFuture<List<O>> getByQueryAsync(String query, int pageSize, int page) {
+        return dao.getByQueryAsync(query, pageSize, page);
+    }
+
+    public void scan(int batchSize, Consumer<O> consumer) {
+        dao.scan(batchSize, consumer);
+    }
+
+    /**
+     * Stops rebuilding the index; the wrapped object is not closed.
+     */
+    public void close() {
+        index.close();
+    }
+
+    /**
+     * @return the number of items in the index, or -1 before it is built.
+     */
+    public int size() {
+        Index<O> current = index.current();
+        if (current == null) {
+            return -1;
+        }
+        synchronized (current) {
+            return current.termsByKey.size();
+        }
+    }
+
+    private static final class Index<O> {
+
+        // name suffix + '\0' + key -> the item; the key keeps entries distinct
+        private final NavigableMap<String, O> terms = new ConcurrentSkipListMap<>();
+        private final Map<String, List<String>> termsByKey = new HashMap<>();
+    }
+}
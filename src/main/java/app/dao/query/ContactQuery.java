@@ -0,0 +1,297 @@
+package app.dao.query;
+
+/**
+ * A structured condition on contacts, built from a fixed set of clauses
+ * rather than parsed from user text, so that every query a caller can send
+ * compiles to cheap exact or prefix lookups:
+ *      phone        the phone number, compared by its digits only
+ *      emailDomain  the part of the email address after the @, ignoring case
+ *      namePrefix   every word given starts some word of the name, ignoring
+ *                   case and accents ("jo ev" matches "Jose Evans")
+ *      all, any     every / at least one of the clauses
+ *      not          the clause does not match
+ *      matchAll     every contact
+ * Stores compile a query by passing a Visitor to accept(); matches()
+ * evaluates it against a single contact.
+ */
+
+import app.models.Contact;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public abstract class ContactQuery {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WORD_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final ContactQuery MATCH_ALL = new ContactQuery() {
+        public boolean matches(Contact contact) {
+            return true;
+        }
+
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.matchAll();
+        }
+    };
+
+    /**
+     * Compiles a query into a store's own representation, one method per kind
+     * of clause. The methods taking clauses are responsible for visiting them.
+     * @param <R> = the type a query compiles to.
+     */
+    public interface Visitor<R> {
+
+        R matchAll();
+
+        /**
+         * @param digits = the digits of the phone number, at least one.
+         */
+        R phone(String digits);
+
+        /**
+         * @param domain = the domain in lower case, e.g. "example.com".
+         */
+        R emailDomain(String domain);
+
+        /**
+         * @param words = the lowercased, accent-free words, at least one.
+         */
+        R namePrefix(List<String> words);
+
+        R all(List<ContactQuery> clauses);
+
+        R any(List<ContactQuery> clauses);
+
+        R not(ContactQuery clause);
+    }
+
+    public abstract boolean matches(Contact contact);
+
+    public abstract <R> R accept(Visitor<R> visitor);
+
+    public static ContactQuery matchAll() {
+        return MATCH_ALL;
+    }
+
+    /**
+     * @param phone = a phone number in any format; only its digits are used.
+     * @throws IllegalArgumentException if @phone has no digits.
+     */
+    public static ContactQuery phone(String phone) {
+        String digits = digits(phone);
+        if (digits.isEmpty()) {
+            throw new IllegalArgumentException("phone: expected digits, got \"" + phone + "\"");
+        }
+        return new ContactQuery() {
+            public boolean matches(Contact contact) {
+                return contact.getPhone() != null && digits.equals(digits(contact.getPhone()));
+            }
+
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.phone(digits);
+            }
+        };
+    }
+
+    /**
+     * @param domain = an email domain such as "example.com", with or without
+     *        a leading @.
+     * @throws IllegalArgumentException if @domain is empty or contains an @
+     *        other than a leading one.
+     */
+    public static ContactQuery emailDomain(String domain) {
+        String lower = domain == null ? "" : domain.trim().toLowerCase(Locale.ROOT);
+        if (lower.startsWith("@")) {
+            lower = lower.substring(1);
+        }
+        if (lower.isEmpty() || lower.indexOf('@') >= 0) {
+            throw new IllegalArgumentException("emailDomain: expected a domain such as example.com, got \""
+                    + domain + "\"");
+        }
+        String expected = lower;
+        return new ContactQuery() {
+            public boolean matches(Contact contact) {
+                String email = contact.getEmail();
+                int at = email == null ? -1 : email.lastIndexOf('@');
+                return at >= 0 && expected.equals(email.substring(at + 1).toLowerCase(Locale.ROOT));
+            }
+
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.emailDomain(expected);
+            }
+        };
+    }
+
+    /**
+     * @param prefix = the beginning of one or more words of a name.
+     * @throws IllegalArgumentException if @prefix has no letters or digits.
+     */
+    public static ContactQuery namePrefix(String prefix) {
+        List<String> words = words(prefix);
+        if (words.isEmpty()) {
+            throw new IllegalArgumentException("namePrefix: expected the start of a name, got \"" + prefix + "\"");
+        }
+        return new ContactQuery() {
+            public boolean matches(Contact contact) {
+                List<String> name = words(contact.getName());
+                for (String word : words) {
+                    if (name.stream().noneMatch(part -> part.startsWith(word))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.namePrefix(words);
+            }
+        };
+    }
+
+    public static ContactQuery all(ContactQuery... clauses) {
+        return all(Arrays.asList(clauses));
+    }
+
+    /**
+     * @throws IllegalArgumentException if @clauses is empty.
+     */
+    public static ContactQuery all(List<ContactQuery> clauses) {
+        List<ContactQuery> copy = clauses(clauses, "all");
+        return new ContactQuery() {
+            public boolean matches(Contact contact) {
+                return copy.stream().allMatch(clause -> clause.matches(contact));
+            }
+
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.all(copy);
+            }
+        };
+    }
+
+    public static ContactQuery any(ContactQuery... clauses) {
+        return any(Arrays.asList(clauses));
+    }
+
+    /**
+     * @throws IllegalArgumentException if @clauses is empty.
+     */
+    public static ContactQuery any(List<ContactQuery> clauses) {
+        List<ContactQuery> copy = clauses(clauses, "any");
+        return new ContactQuery() {
+            public boolean matches(Contact contact) {
+                return copy.stream().anyMatch(clause -> clause.matches(contact));
+            }
+
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.any(copy);
+            }
+        };
+    }
+
+    public static ContactQuery not(ContactQuery clause) {
+        return new ContactQuery() {
+            public boolean matches(Contact contact) {
+                return !clause.matches(contact);
+            }
+
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.not(clause);
+            }
+        };
+    }
+
+    /**
+     * @return an equivalent query string query, for stores that only accept
+     *        query strings.
+     */
+    public String toQueryString() {
+        return accept(new Visitor<String>() {
+            public String matchAll() {
+                return "*";
+            }
+
+            public String phone(String digits) {
+                return "phone:" + digits;
+            }
+
+            public String emailDomain(String domain) {
+                return "email:\"" + domain + "\"";
+            }
+
+            public String namePrefix(List<String> words) {
+                List<String> terms = new ArrayList<>(words.size());
+                for (String word : words) {
+                    terms.add("name:" + word + "*");
+                }
+                return "(" + String.join(" AND ", terms) + ")";
+            }
+
+            public String all(List<ContactQuery> clauses) {
+                return join(clauses, " AND ");
+            }
+
+            public String any(List<ContactQuery> clauses) {
+                return join(clauses, " OR ");
+            }
+
+            public String not(ContactQuery clause) {
+                return "(* AND NOT " + clause.accept(this) + ")";
+            }
+
+            private String join(List<ContactQuery> clauses, String operator) {
+                List<String> parts = new ArrayList<>(clauses.size());
+                for (ContactQuery clause : clauses) {
+                    parts.add(clause.accept(this));
+                }
+                return "(" + String.join(operator, parts) + ")";
+            }
+        });
+    }
+
+    public String toString() {
+        return toQueryString();
+    }
+
+    private static List<ContactQuery> clauses(List<ContactQuery> clauses, String kind) {
+        if (clauses.isEmpty() || clauses.contains(null)) {
+            throw new IllegalArgumentException(kind + ": expected one or more clauses");
+        }
+        return Collections.unmodifiableList(new ArrayList<>(clauses));
+    }
+
+    private static String digits(String value) {
+        StringBuilder digits = new StringBuilder();
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digits.append(c);
+                }
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * @return the words of @text in lower case without accents.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        for (String word : WORD_SEPARATORS.split(folded.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,205 @@
+package app.dao.query;
+
+/**
+ * A page of the contacts matching a ContactQuery, in a given order. Written
+ * as JSON, a search looks like
+ *      {"query": {"all": [{"namePrefix": "jo"}, {"not": {"emailDomain": "example.com"}}]},
+ *       "sort": "-email", "pageSize": 10, "page": 0}
+ * where each clause is an object with a single member named after the
+ * clause: phone, emailDomain and namePrefix take a string, all and any an
+ * array of clauses, and not a clause; {} matches every contact. The sort is
+ * key (the default), phone or email, prefixed with - for descending order;
+ * ties are broken by key.
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public final class ContactSearch {
+
+    public enum SortField { KEY, PHONE, EMAIL }
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final ContactQuery query;
+    private final int pageSize;
+    private final int page;
+    private final SortField sortField;
+    private final boolean descending;
+
+    /**
+     * @param query = the contacts to find.
+     * @param pageSize = the number of results to return.
+     * @param page = the number of pages of results to skip.
+     * @throws IllegalArgumentException if the page cannot be fetched, as
+     *        described by offset(pageSize, page).
+     */
+    public ContactSearch(ContactQuery query, int pageSize, int page) {
+        this(query, pageSize, page, SortField.KEY, false);
+    }
+
+    private ContactSearch(ContactQuery query, int pageSize, int page, SortField sortField, boolean descending) {
+        offset(pageSize, page);
+        this.query = query;
+        this.pageSize = pageSize;
+        this.page = page;
+        this.sortField = sortField;
+        this.descending = descending;
+    }
+
+    /**
+     * @return a copy of this search ordered by @field.
+     */
+    public ContactSearch withSort(SortField field, boolean descending) {
+        return new ContactSearch(query, pageSize, page, field, descending);
+    }
+
+    public ContactQuery query() {
+        return query;
+    }
+
+    public int pageSize() {
+        return pageSize;
+    }
+
+    public int page() {
+        return page;
+    }
+
+    /**
+     * @return the number of results to skip.
+     */
+    public int offset() {
+        return page * pageSize;
+    }
+
+    /**
+     * @return the number of results to skip to reach @page of @pageSize
+     *        results.
+     * @throws IllegalArgumentException if @pageSize is not between 1 and
+     *        MAX_PAGE_SIZE, @page is negative or the offset does not fit in
+     *        an int.
+     */
+    public static int offset(int pageSize, int page) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE || page < 0) {
+            throw new IllegalArgumentException("expected a pageSize from 1 to " + MAX_PAGE_SIZE
+                    + " and a page of 0 or more, got pageSize " + pageSize + " and page " + page);
+        }
+        long offset = (long) page * pageSize;
+        if (offset > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("page " + page + " of " + pageSize + " results is too far");
+        }
+        return (int) offset;
+    }
+
+    public SortField sortField() {
+        return sortField;
+    }
+
+    public boolean descending() {
+        return descending;
+    }
+
+    /**
+     * @param json = a search in the form described above; pageSize defaults
+     *        to 10 and page to 0.
+     * @throws IllegalArgumentException naming the problem if @json is not a
+     *        valid search.
+     */
+    public static ContactSearch fromJson(String json) {
+        JsonObject body;
+        try {
+            JsonElement parsed = new JsonParser().parse(json);
+            if (!parsed.isJsonObject()) {
+                throw new IllegalArgumentException("expected a JSON object");
+            }
+            body = parsed.getAsJsonObject();
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("expected a JSON object");
+        }
+
+        ContactQuery query = body.has("query") ? clause(body.get("query")) : ContactQuery.matchAll();
+        int pageSize = body.has("pageSize") ? integer(body.get("pageSize"), "pageSize") : 10;
+        int page = body.has("page") ? integer(body.get("page"), "page") : 0;
+        ContactSearch search = new ContactSearch(query, pageSize, page);
+        if (body.has("sort")) {
+            String sort = string(body.get("sort"), "sort");
+            boolean descending = sort.startsWith("-");
+            String field = descending ? sort.substring(1) : sort;
+            try {
+                search = search.withSort(SortField.valueOf(field.toUpperCase(Locale.ROOT)), descending);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("sort: expected key, phone or email, got \"" + sort + "\"");
+            }
+        }
+        return search;
+    }
+
+    private static ContactQuery clause(JsonElement element) {
+        if (!element.isJsonObject() || element.getAsJsonObject().size() > 1) {
+            throw new IllegalArgumentException("expected a clause such as {\"phone\": \"...\"}, got " + element);
+        }
+        JsonObject object = element.getAsJsonObject();
+        if (object.size() == 0) {
+            return ContactQuery.matchAll();
+        }
+
+        Map.Entry<String, JsonElement> member = object.entrySet().iterator().next();
+        String kind = member.getKey();
+        JsonElement value = member.getValue();
+        switch (kind) {
+            case "phone":
+                return ContactQuery.phone(string(value, kind));
+            case "emailDomain":
+                return ContactQuery.emailDomain(string(value, kind));
+            case "namePrefix":
+                return ContactQuery.namePrefix(string(value, kind));
+            case "all":
+                return ContactQuery.all(clauses(value, kind));
+            case "any":
+                return ContactQuery.any(clauses(value, kind));
+            case "not":
+                return ContactQuery.not(clause(value));
+            default:
+                throw new IllegalArgumentException("unknown clause \"" + kind + "\"");
+        }
+    }
+
+    private static List<ContactQuery> clauses(JsonElement element, String kind) {
+        if (!element.isJsonArray()) {
+            throw new IllegalArgumentException(kind + ": expected an array of clauses");
+        }
+        JsonArray array = element.getAsJsonArray();
+        List<ContactQuery> clauses = new ArrayList<>(array.size());
+        for (JsonElement clause : array) {
+            clauses.add(clause(clause));
+        }
+        return clauses;
+    }
+
+    private static String string(JsonElement element, String name) {
+        if (!element.isJsonPrimitive() || !element.getAsJsonPrimitive().isString()) {
+            throw new IllegalArgumentException(name + ": expected a string, got " + element);
+        }
+        return element.getAsString();
+    }
+
+    private static int integer(JsonElement element, String name) {
+        try {
+            if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber()) {
+                return element.getAsBigDecimal().intValueExact();
+            }
+        } catch (ArithmeticException e) {
+            // falls through to the error below
+        }
+        throw new IllegalArgumentException(name + ": expected an integer, got " + element);
+    }
+}
@@ -0,0 +1,254 @@
+package app.dedup;
+
+/**
+ * The parts of a contact that duplicates are recognized by, normalized so that
+ * differences of formatting do not count:
+ *      name  - folded to lowercase without accents or punctuation, with its
+ *              words sorted, so "Miller, Jose" reads "jose miller"; compared
+ *              by its letter trigrams and by the Soundex code of each word.
+ *      phone - its digits only, without a leading US country code.
+ *      email - in lowercase, without a +tag in the local part.
+ * Two fingerprints can only be compared if they share a blocking key: the same
+ * phone, the same email or the same Soundex codes for their names. This keeps
+ * finding duplicates roughly linear in the number of contacts, at the cost of
+ * missing pairs that share none of them (such as a name misspelled in its
+ * first letter, with no phone or email in common).
+ */
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public class ContactFingerprint {
+
+    // added to the name similarity when both phones (or emails) are present and equal, or taken off when they differ
+    static final double SAME_CONTACT_DETAIL = 0.3;
+    static final double DIFFERENT_CONTACT_DETAIL = 0.2;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    // the Soundex digit of each letter from a to z
+    private static final String SOUNDEX_DIGITS = "01230120022455012623010202";
+
+    private final String key;
+    private final String name;
+    private final String phonetic;
+    private final int[] trigrams;
+    private final String phone;
+    private final String email;
+
+    /**
+     * @param key = the unique key the contact is stored under.
+     * @param name = the contact's name, or null.
+     * @param phone = the contact's phone number, or null.
+     * @param email = the contact's email address, or null.
+     */
+    public ContactFingerprint(String key, String name, String phone, String email) {
+        this.key = key;
+        this.name = foldName(name);
+        this.phonetic = phonetic(this.name);
+        this.trigrams = trigrams(this.name);
+        this.phone = normalizePhone(phone);
+        this.email = normalizeEmail(email);
+    }
+
+    public String key() {
+        return key;
+    }
+
+    /**
+     * @return the folded name, e.g. "jose miller".
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the keys of the blocks the contact belongs to; only contacts
+     *        sharing a block are compared.
+     */
+    public List<String> blockingKeys() {
+        List<String> keys = new ArrayList<>(3);
+        if (!phonetic.isEmpty()) {
+            keys.add("n:" + phonetic);
+        }
+        if (phone != null) {
+            keys.add("p:" + phone);
+        }
+        if (email != null) {
+            keys.add("e:" + email);
+        }
+        return keys;
+    }
+
+    /**
+     * Scores how likely two contacts are to be the same person. The names
+     * contribute the average of their trigram similarity (Dice coefficient)
+     * and whether their Soundex codes agree, so "Jose Miller" and "Jos
+     * Miller" score about 0.88 on their names alone; an equal phone or email
+     * adds SAME_CONTACT_DETAIL and a different one takes off
+     * DIFFERENT_CONTACT_DETAIL.
+     * @return a score between 0 (unrelated) and 1 (certainly the same).
+     */
+    public double similarity(ContactFingerprint other) {
+        double score = 0;
+        if (!name.isEmpty() && !other.name.isEmpty()) {
+            score = name.equals(other.name) ? 1
+                    : (dice(trigrams, other.trigrams) + (phonetic.equals(other.phonetic) ? 1 : 0)) / 2;
+        }
+        score += detail(phone, other.phone) + detail(email, other.email);
+        return Math.max(0, Math.min(1, score));
+    }
+
+    private static double detail(String value, String other) {
+        if (value == null || other == null) {
+            return 0;
+        }
+        return value.equals(other) ? SAME_CONTACT_DETAIL : -DIFFERENT_CONTACT_DETAIL;
+    }
+
+    /**
+     * @return @name in lowercase, without accents, with everything but letters
+     *        and digits taken as a word break, and its words sorted and
+     *        separated by single spaces; "" if @name is null.
+     */
+    static String foldName(String name) {
+        if (name == null) {
+            return "";
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean letter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        Collections.sort(words);
+        return String.join(" ", words);
+    }
+
+    /**
+     * @return the digits of @phone, without a leading 1 if there are eleven;
+     *        or null if there are fewer than seven.
+     */
+    static String normalizePhone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        if (digits.length() == 11 && digits.charAt(0) == '1') {
+            digits.deleteCharAt(0);
+        }
+        return digits.length() < 7 ? null : digits.toString();
+    }
+
+    /**
+     * @return @email trimmed and in lowercase, without anything from a '+' to
+     *        the '@'; or null if it is null or empty.
+     */
+    static String normalizeEmail(String email) {
+        if (email == null || email.trim().isEmpty()) {
+            return null;
+        }
+        String normalized = email.trim().toLowerCase(Locale.ROOT);
+        int at = normalized.lastIndexOf('@');
+        int plus = normalized.indexOf('+');
+        if (plus > 0 && plus < at) {
+            normalized = normalized.substring(0, plus) + normalized.substring(at);
+        }
+        return normalized;
+    }
+
+    /**
+     * @return the American Soundex code of @word, e.g. "M460" for "miller";
+     *        @word is expected in lowercase.
+     */
+    static String soundex(String word) {
+        char[] code = {Character.toUpperCase(word.charAt(0)), '0', '0', '0'};
+        char last = digit(word.charAt(0));
+        int size = 1;
+        for (int i = 1; i < word.length() && size < code.length; i++) {
+            char c = word.charAt(i);
+            char digit = digit(c);
+            if (digit != '0' && digit != last) {
+                code[size++] = digit;
+            }
+            // letters separated only by h or w are coded once
+            if (c != 'h' && c != 'w') {
+                last = digit;
+            }
+        }
+        return new String(code);
+    }
+
+    private static char digit(char c) {
+        return c >= 'a' && c <= 'z' ? SOUNDEX_DIGITS.charAt(c - 'a') : '0';
+    }
+
+    private static String phonetic(String name) {
+        if (name.isEmpty()) {
+            return "";
+        }
+        String[] words = name.split(" ");
+        String[] codes = new String[words.length];
+        for (int i = 0; i < words.length; i++) {
+            codes[i] = soundex(words[i]);
+        }
+        Arrays.sort(codes);
+        return String.join(" ", codes);
+    }
+
+    // the distinct trigrams of the name padded with a space at either end, as sorted hash codes
+    private static int[] trigrams(String name) {
+        if (name.isEmpty()) {
+            return new int[0];
+        }
+        String padded = " " + name + " ";
+        int[] hashes = new int[padded.length() - 2];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = padded.substring(i, i + 3).hashCode();
+        }
+        Arrays.sort(hashes);
+        int size = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (i == 0 || hashes[i] != hashes[i - 1]) {
+                hashes[size++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, size);
+    }
+
+    private static double dice(int[] a, int[] b) {
+        if (a.length + b.length == 0) {
+            return 0;
+        }
+        int common = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return 2.0 * common / (a.length + b.length);
+    }
+}
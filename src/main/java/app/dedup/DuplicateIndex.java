@@ -0,0 +1,194 @@
+package app.dedup;
+
+/**
+ * Holds the fingerprints of a set of contacts grouped into blocks by their
+ * blocking keys, so that the likely duplicates of one contact, or of every
+ * contact, are found by comparing it only with the contacts it shares a
+ * block with. Each block is kept sorted by folded name; in a block larger
+ * than @window (such as a common name's Soundex codes), a contact is only
+ * compared with the @window contacts nearest to it in that order, so that no
+ * block costs more than linear time.
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DuplicateIndex {
+
+    private static final Comparator<DuplicateMatch> BY_SCORE = Comparator.comparingDouble(DuplicateMatch::score)
+            .reversed().thenComparing(DuplicateMatch::key).thenComparing(DuplicateMatch::duplicateKey);
+
+    private final double threshold;
+    private final int window;
+
+    // guarded by this
+    // blocking key -> folded name + '\0' + key -> fingerprint
+    private final Map<String, NavigableMap<String, ContactFingerprint>> blocks = new HashMap<>();
+    private final Map<String, ContactFingerprint> byKey = new HashMap<>();
+
+    /**
+     * @param threshold = the lowest similarity two contacts are reported as
+     *        duplicates with, e.g. 0.85.
+     * @param window = how many neighbours a contact is compared with in a
+     *        block; blocks of up to this size are compared in full.
+     */
+    public DuplicateIndex(double threshold, int window) {
+        this.threshold = threshold;
+        this.window = Math.max(window, 2);
+    }
+
+    /**
+     * Adds a contact, replacing any held under the same key.
+     */
+    public synchronized void add(ContactFingerprint fingerprint) {
+        remove(fingerprint.key());
+        byKey.put(fingerprint.key(), fingerprint);
+        for (String blockingKey : fingerprint.blockingKeys()) {
+            blocks.computeIfAbsent(blockingKey, k -> new TreeMap<>()).put(sortKey(fingerprint), fingerprint);
+        }
+    }
+
+    public synchronized void remove(String key) {
+        ContactFingerprint removed = byKey.remove(key);
+        if (removed == null) {
+            return;
+        }
+        for (String blockingKey : removed.blockingKeys()) {
+            NavigableMap<String, ContactFingerprint> block = blocks.get(blockingKey);
+            block.remove(sortKey(removed));
+            if (block.isEmpty()) {
+                blocks.remove(blockingKey);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return byKey.size();
+    }
+
+    private static String sortKey(ContactFingerprint fingerprint) {
+        return fingerprint.name() + '\u0000' + fingerprint.key();
+    }
+
+    /**
+     * Finds the contacts held that are likely duplicates of one that may or
+     * may not be held itself; it is never reported as its own duplicate.
+     * @return the matches, with @fingerprint's key as their key, ordered by
+     *        descending score.
+     */
+    public List<DuplicateMatch> matches(ContactFingerprint fingerprint) {
+        Map<String, ContactFingerprint> candidates = new LinkedHashMap<>();
+        synchronized (this) {
+            String sortKey = sortKey(fingerprint);
+            for (String blockingKey : fingerprint.blockingKeys()) {
+                NavigableMap<String, ContactFingerprint> block = blocks.get(blockingKey);
+                if (block == null) {
+                    continue;
+                }
+                if (block.size() <= window) {
+                    addCandidates(candidates, block.values().iterator(), block.size());
+                } else {
+                    addCandidates(candidates, block.headMap(sortKey, false).descendingMap().values().iterator(),
+                            window / 2);
+                    addCandidates(candidates, block.tailMap(sortKey, false).values().iterator(), window / 2);
+                }
+            }
+        }
+        candidates.remove(fingerprint.key());
+
+        List<DuplicateMatch> matches = new ArrayList<>();
+        for (ContactFingerprint candidate : candidates.values()) {
+            double score = fingerprint.similarity(candidate);
+            if (score >= threshold) {
+                matches.add(new DuplicateMatch(fingerprint.key(), candidate.key(), score));
+            }
+        }
+        matches.sort(BY_SCORE);
+        return matches;
+    }
+
+    private static void addCandidates(Map<String, ContactFingerprint> candidates,
+                                      Iterator<ContactFingerprint> block, int limit) {
+        for (int i = 0; i < limit && block.hasNext(); i++) {
+            ContactFingerprint candidate = block.next();
+            candidates.put(candidate.key(), candidate);
+        }
+    }
+
+    /**
+     * Finds every pair of likely duplicates held, comparing the blocks in
+     * @parallelism tasks run on @workers. Each pair is reported once, with the
+     * lesser key first, however many blocks it shares.
+     * @param workers = the executor to compare on, which is left running.
+     * @param parallelism = the number of blocks compared at once.
+     * @return the matches, ordered by descending score.
+     */
+    public List<DuplicateMatch> findAll(ExecutorService workers, int parallelism) {
+        List<List<ContactFingerprint>> snapshot = new ArrayList<>();
+        synchronized (this) {
+            for (NavigableMap<String, ContactFingerprint> block : blocks.values()) {
+                if (block.size() > 1) {
+                    snapshot.add(new ArrayList<>(block.values()));
+                }
+            }
+        }
+
+        Map<String, DuplicateMatch> found = new ConcurrentHashMap<>();
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> running = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(parallelism, 1); i++) {
+                running.add(workers.submit(() -> {
+                    for (int b = next.getAndIncrement(); b < snapshot.size(); b = next.getAndIncrement()) {
+                        compareBlock(snapshot.get(b), found);
+                    }
+                }));
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while finding duplicates", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not find duplicates", e.getCause());
+        } finally {
+            // stops the remaining tasks if one failed or the caller was interrupted
+            for (Future<?> worker : running) {
+                worker.cancel(true);
+            }
+        }
+
+        List<DuplicateMatch> matches = new ArrayList<>(found.values());
+        matches.sort(BY_SCORE);
+        return matches;
+    }
+
+    private void compareBlock(List<ContactFingerprint> block, Map<String, DuplicateMatch> found) {
+        for (int i = 0; i < block.size(); i++) {
+            ContactFingerprint a = block.get(i);
+            for (int j = i + 1; j < block.size() && j - i < window; j++) {
+                ContactFingerprint b = block.get(j);
+                double score = a.similarity(b);
+                if (score >= threshold) {
+                    boolean ordered = a.key().compareTo(b.key()) < 0;
+                    DuplicateMatch match = ordered ? new DuplicateMatch(a.key(), b.key(), score)
+                            : new DuplicateMatch(b.key(), a.key(), score);
+                    found.putIfAbsent(match.key() + '\u0000' + match.duplicateKey(), match);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package app.dedup;
+
+/**
+ * A pair of contacts that are likely to be the same person, with the score
+ * (between 0 and 1, rounded to three places) they were matched with.
+ */
+
+public class DuplicateMatch {
+
+    private final String key;
+    private final String duplicateKey;
+    private final double score;
+
+    public DuplicateMatch(String key, String duplicateKey, double score) {
+        this.key = key;
+        this.duplicateKey = duplicateKey;
+        this.score = Math.round(score * 1000) / 1000.0;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public String duplicateKey() {
+        return duplicateKey;
+    }
+
+    public double score() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return key + " ~ " + duplicateKey + " (" + score + ")";
+    }
+}
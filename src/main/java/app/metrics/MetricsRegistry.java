@@ -0,0 +1,151 @@
+package app.metrics;
+
+/**
+ * Holds the service's counters, gauges and latency histograms and writes them in the
+ * Prometheus text exposition format. Each metric is identified by its name
+ * and label values; asking for the same metric twice returns the same
+ * instance, so callers on hot paths should keep hold of what they are given.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final ConcurrentMap<String, Family<?>> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param name = the metric name, conventionally ending in _total.
+     * @param help = a one-line description of the metric.
+     * @param labels = alternating label names and values.
+     * @return the counter for @name with @labels.
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return this.<LongAdder>family(name, help, "counter").series(labels, LongAdder::new);
+    }
+
+    /**
+     * Registers a gauge whose value is read from @value each time the
+     * metrics are written; registering the same gauge again keeps the first
+     * supplier.
+     * @param name = the metric name.
+     * @param help = a one-line description of the metric.
+     * @param labels = alternating label names and values.
+     */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        this.<LongSupplier>family(name, help, "gauge").series(labels, () -> value);
+    }
+
+    /**
+     * Latency histograms are exposed as Prometheus summaries: the 50th, 90th,
+     * 99th and 99.9th percentiles (in seconds) since the service started,
+     * with the count and sum of all recorded values.
+     * @param name = the metric name, conventionally ending in _seconds.
+     * @param help = a one-line description of the metric.
+     * @param labels = alternating label names and values.
+     * @return the histogram for @name with @labels.
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return this.<LatencyHistogram>family(name, help, "summary").series(labels, LatencyHistogram::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Family<T> family(String name, String help, String type) {
+        Family<?> family = families.computeIfAbsent(name, n -> new Family<>(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        return (Family<T>) family;
+    }
+
+    /**
+     * Writes every metric to @output in the Prometheus text format.
+     */
+    public void write(Writer output) throws IOException {
+        for (Map.Entry<String, Family<?>> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family<?> family = entry.getValue();
+            output.write("# HELP " + name + " " + family.help + "\n");
+            output.write("# TYPE " + name + " " + family.type + "\n");
+            for (Map.Entry<String, ?> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof LongAdder) {
+                    output.write(name + braces(labels) + " " + ((LongAdder) metric).sum() + "\n");
+                } else if (metric instanceof LongSupplier) {
+                    output.write(name + braces(labels) + " " + ((LongSupplier) metric).getAsLong() + "\n");
+                } else {
+                    writeSummary(output, name, labels, (LatencyHistogram) metric);
+                }
+            }
+        }
+    }
+
+    private static void writeSummary(Writer output, String name, String labels, LatencyHistogram histogram)
+            throws IOException {
+        String separator = labels.isEmpty() ? "" : ",";
+        boolean empty = histogram.count() == 0;
+        for (double quantile : QUANTILES) {
+            // Prometheus expects NaN for the quantiles of a summary with no observations
+            output.write(name + "{" + labels + separator + "quantile=\"" + quantile + "\"} "
+                    + (empty ? "NaN" : Double.toString(histogram.valueAt(quantile) / NANOS_PER_SECOND)) + "\n");
+        }
+        output.write(name + "_sum" + braces(labels) + " " + histogram.sum() / NANOS_PER_SECOND + "\n");
+        output.write(name + "_count" + braces(labels) + " " + histogram.count() + "\n");
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    static String labels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name, value pairs");
+        }
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                output.append(',');
+            }
+            output.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    output.append('\\').append(c);
+                } else if (c == '\n') {
+                    output.append("\\n");
+                } else {
+                    output.append(c);
+                }
+            }
+            output.append('"');
+        }
+        return output.toString();
+    }
+
+    private static final class Family<T> {
+        private final String help;
+        private final String type;
+        private final ConcurrentMap<String, T> series = new ConcurrentSkipListMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+
+        private T series(String[] labels, Supplier<T> create) {
+            return series.computeIfAbsent(labels(labels), l -> create.get());
+        }
+    }
+
+}
@@ -4,10 +4,19 @@ package app.models;
  * Data model for a contact in the contact book.
  */
 
+import app.models.validation.ContactValidator;
+import app.models.validation.FieldRule;
+import app.models.validation.Violation;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.SerializedName;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
 public class Contact {
 
     // more fields (address, multiple phone numbers, splitting the name
@@ -22,17 +31,52 @@ public class Contact {
     @SerializedName("email")
     private String email;
 
+    // values rejected by the validator; transient so Gson leaves it out, and
+    // only allocated when there is something to report
+    private transient List<Violation> violations;
+
     private static Gson gson = new GsonBuilder().serializeNulls().create();
 
+    private static volatile ContactValidator validator = ContactValidator.DEFAULT;
+
     public Contact(Contact other) {
         this.copyFrom(other);
     }
 
     public Contact(String name, String phone, String email) {
 
-        this.name = cleanName(name);
-        this.phone = cleanPhone(phone);
-        this.email = cleanEmail(email);
+        this.name = check("name", validator.nameRule(), name);
+        this.phone = check("phone", validator.phoneRule(), phone);
+        this.email = check("email", validator.emailRule(), email);
+    }
+
+    /**
+     * Replaces the rules used to clean and validate every contact field.
+     */
+    public static void setValidator(ContactValidator contactValidator) {
+        validator = contactValidator;
+    }
+
+    /**
+     * @return the values given to this contact that were rejected (and so
+     *        left null) by the validator, with the rule each one failed.
+     */
+    public List<Violation> getViolations() {
+        return violations == null ? Collections.emptyList() : Collections.unmodifiableList(violations);
+    }
+
+    private String check(String field, FieldRule rule, String value) {
+        if (value == null) {
+            return null;
+        }
+        String result = rule.apply(value);
+        if (result == null) {
+            if (violations == null) {
+                violations = new ArrayList<>(1);
+            }
+            violations.add(new Violation(field, value, rule.description()));
+        }
+        return result;
     }
 
     public String getName() {
@@ -46,14 +90,14 @@ public class Contact {
      */
     public static String cleanName(String name) {
         if (name != null) {
-            return name.replaceAll("[^a-zA-z\\s]", "");
+            return validator.nameRule().apply(name);
         } else {
             return null;
         }
     }
 
     public void setName(String name) {
-        this.name = cleanName(name);
+        this.name = check("name", validator.nameRule(), name);
     }
 
     public String getPhone() {
@@ -61,35 +105,25 @@ public class Contact {
     }
 
     /**
-     * If @phone is not null, removes any invalid characters (anything that
-     * isn't a digit, a parenthesis, or a hyphen, and checks that the phone
-     * number fits one of four allowable patterns, including:
+     * If @phone is not null, checks that the phone number fits one of the
+     * allowable patterns, including:
      *      0123456789
+     *      012-345-6789
      *      (012)3456789
      *      (012)345-6789
      *      (012) 345-6789
-     * If it fits, returns the clean phone number; otherwise, returns null.
+     * If it fits, returns the phone number unchanged; otherwise, returns null.
      */
     public static String cleanPhone(String phone) {
-        String output = null;
         if (phone != null) {
-            phone.replaceAll("/[^0-9()-]/", "");
-
-            // allows:
-            // 0123456789
-            // (012)3456789
-            // (012)345-6789
-            // (012) 345-6789
-            String pattern = "\\d{10}|(?:\\d{3}-){2}\\d{4}|\\(\\d{3}\\)\\s?\\d{3}-?\\d{4}";
-            if (phone.matches(pattern)) {
-                output = phone;
-            }
+            return validator.phoneRule().apply(phone);
+        } else {
+            return null;
         }
-        return output;
     }
 
     public void setPhone(String phone) {
-        this.phone = cleanPhone(phone);
+        this.phone = check("phone", validator.phoneRule(), phone);
     }
 
     public String getEmail() {
@@ -101,16 +135,15 @@ public class Contact {
      * not catch more complex invalid emails.
      */
     public static String cleanEmail(String email) {
-        String pattern = "^(.+)@(.+)$";
-        if (email != null && email.matches(pattern)) {
-            return email;
+        if (email != null) {
+            return validator.emailRule().apply(email);
         } else {
             return null;
         }
     }
 
     public void setEmail(String email) {
-        this.email = cleanEmail(email);
+        this.email = check("email", validator.emailRule(), email);
     }
 
     /**
@@ -124,7 +157,30 @@ public class Contact {
      * the key josmiller.
      */
     public String getKey() {
-        return this.name.toLowerCase().replaceAll("[^a-z]", "");
+        String name = this.name;
+        int length = name.length();
+        char[] key = new char[length];
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                key[size++] = c;
+            } else if (c >= 'A' && c <= 'Z') {
+                key[size++] = (char) (c + ('a' - 'A'));
+            } else if (c > 127) { // some non-ASCII letters lower case to ASCII ones
+                String lower = String.valueOf(c).toLowerCase(Locale.ROOT);
+                for (int j = 0; j < lower.length(); j++) {
+                    char l = lower.charAt(j);
+                    if (l >= 'a' && l <= 'z') {
+                        if (size == key.length) {
+                            key = Arrays.copyOf(key, key.length + lower.length());
+                        }
+                        key[size++] = l;
+                    }
+                }
+            }
+        }
+        return new String(key, 0, size);
     }
 
     public static String toJson(Contact contact) {
@@ -141,15 +197,22 @@ public class Contact {
      */
     public Contact copyFrom(Contact other) {
         if (other.name != null) {
-            this.name = cleanName(other.name);
+            this.name = check("name", validator.nameRule(), other.name);
         }
 
         if (other.phone != null) {
-            this.phone = cleanPhone(other.phone);
+            this.phone = check("phone", validator.phoneRule(), other.phone);
         }
 
         if (other.email != null) {
-            this.email = cleanEmail(other.email);
+            this.email = check("email", validator.emailRule(), other.email);
+        }
+
+        if (other.violations != null) {
+            if (violations == null) {
+                violations = new ArrayList<>(other.violations.size());
+            }
+            violations.addAll(other.violations);
         }
 
         return this;
@@ -0,0 +1,47 @@
+package app.models.validation;
+
+/**
+ * The set of rules applied to each field of a contact. Each field's rule can
+ * be replaced independently, e.g. to accept international phone numbers:
+ *      Contact.setValidator(ContactValidator.DEFAULT.withPhoneRule(new MyPhoneRule()));
+ */
+
+public class ContactValidator {
+
+    public static final ContactValidator DEFAULT = new ContactValidator(new NameRule(), new PhoneRule(), new EmailRule());
+
+    private final FieldRule nameRule;
+    private final FieldRule phoneRule;
+    private final FieldRule emailRule;
+
+    public ContactValidator(FieldRule nameRule, FieldRule phoneRule, FieldRule emailRule) {
+        this.nameRule = nameRule;
+        this.phoneRule = phoneRule;
+        this.emailRule = emailRule;
+    }
+
+    public FieldRule nameRule() {
+        return nameRule;
+    }
+
+    public FieldRule phoneRule() {
+        return phoneRule;
+    }
+
+    public FieldRule emailRule() {
+        return emailRule;
+    }
+
+    public ContactValidator withNameRule(FieldRule rule) {
+        return new ContactValidator(rule, phoneRule, emailRule);
+    }
+
+    public ContactValidator withPhoneRule(FieldRule rule) {
+        return new ContactValidator(nameRule, rule, emailRule);
+    }
+
+    public ContactValidator withEmailRule(FieldRule rule) {
+        return new ContactValidator(nameRule, phoneRule, rule);
+    }
+
+}
@@ -0,0 +1,29 @@
+package app.models.validation;
+
+/**
+ * Checks that an email address has the basic form local@domain, on a single
+ * line; will not catch more complex invalid addresses.
+ */
+
+public class EmailRule implements FieldRule {
+
+    public String apply(String email) {
+        int length = email.length();
+        boolean at = false;
+        for (int i = 0; i < length; i++) {
+            char c = email.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return null;
+            }
+            if (c == '@' && i > 0 && i < length - 1) {
+                at = true;
+            }
+        }
+        return at ? email : null;
+    }
+
+    public String description() {
+        return "an address of the form local@domain";
+    }
+
+}
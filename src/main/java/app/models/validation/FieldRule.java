@@ -0,0 +1,24 @@
+package app.models.validation;
+
+/**
+ * A validation and normalization rule for a single contact field.
+ * Implementations are shared between threads, so they must be stateless, and
+ * they run on every contact that is constructed or parsed, so they should
+ * avoid regular expressions and allocate only when the value changes.
+ */
+
+public interface FieldRule {
+
+    /**
+     * @return the normalized form of @value, or null if @value is rejected
+     *        (null values are never passed in).
+     */
+    String apply(String value);
+
+    /**
+     * @return a short description of what the rule accepts, used to report
+     *        rejected values.
+     */
+    String description();
+
+}
@@ -0,0 +1,41 @@
+package app.models.validation;
+
+/**
+ * Removes every character that isn't an ASCII letter or whitespace from a
+ * name; never rejects a name outright.
+ */
+
+public class NameRule implements FieldRule {
+
+    public String apply(String name) {
+        int length = name.length();
+        int i = 0;
+        while (i < length && isAllowed(name.charAt(i))) {
+            i++;
+        }
+        if (i == length) { // the common case: nothing to remove, nothing to allocate
+            return name;
+        }
+
+        char[] cleaned = new char[length];
+        name.getChars(0, i, cleaned, 0);
+        int size = i;
+        for (; i < length; i++) {
+            char c = name.charAt(i);
+            if (isAllowed(c)) {
+                cleaned[size++] = c;
+            }
+        }
+        return new String(cleaned, 0, size);
+    }
+
+    public String description() {
+        return "letters and spaces only";
+    }
+
+    private static boolean isAllowed(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+}
@@ -0,0 +1,62 @@
+package app.models.validation;
+
+/**
+ * Accepts phone numbers in one of the following formats, unchanged:
+ *      0123456789
+ *      012-345-6789
+ *      (012)3456789
+ *      (012)345-6789
+ *      (012) 345-6789
+ */
+
+public class PhoneRule implements FieldRule {
+
+    public String apply(String phone) {
+        int length = phone.length();
+        if (length == 10) {
+            return digits(phone, 0, 10) ? phone : null;
+        }
+        if (length == 12 && phone.charAt(3) == '-' && phone.charAt(7) == '-') {
+            return digits(phone, 0, 3) && digits(phone, 4, 7) && digits(phone, 8, 12) ? phone : null;
+        }
+        if (length < 12 || length > 15 || phone.charAt(0) != '(' || phone.charAt(4) != ')'
+                || !digits(phone, 1, 4)) {
+            return null;
+        }
+
+        int i = 5;
+        if (isWhitespace(phone.charAt(i))) {
+            i++;
+        }
+        if (!digits(phone, i, i + 3)) {
+            return null;
+        }
+        i += 3;
+        if (phone.charAt(i) == '-') {
+            i++;
+        }
+        return i + 4 == length && digits(phone, i, length) ? phone : null;
+    }
+
+    public String description() {
+        return "a 10 digit number such as 0123456789, 012-345-6789 or (012) 345-6789";
+    }
+
+    private static boolean digits(String s, int from, int to) {
+        if (to > s.length()) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+}
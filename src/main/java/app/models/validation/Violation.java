@@ -0,0 +1,36 @@
+package app.models.validation;
+
+/**
+ * Records that a FieldRule rejected the value given for a contact field.
+ */
+
+public class Violation {
+
+    private final String field;
+    private final String value;
+    private final String expected;
+
+    public Violation(String field, String value, String expected) {
+        this.field = field;
+        this.value = value;
+        this.expected = expected;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    public String expected() {
+        return expected;
+    }
+
+    @Override
+    public String toString() {
+        return field + ": expected " + expected + ", got \"" + value + "\"";
+    }
+
+}
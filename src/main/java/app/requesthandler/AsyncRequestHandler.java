@@ -0,0 +1,24 @@
+package app.requesthandler;
+
+/**
+ * Abstraction of the communication layer between the user interface and an
+ * asynchronous database access object; each operation returns a future that
+ * completes with the response once the database has answered.
+ */
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncRequestHandler<I, O> {
+
+    CompletableFuture<O> getAsync(String key);
+
+    CompletableFuture<List<O>> getAsync(String query, int pageSize, int page);
+
+    CompletableFuture<O> postAsync(I toPost);
+
+    CompletableFuture<O> putAsync(String key, I toUpdate);
+
+    CompletableFuture<O> deleteAsync(String key);
+
+}
@@ -0,0 +1,108 @@
+package app.requesthandler;
+
+/**
+ * Serves a ChangeFeedDAO's events as a Server-Sent Events stream. Each event
+ * is written as
+ *      id: 42
+ *      event: put
+ *      data: {"sequence":42,"operation":"put","key":"jakeevans","version":7,"document":{...}}
+ * with a null document for deletes, so a client that reconnects with the id
+ * of the last event it saw (the Last-Event-ID header EventSource sends) picks
+ * up where it left off. While there are no events, a comment line is sent
+ * every heartbeat so that idle connections stay open and clients that have
+ * gone away are noticed.
+ */
+
+import app.dao.ChangeEvent;
+import app.dao.ChangeFeedDAO;
+import app.dao.DAOResponse;
+import app.models.Contact;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+public class ChangeFeedRequestHandler {
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final Gson gson = new Gson();
+
+    private final ChangeFeedDAO<Contact, DAOResponse<Contact>> feed;
+    private final long heartbeatMillis;
+
+    /**
+     * @param heartbeatMillis = how long the stream may be idle before a
+     *        comment is sent.
+     */
+    public ChangeFeedRequestHandler(ChangeFeedDAO<Contact, DAOResponse<Contact>> feed, long heartbeatMillis) {
+        this.feed = feed;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * @param after = the after request parameter, or null.
+     * @param lastEventId = the Last-Event-ID header, or null.
+     * @return the sequence number to stream after: @after if given, else
+     *        @lastEventId, else the latest event, so that only new events are
+     *        sent. 0 streams the feed from the start.
+     * @throws IllegalArgumentException if the one used is not a number.
+     */
+    public long resumeFrom(String after, String lastEventId) {
+        String from = after != null ? after : lastEventId;
+        if (from == null || from.trim().isEmpty()) {
+            return feed.lastSequence();
+        }
+        try {
+            return Long.parseLong(from.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected a sequence number, got \"" + from + "\"");
+        }
+    }
+
+    /**
+     * Writes the events recorded after the one numbered @after to @output,
+     * flushing after each batch, then waits for new ones until @duration
+     * passes (or forever if it is 0), the feed is closed or the client goes
+     * away.
+     * @throws IOException if the client has gone away.
+     */
+    public void stream(long after, Writer output, long duration, TimeUnit unit) throws IOException {
+        long deadline = System.nanoTime() + unit.toNanos(duration);
+        output.write(":\n\n");
+        output.flush();
+        while ((duration <= 0 || System.nanoTime() - deadline < 0) && !feed.isClosed()) {
+            List<ChangeEvent> events = feed.read(after, BATCH_SIZE);
+            for (ChangeEvent event : events) {
+                write(event, output);
+                after = event.sequence();
+            }
+            if (!events.isEmpty()) {
+                output.flush();
+                continue;
+            }
+            try {
+                long wait = duration <= 0 ? heartbeatMillis
+                        : Math.min(heartbeatMillis, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                if (!feed.await(after, Math.max(wait, 1), TimeUnit.MILLISECONDS)) {
+                    output.write(":\n\n");
+                    output.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void write(ChangeEvent event, Writer output) throws IOException {
+        String operation = event.operation().name().toLowerCase(Locale.ROOT);
+        output.write("id: " + event.sequence() + "\nevent: " + operation + "\ndata: {\"sequence\":"
+                + event.sequence() + ",\"operation\":\"" + operation + "\",\"key\":" + gson.toJson(event.key())
+                + ",\"version\":" + event.version() + ",\"document\":" + event.document() + "}\n\n");
+    }
+}
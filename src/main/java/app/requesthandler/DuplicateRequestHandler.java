@@ -0,0 +1,78 @@
+package app.requesthandler;
+
+/**
+ * Serves a DeduplicatingDAO's likely duplicates as JSON. A contact is checked
+ * against the index without being added, and the whole index is searched as
+ * a job whose pairs are written one per line, e.g.
+ *      {"key":"josemiller","duplicateKey":"josmiller","score":0.882}
+ */
+
+import app.converter.Converter;
+import app.dao.DAOResponse;
+import app.dao.DeduplicatingDAO;
+import app.dedup.DuplicateMatch;
+import app.models.Contact;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+public class DuplicateRequestHandler {
+
+    private static final Gson gson = new Gson();
+
+    private final DeduplicatingDAO<Contact, DAOResponse<Contact>> dao;
+    private final Converter<Contact, String> converter;
+    private final int parallelism;
+
+    /**
+     * @param parallelism = the number of threads a batch job compares
+     *        contacts on.
+     */
+    public DuplicateRequestHandler(DeduplicatingDAO<Contact, DAOResponse<Contact>> dao,
+                                   Converter<Contact, String> converter, int parallelism) {
+        this.dao = dao;
+        this.converter = converter;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param contact = the JSON representation of a contact, stored or not.
+     * @return a JSON array of the contact's likely duplicates, ordered by
+     *        descending score, or an error message if @contact is not valid.
+     */
+    public String check(String contact) {
+        Contact parsed;
+        try {
+            parsed = converter.from(contact);
+        } catch (RuntimeException e) {
+            return "{Invalid JSON}";
+        }
+        if (parsed == null || parsed.getName() == null) {
+            return "{Invalid contact: a name is required}";
+        }
+        return gson.toJson(dao.duplicatesOf(parsed));
+    }
+
+    /**
+     * Writes every pair of likely duplicates in the index to @output, one JSON
+     * object per line, ordered by descending score.
+     * @return the number of pairs written, or -1 if the index is not built
+     *        yet, in which case "{Duplicate index not built yet}" is written
+     *        instead.
+     */
+    public int findAll(Writer output) throws IOException {
+        List<DuplicateMatch> matches = dao.findDuplicates(parallelism);
+        if (matches == null) {
+            output.write("{Duplicate index not built yet}\n");
+            return -1;
+        }
+        for (DuplicateMatch match : matches) {
+            output.write(gson.toJson(match));
+            output.write('\n');
+        }
+        return matches.size();
+    }
+}
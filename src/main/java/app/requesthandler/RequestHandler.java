@@ -5,6 +5,10 @@ package app.requesthandler;
  * and the database access object.
  */
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.List;
 
 public interface RequestHandler<I, O> {
@@ -13,10 +17,30 @@ public interface RequestHandler<I, O> {
 
     List<O> get(String query, int pageSize, int page);
 
+    void get(String query, int pageSize, int page, OutputStream output) throws IOException;
+
+    O get(String query, int pageSize, String cursor);
+
+    List<O> getAll(I keys);
+
+    List<O> search(I search);
+
+    List<O> suggest(String prefix, int size);
+
     O post(I toPost);
 
     O put(String key, I toUpdate);
 
     O delete(String key);
 
+    TaggedResponse<O> get(String key, String ifNoneMatch);
+
+    TaggedResponse<O> put(String key, I toUpdate, String ifMatch);
+
+    TaggedResponse<O> delete(String key, String ifMatch);
+
+    O bulk(BufferedReader input) throws IOException;
+
+    void export(Writer output) throws IOException;
+
 }
@@ -5,22 +5,60 @@ package app.requesthandler;
  * to the database access object.
  */
 
+import app.converter.ContactBinaryConverter;
 import app.converter.Converter;
+import app.dao.ContactDAOResponse;
 import app.dao.DAO;
 import app.dao.DAOResponse;
+import app.dao.QueryPage;
+import app.dao.query.ContactSearch;
 import app.models.Contact;
+import app.models.validation.Violation;
 
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+public class SparkContactRequestHandler implements RequestHandler<String, String>, AsyncRequestHandler<String, String> {
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int MAX_REPORTED_ERRORS = 100;
+    // keys fetched per _mget, so that one request cannot hold a multi-get of unbounded size
+    static final int MAX_KEYS = 100;
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final String VERSION_CONFLICT = "Version conflict";
+    // an If-Match entity tag that was not made by etag() and so matches no version
+    private static final long MALFORMED_TAG = -2;
 
-public class SparkContactRequestHandler implements RequestHandler<String, String> {
+    private static final Gson gson = new Gson();
 
     private final DAO<Contact, DAOResponse<Contact>> dao;
     private final Converter<Contact, String> converter;
+    private final int batchSize;
 
-    public SparkContactRequestHandler(DAO<Contact, DAOResponse<Contact>> dao, Converter<Contact, String> converter) {
+    /**
+     * @param batchSize = the number of contacts sent to the database per batch
+     *        by bulk imports and exports.
+     */
+    public SparkContactRequestHandler(DAO<Contact, DAOResponse<Contact>> dao, Converter<Contact, String> converter,
+                                      int batchSize) {
         this.dao = dao;
         this.converter = converter;
+        this.batchSize = batchSize;
+    }
+
+    public SparkContactRequestHandler(DAO<Contact, DAOResponse<Contact>> dao, Converter<Contact, String> converter) {
+        this(dao, converter, DEFAULT_BATCH_SIZE);
     }
 
     /**
@@ -34,6 +72,70 @@ public class SparkContactRequestHandler implements RequestHandler<String, String
         return parseResponse(response);
     }
 
+    /**
+     * Fetches many contacts by key in one call to the database.
+     * @param keys = a JSON object listing the unique keys, e.g.
+     *        {"keys": ["joshmiller", "janedoe"]}.
+     * @return a List holding, for each key in order, a JSON representation of
+     *        the Contact or an error statement if it was not found; or a List
+     *        holding a single error statement if @keys is not valid or lists
+     *        more than MAX_KEYS keys.
+     */
+    public List<String> getAll(String keys) {
+        KeyList request;
+        try {
+            request = gson.fromJson(keys, KeyList.class);
+        } catch (RuntimeException e) {
+            request = null;
+        }
+        if (request == null || request.keys == null || request.keys.contains(null)) {
+            return Collections.singletonList(parseResponse(
+                    new ContactDAOResponse("Invalid request: expected {\"keys\": [...]}")));
+        }
+        if (request.keys.size() > MAX_KEYS) {
+            return Collections.singletonList(parseResponse(new ContactDAOResponse(
+                    "Invalid request: at most " + MAX_KEYS + " keys, got " + request.keys.size())));
+        }
+        List<DAOResponse<Contact>> responses = dao.getByKeys(request.keys);
+        List<String> results = new ArrayList<>(responses.size());
+        for (DAOResponse<Contact> response : responses) {
+            results.add(parseResponse(response));
+        }
+        return results;
+    }
+
+    /**
+     * Fetches a page of contacts matching a structured search.
+     * @param search = a JSON representation of a ContactSearch, e.g.
+     *        {"query": {"any": [{"phone": "6306151042"}, {"namePrefix": "jo"}]},
+     *        "sort": "email", "pageSize": 10}.
+     * @return a List of JSON representations of the matching Contacts, or a
+     *        List holding a single error statement if @search is not valid or
+     *        the search failed.
+     */
+    public List<String> search(String search) {
+        ContactSearch parsed;
+        try {
+            parsed = ContactSearch.fromJson(search);
+        } catch (IllegalArgumentException e) {
+            return Collections.singletonList(parseResponse(new ContactDAOResponse("Invalid search: " + e.getMessage())));
+        }
+        return parseResponses(dao.search(parsed));
+    }
+
+    /**
+     * Fetches the contacts whose name has a word starting with @prefix, for
+     * search-as-you-type; served by a prefix structure rather than a search.
+     * @param prefix = the beginning of a name, as typed so far.
+     * @param size = the maximum number of contacts to return, raised to 1 or
+     *        lowered to 50 if outside that range.
+     * @return a List of JSON representations of the matching Contacts, or a
+     *        List containing a JSON representation of an error if one occurred.
+     */
+    public List<String> suggest(String prefix, int size) {
+        return parseResponses(dao.suggest(prefix, Math.max(1, Math.min(size, MAX_SUGGESTIONS))));
+    }
+
     /**
      * Fetches a lsit of contacts based on a @query.
      * @param query = a String query to be passed to the database.
@@ -44,14 +146,101 @@ public class SparkContactRequestHandler implements RequestHandler<String, String
      *        a JSON representation of an error if one occurred.
      */
     public List<String> get(String query, int pageSize, int page) {
+        int offset;
+        try {
+            offset = ContactSearch.offset(pageSize, page);
+        } catch (IllegalArgumentException e) {
+            return invalidPage(e);
+        }
+        return parseResponses(dao.getByQuery(query, pageSize, offset));
+    }
+
+    private List<String> invalidPage(IllegalArgumentException e) {
+        return Collections.singletonList(parseResponse(new ContactDAOResponse("Invalid page: " + e.getMessage())));
+    }
+
+    /**
+     * Writes the results of a @query to @output as a single JSON array, copying
+     * each contact's stored JSON straight from the database response.
+     * @param query = a String query to be passed to the database.
+     * @param pageSize = the number of results to return per query.
+     * @param page = the results offset.
+     * @param output = where to write the results (or the error statement, in
+     *        the same form as get(query, pageSize, page), if one occurred).
+     */
+    public void get(String query, int pageSize, int page, OutputStream output) throws IOException {
+        int from;
+        try {
+            from = ContactSearch.offset(pageSize, page);
+        } catch (IllegalArgumentException e) {
+            output.write(invalidPage(e).toString().getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        boolean[] first = {true};
+        DAOResponse<Contact> response = dao.getSourcesByQuery(query, pageSize, from,
+                (bytes, offset, length) -> {
+                    output.write(first[0] ? '[' : ',');
+                    first[0] = false;
+                    output.write(bytes, offset, length);
+                });
+
+        if (!response.success()) {
+            output.write(parseResponses(Collections.singletonList(response)).toString()
+                    .getBytes(StandardCharsets.UTF_8));
+        } else {
+            if (first[0]) {
+                output.write('[');
+            }
+            output.write(']');
+        }
+    }
+
+    /**
+     * Fetches a page of contacts based on a @query, continuing from @cursor.
+     * @param query = a String query to be passed to the database.
+     * @param pageSize = the number of results to return per query.
+     * @param cursor = the "next" token of the previous page, or null (or empty)
+     *        for the first page.
+     * @return a JSON object holding the "results" array and the "next" token
+     *        for the following page (null on the last page), or an error
+     *        statement if the cursor is invalid or the query failed.
+     */
+    public String get(String query, int pageSize, String cursor) {
+        if (pageSize <= 0 || pageSize > ContactSearch.MAX_PAGE_SIZE) {
+            return parseResponse(new ContactDAOResponse("Invalid pageSize: " + pageSize));
+        }
+        QueryPage<DAOResponse<Contact>> page;
+        try {
+            page = dao.getByQueryAfter(query, pageSize, cursor);
+        } catch (IllegalArgumentException e) {
+            return parseResponse(new ContactDAOResponse("Invalid cursor"));
+        }
+
+        List<DAOResponse<Contact>> responseList = page.results();
+        if (!responseList.isEmpty() && !responseList.get(0).success()) {
+            return parseResponse(responseList.get(0));
+        }
+
+        StringBuilder output = new StringBuilder("{\"results\":[");
+        for (int i = 0; i < responseList.size(); i++) {
+            if (i > 0) {
+                output.append(',');
+            }
+            output.append(converter.to(responseList.get(i).payload()));
+        }
+        output.append("],\"next\":");
+        output.append(page.nextCursor() == null ? "null" : "\"" + page.nextCursor() + "\"");
+        return output.append('}').toString();
+    }
+
+    private List<String> parseResponses(List<DAOResponse<Contact>> responseList) {
         List<String> results = new ArrayList<>();
-        page = page * pageSize;
-        List<DAOResponse<Contact>> responseList = dao.getByQuery(query, pageSize, page);
         if (responseList.size() == 0) { // no results, just return the empty lsit
             return results;
         }
         if (!responseList.get(0).success()) {
-            results.add(responseList.get(0).message() + responseList.get(0).exception().getMessage());
+            // not every failure carries an exception, e.g. a fail-fast "Circuit open"
+            results.add(parseResponse(responseList.get(0)));
         } else {
             for (DAOResponse<Contact> response : responseList) {
                 results.add(converter.to(response.payload()));
@@ -69,6 +258,10 @@ public class SparkContactRequestHandler implements RequestHandler<String, String
      */
     public String post(String toPost) {
         Contact contact = converter.from(toPost);
+        DAOResponse<Contact> invalid = invalid(contact);
+        if (invalid != null) {
+            return parseResponse(invalid);
+        }
         DAOResponse<Contact> response = dao.post(contact);
         return parseResponse(response);
     }
@@ -84,6 +277,10 @@ public class SparkContactRequestHandler implements RequestHandler<String, String
      */
     public String put(String key, String toUpdate) {
         Contact contact = converter.from(toUpdate);
+        DAOResponse<Contact> invalid = invalid(contact);
+        if (invalid != null) {
+            return parseResponse(invalid);
+        }
         DAOResponse<Contact> response = dao.put(key, contact);
         return parseResponse(response);
     }
@@ -99,6 +296,326 @@ public class SparkContactRequestHandler implements RequestHandler<String, String
         return parseResponse(response);
     }
 
+    /**
+     * Fetches a contact unless the client's copy is still current.
+     * @param key = the unique key based on the contact's name.
+     * @param ifNoneMatch = the If-None-Match header of the request: the entity
+     *        tags of the copies the client holds, or null.
+     * @return NOT_MODIFIED with an empty body if the contact's entity tag is
+     *        one of @ifNoneMatch, or else the same body as get(key); tagged
+     *        with the contact's version if the database reports one, and
+     *        marked stale if the database sent its last known value.
+     */
+    public TaggedResponse<String> get(String key, String ifNoneMatch) {
+        return conditional(dao.getByKey(key), ifNoneMatch);
+    }
+
+    private TaggedResponse<String> conditional(DAOResponse<Contact> response, String ifNoneMatch) {
+        String etag = etag(response);
+        if (etag != null && ifNoneMatch != null && matches(ifNoneMatch, etag)) {
+            return new TaggedResponse<>(TaggedResponse.NOT_MODIFIED, "", etag);
+        }
+        return new TaggedResponse<>(TaggedResponse.OK, parseResponse(response), etag, response.stale());
+    }
+
+    /**
+     * Variant of get(key, ifNoneMatch) that encodes the contact, or an error,
+     * with a binary @encoding such as CBOR instead of as JSON.
+     */
+    public TaggedResponse<byte[]> get(String key, String ifNoneMatch, ContactBinaryConverter encoding) {
+        DAOResponse<Contact> response = dao.getByKey(key);
+        String etag = etag(response);
+        if (etag != null && ifNoneMatch != null && matches(ifNoneMatch, etag)) {
+            return new TaggedResponse<>(TaggedResponse.NOT_MODIFIED, new byte[0], etag);
+        }
+        byte[] body = response.success() ? encoding.to(response.payload())
+                : encoding.error(errorMessage(response));
+        return new TaggedResponse<>(TaggedResponse.OK, body, etag, response.stale());
+    }
+
+    /**
+     * Updates a contact only if it has not been changed since the client
+     * fetched it, as given by the entity tag in @ifMatch.
+     * @param ifMatch = the If-Match header of the request: the entity tag of
+     *        the version the update is based on, "*" for any version, or null.
+     * @return PRECONDITION_FAILED with an error statement if the contact has
+     *        been changed since, or else the same body as put(key, toUpdate),
+     *        tagged with the contact's new version.
+     */
+    public TaggedResponse<String> put(String key, String toUpdate, String ifMatch) {
+        Contact contact = converter.from(toUpdate);
+        DAOResponse<Contact> invalid = invalid(contact);
+        if (invalid != null) {
+            return new TaggedResponse<>(TaggedResponse.OK, parseResponse(invalid), null);
+        }
+        long version = ifMatch == null ? DAOResponse.NO_VERSION : version(ifMatch);
+        if (version == MALFORMED_TAG) {
+            return preconditionFailed();
+        }
+        if (version == DAOResponse.NO_VERSION) {
+            return tagged(dao.put(key, contact));
+        }
+        TaggedResponse<String> mismatch = mismatch(key, ifMatch);
+        return mismatch != null ? mismatch : tagged(dao.put(key, contact, version));
+    }
+
+    /**
+     * Deletes a contact only if it has not been changed since the client
+     * fetched it; see put(key, toUpdate, ifMatch).
+     */
+    public TaggedResponse<String> delete(String key, String ifMatch) {
+        long version = ifMatch == null ? DAOResponse.NO_VERSION : version(ifMatch);
+        if (version == MALFORMED_TAG) {
+            return preconditionFailed();
+        }
+        if (version == DAOResponse.NO_VERSION) {
+            return tagged(dao.delete(key));
+        }
+        TaggedResponse<String> mismatch = mismatch(key, ifMatch);
+        return mismatch != null ? mismatch : tagged(dao.delete(key, version));
+    }
+
+    /**
+     * Checks the whole of the entity tag in @ifMatch, not just the version
+     * that the conditional write sends to the database: a contact deleted and
+     * created again may be back at the same version with different fields.
+     * @return the response to send if the contact is missing or its entity
+     *        tag is not @ifMatch, or null if the write may go ahead.
+     */
+    private TaggedResponse<String> mismatch(String key, String ifMatch) {
+        DAOResponse<Contact> current = dao.getByKey(key);
+        if (!current.success()) {
+            return tagged(current);
+        }
+        return ifMatch.trim().equals(etag(current)) ? null : preconditionFailed();
+    }
+
+    private TaggedResponse<String> tagged(DAOResponse<Contact> response) {
+        if (!response.success() && VERSION_CONFLICT.equals(response.message())) {
+            return new TaggedResponse<>(TaggedResponse.PRECONDITION_FAILED, parseResponse(response), null);
+        }
+        return new TaggedResponse<>(TaggedResponse.OK, parseResponse(response), etag(response));
+    }
+
+    private TaggedResponse<String> preconditionFailed() {
+        return new TaggedResponse<>(TaggedResponse.PRECONDITION_FAILED,
+                parseResponse(new ContactDAOResponse(VERSION_CONFLICT)), null);
+    }
+
+    /**
+     * @return the entity tag of a successful @response, which is its version
+     *        and a hash of its fields in quotes, or null if it has none. The
+     *        version alone is not enough: Elasticsearch starts a contact that
+     *        is deleted and created again back at version 1.
+     */
+    static String etag(DAOResponse<Contact> response) {
+        if (!response.success() || response.version() == DAOResponse.NO_VERSION) {
+            return null;
+        }
+        Contact contact = response.payload();
+        int hash = Objects.hash(contact.getName(), contact.getPhone(), contact.getEmail());
+        return "\"" + response.version() + "-" + Integer.toHexString(hash) + "\"";
+    }
+
+    /**
+     * @return whether @etag is one of the comma separated entity tags in
+     *        @header (compared weakly, as If-None-Match requires) or @header
+     *        is "*".
+     */
+    static boolean matches(String header, String etag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the version in an If-Match header holding one entity tag made by
+     *        etag(), NO_VERSION for "*" (which any existing contact matches),
+     *        or MALFORMED_TAG for anything else, which no contact matches.
+     */
+    static long version(String header) {
+        String tag = header.trim();
+        if (tag.equals("*")) {
+            return DAOResponse.NO_VERSION;
+        }
+        int dash = tag.indexOf('-');
+        if (dash < 2 || dash > tag.length() - 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return MALFORMED_TAG;
+        }
+        try {
+            long version = Long.parseLong(tag.substring(1, dash));
+            return version >= 0 ? version : MALFORMED_TAG;
+        } catch (NumberFormatException e) {
+            return MALFORMED_TAG;
+        }
+    }
+
+    /**
+     * Asynchronous variant of get(key); the future completes with the same JSON
+     * representation or error statement.
+     */
+    public CompletableFuture<String> getAsync(String key) {
+        return dao.getByKeyAsync(key).thenApply(this::parseResponse);
+    }
+
+    /**
+     * Asynchronous variant of get(key, ifNoneMatch).
+     */
+    public CompletableFuture<TaggedResponse<String>> getAsync(String key, String ifNoneMatch) {
+        return dao.getByKeyAsync(key).thenApply(response -> conditional(response, ifNoneMatch));
+    }
+
+    /**
+     * Asynchronous variant of get(query, pageSize, page).
+     */
+    public CompletableFuture<List<String>> getAsync(String query, int pageSize, int page) {
+        int offset;
+        try {
+            offset = ContactSearch.offset(pageSize, page);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(invalidPage(e));
+        }
+        return dao.getByQueryAsync(query, pageSize, offset).thenApply(this::parseResponses);
+    }
+
+    /**
+     * Asynchronous variant of post; the body is parsed on the calling thread.
+     */
+    public CompletableFuture<String> postAsync(String toPost) {
+        Contact contact = converter.from(toPost);
+        DAOResponse<Contact> invalid = invalid(contact);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(parseResponse(invalid));
+        }
+        return dao.postAsync(contact).thenApply(this::parseResponse);
+    }
+
+    /**
+     * Asynchronous variant of put; the body is parsed on the calling thread.
+     */
+    public CompletableFuture<String> putAsync(String key, String toUpdate) {
+        Contact contact = converter.from(toUpdate);
+        DAOResponse<Contact> invalid = invalid(contact);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(parseResponse(invalid));
+        }
+        return dao.putAsync(key, contact).thenApply(this::parseResponse);
+    }
+
+    /**
+     * Asynchronous variant of delete.
+     */
+    public CompletableFuture<String> deleteAsync(String key) {
+        return dao.deleteAsync(key).thenApply(this::parseResponse);
+    }
+
+    /**
+     * Adds contacts from newline-delimited JSON (one contact per line), sending
+     * them to the database in batches so that only one batch is held in memory
+     * and the input is not read faster than the database accepts it.
+     * @param input = the newline-delimited JSON representations of the contacts.
+     * @return a JSON summary of the number of contacts posted and failed, with
+     *        the line number and error message of (up to 100 of) the failures.
+     */
+    public String bulk(BufferedReader input) throws IOException {
+        BulkSummary summary = new BulkSummary();
+        List<Contact> batch = new ArrayList<>(batchSize);
+        List<Integer> lineNumbers = new ArrayList<>(batchSize);
+
+        String line;
+        int lineNumber = 0;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Contact contact;
+            try {
+                contact = converter.from(line);
+            } catch (RuntimeException e) {
+                summary.fail(lineNumber, "Invalid JSON");
+                continue;
+            }
+            DAOResponse<Contact> invalid = invalid(contact);
+            if (invalid != null) {
+                summary.fail(lineNumber, parseResponse(invalid));
+                continue;
+            }
+            batch.add(contact);
+            lineNumbers.add(lineNumber);
+            if (batch.size() == batchSize) {
+                postBatch(batch, lineNumbers, summary);
+            }
+        }
+        postBatch(batch, lineNumbers, summary);
+
+        return gson.toJson(summary);
+    }
+
+    private void postBatch(List<Contact> batch, List<Integer> lineNumbers, BulkSummary summary) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<DAOResponse<Contact>> responses = dao.postAll(batch);
+        for (int i = 0; i < responses.size(); i++) {
+            DAOResponse<Contact> response = responses.get(i);
+            if (response.success()) {
+                summary.posted++;
+            } else {
+                summary.fail(lineNumbers.get(i), parseResponse(response));
+            }
+        }
+        batch.clear();
+        lineNumbers.clear();
+    }
+
+    /**
+     * Writes every contact in the database to @output as newline-delimited
+     * JSON. If the database fails part way through, the error is written as
+     * the last line.
+     * @param output = where to write the contacts.
+     */
+    public void export(Writer output) throws IOException {
+        try {
+            dao.scan(batchSize, response -> {
+                try {
+                    output.write(parseResponse(response));
+                    output.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return an error response listing the fields of @contact that were
+     *        rejected by validation, or null if every field was accepted.
+     */
+    private DAOResponse<Contact> invalid(Contact contact) {
+        List<Violation> violations = contact.getViolations();
+        if (violations.isEmpty()) {
+            return null;
+        }
+        StringBuilder message = new StringBuilder("Invalid contact: ");
+        for (int i = 0; i < violations.size(); i++) {
+            if (i > 0) {
+                message.append("; ");
+            }
+            message.append(violations.get(i));
+        }
+        return new ContactDAOResponse(message.toString());
+    }
+
     /**
      * Parses the database access object response into a JSON representation to be
      * returned by the API.
@@ -112,12 +629,34 @@ public class SparkContactRequestHandler implements RequestHandler<String, String
         String output;
         if (response.success()) {
             output = converter.to(response.payload());
-        } else if (response.exception() == null) {
-            output = "{" + response.message() + "}";
         } else {
-            output = "{" + response.message() + "; " + response.exception().getMessage() + "}";
+            output = "{" + errorMessage(response) + "}";
         }
         return output;
     }
 
+    private static String errorMessage(DAOResponse<Contact> response) {
+        if (response.exception() == null) {
+            return response.message();
+        }
+        return response.message() + "; " + response.exception().getMessage();
+    }
+
+    private static final class KeyList {
+        private List<String> keys;
+    }
+
+    private static final class BulkSummary {
+        private int posted;
+        private int failed;
+        private final List<String> errors = new ArrayList<>();
+
+        private void fail(int lineNumber, String error) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + lineNumber + ": " + error);
+            }
+        }
+    }
+
 }
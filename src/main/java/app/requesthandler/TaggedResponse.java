@@ -0,0 +1,49 @@
+package app.requesthandler;
+
+/**
+ * The result of a conditional request: the @body to send, the HTTP @status
+ * (OK, or NOT_MODIFIED / PRECONDITION_FAILED when the request's condition
+ * decided the outcome), the entity tag of the contact, or null if there is
+ * none (e.g. the contact was not found), and whether the contact is a @stale
+ * copy served while the database could not be reached.
+ * @param <O> = the type of the response body.
+ */
+
+public final class TaggedResponse<O> {
+
+    public static final int OK = 200;
+    public static final int NOT_MODIFIED = 304;
+    public static final int PRECONDITION_FAILED = 412;
+
+    private final int status;
+    private final O body;
+    private final String etag;
+    private final boolean stale;
+
+    public TaggedResponse(int status, O body, String etag) {
+        this(status, body, etag, false);
+    }
+
+    public TaggedResponse(int status, O body, String etag, boolean stale) {
+        this.status = status;
+        this.body = body;
+        this.etag = etag;
+        this.stale = stale;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    public O body() {
+        return body;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    public boolean stale() {
+        return stale;
+    }
+}
@@ -0,0 +1,136 @@
+package app;
+
+import app.requesthandler.TaggedResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncResponderTest {
+
+    private static final long TIMEOUT_MILLIS = 500;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * Starts a server whose handler answers every request from @response,
+     * then writes and closes the response as Spark does once a route returns.
+     */
+    private Server start(Supplier<CompletableFuture<TaggedResponse<String>>> response) throws Exception {
+        AsyncResponder responder = new AsyncResponder(Executors.newSingleThreadExecutor(), TIMEOUT_MILLIS);
+        AsyncResponder.Handler handler = new AsyncResponder.Handler();
+        handler.setHandler(new AbstractHandler() {
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                               HttpServletResponse servletResponse) throws IOException {
+                responder.respond(request, response.get(), done::countDown);
+                servletResponse.setContentType("text/html; charset=utf-8");
+                OutputStream output = servletResponse.getOutputStream();
+                output.flush();
+                output.close();
+                baseRequest.setHandled(true);
+            }
+        });
+        Server server = new Server(new InetSocketAddress("localhost", 0));
+        server.setHandler(handler);
+        server.start();
+        return server;
+    }
+
+    private static HttpURLConnection get(Server server) throws IOException {
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return (HttpURLConnection) new URL("http://localhost:" + port + "/contact/testa").openConnection();
+    }
+
+    private static String body(HttpURLConnection connection) throws IOException {
+        InputStream input = connection.getResponseCode() < 400 ? connection.getInputStream()
+                : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = input) {
+            byte[] buffer = new byte[1024];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static <T> CompletableFuture<T> later(Supplier<T> value) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return value.get();
+        });
+    }
+
+    @Test
+    void respond_completesAfterRouteReturns_writesStatusHeadersAndBody() throws Exception {
+        Server server = start(() -> later(() ->
+                new TaggedResponse<>(TaggedResponse.OK, "{\"name\":\"Test A\"}", "\"1-abc\"", true)));
+        try {
+            HttpURLConnection connection = get(server);
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("application/json;charset=utf-8", connection.getContentType().replace(" ", ""));
+            assertEquals("\"1-abc\"", connection.getHeaderField("ETag"));
+            assertTrue(connection.getHeaderField("Warning").startsWith("110"));
+            assertEquals("{\"name\":\"Test A\"}", body(connection));
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void respond_futureFails_internalServerErrorWithMessage() throws Exception {
+        Server server = start(() -> later(() -> {
+            throw new IllegalStateException("Backend gone");
+        }));
+        try {
+            HttpURLConnection connection = get(server);
+            assertEquals(AsyncResponder.INTERNAL_SERVER_ERROR, connection.getResponseCode());
+            assertEquals("{Backend gone}", body(connection));
+            assertEquals(null, connection.getHeaderField("ETag"));
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void respond_notCompleteInTime_serviceUnavailable() throws Exception {
+        CompletableFuture<TaggedResponse<String>> never = new CompletableFuture<>();
+        Server server = start(() -> never);
+        try {
+            HttpURLConnection connection = get(server);
+            assertEquals(AsyncResponder.SERVICE_UNAVAILABLE, connection.getResponseCode());
+            assertEquals("{Timed out}", body(connection));
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            // completing afterwards writes nothing more and does not run done again
+            never.complete(new TaggedResponse<>(TaggedResponse.OK, "{}", null));
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package app.admission;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+
+    private static final long MILLI = 1_000_000;
+
+    /**
+     * Runs @windows windows of requests, offering @concurrency requests at
+     * once, each taking @latency nanoseconds.
+     */
+    private static void run(AdaptiveLimiter limiter, int windows, int concurrency, long latency) {
+        for (int sample = 0; sample < windows * AdaptiveLimiter.WINDOW_SAMPLES; ) {
+            int admitted = 0;
+            for (int i = 0; i < concurrency; i++) {
+                if (limiter.tryAcquire()) {
+                    admitted++;
+                }
+            }
+            for (int i = 0; i < admitted; i++) {
+                limiter.release(latency);
+            }
+            sample += admitted;
+        }
+    }
+
+    @Test
+    void tryAcquire_atLimit_refusesUntilReleased() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 2, 10, 2);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.inFlight());
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void release_steadyLatencyAtLimit_growsLimitToMax() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 10, 40, 2);
+        run(limiter, 50, 100, MILLI);
+        assertEquals(40, limiter.limit());
+    }
+
+    @Test
+    void release_steadyLatencyBelowLimit_keepsLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 10, 40, 2);
+        run(limiter, 50, 2, MILLI);
+        assertEquals(10, limiter.limit());
+    }
+
+    @Test
+    void release_latencyBeyondTolerance_shrinksLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 30, 40, 2);
+        run(limiter, 1, 100, MILLI);
+        run(limiter, 50, 100, 10 * MILLI);
+        // at the steepest gradient (0.5) the limit settles where halving it is made up by its square root
+        assertTrue(limiter.limit() <= 5, "limit " + limiter.limit());
+    }
+
+    @Test
+    void release_latencyWithinTolerance_doesNotShrinkLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 20, 40, 2);
+        run(limiter, 1, 10, MILLI);
+        int before = limiter.limit();
+        run(limiter, 5, 10, 2 * MILLI - 1);
+        assertTrue(limiter.limit() >= before);
+    }
+
+    @Test
+    void constructor_unorderedLimits_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter(10, 5, 20, 2));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter(1, 5, 20, 0.5));
+    }
+}
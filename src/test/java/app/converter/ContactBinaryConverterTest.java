@@ -0,0 +1,52 @@
+package app.converter;
+
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContactBinaryConverterTest {
+
+    @Test
+    void toFrom_cborAndSmile_roundTripContact() {
+        Contact contact = new Contact("Jake Evans", "0123456789", null);
+        for (ContactBinaryConverter encoding : new ContactBinaryConverter[]{ContactBinaryConverter.CBOR,
+                ContactBinaryConverter.SMILE}) {
+            Contact decoded = encoding.from(encoding.to(contact));
+            assertEquals("Jake Evans", decoded.getName());
+            assertEquals("0123456789", decoded.getPhone());
+            assertNull(decoded.getEmail());
+        }
+    }
+
+    @Test
+    void to_cbor_smallerThanJson() {
+        Contact contact = new Contact("Jake Evans", "0123456789", "jake@example.com");
+        assertTrue(ContactBinaryConverter.CBOR.to(contact).length
+                < new ContactJsonConverter().to(contact).getBytes().length);
+    }
+
+    @Test
+    void error_cbor_decodesAsErrorObject() {
+        byte[] encoded = ContactBinaryConverter.CBOR.error("Record not found");
+        // a CBOR map whose only key is "error"
+        assertEquals((byte) 0xbf, encoded[0]);
+        assertTrue(new String(encoded).contains("errorpRecord not found"));
+    }
+
+    @Test
+    void negotiate_acceptHeaders_picksFirstAcceptableType() {
+        assertNull(ContactBinaryConverter.negotiate(null));
+        assertNull(ContactBinaryConverter.negotiate("application/json"));
+        assertNull(ContactBinaryConverter.negotiate("*/*"));
+        assertSame(ContactBinaryConverter.CBOR, ContactBinaryConverter.negotiate("application/cbor"));
+        assertSame(ContactBinaryConverter.SMILE,
+                ContactBinaryConverter.negotiate("text/html, Application/Smile;q=0.9, */*;q=0.1"));
+        assertNull(ContactBinaryConverter.negotiate("application/json, application/cbor"));
+        assertSame(ContactBinaryConverter.CBOR,
+                ContactBinaryConverter.negotiate("application/smile;q=0, application/cbor"));
+    }
+}
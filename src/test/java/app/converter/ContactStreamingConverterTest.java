@@ -0,0 +1,66 @@
+package app.converter;
+
+import app.models.Contact;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ContactStreamingConverterTest {
+
+    private final ContactStreamingConverter converter = new ContactStreamingConverter();
+
+    @Test
+    void to_contact_matchesGson() {
+        Contact contact = new Contact("Jos\u00e9 Miller", "0123456789", null);
+        assertEquals(new ContactJsonConverter().to(contact), converter.to(contact));
+    }
+
+    @Test
+    void toSourceFromSource_contact_roundTripsBytes() {
+        Contact contact = new Contact("Jake Evans", "(012) 345-6789", "jos\u00e9@example.com");
+        Contact decoded = converter.fromSource(converter.toSource(contact));
+        assertEquals(contact.getName(), decoded.getName());
+        assertEquals("(012) 345-6789", decoded.getPhone());
+        assertEquals(contact.getEmail(), decoded.getEmail());
+    }
+
+    @Test
+    void fromSource_sliceOfArray_readsOnlySlice() {
+        byte[] bytes = "xx{\"name\":\"Jake Evans\"}yy".getBytes(StandardCharsets.UTF_8);
+        Contact contact = converter.fromSource(new BytesArray(bytes, 2, bytes.length - 4));
+        assertEquals("Jake Evans", contact.getName());
+    }
+
+    @Test
+    void from_invalidFields_validatedLikeGson() {
+        String json = "{\"name\":\"Jake1 Evans\",\"phone\":\"12\",\"email\":\"jake@example.com\",\"age\":{\"years\":3}}";
+        Contact streamed = converter.from(json);
+        Contact gson = Contact.fromJsonString(json);
+        assertEquals(gson.getName(), streamed.getName());
+        assertNull(streamed.getPhone());
+        assertEquals(gson.getEmail(), streamed.getEmail());
+        assertEquals(gson.getViolations().size(), streamed.getViolations().size());
+        assertEquals("phone", streamed.getViolations().get(0).field());
+    }
+
+    @Test
+    void from_lenientJson_readsValuesAsText() {
+        Contact contact = converter.from("{name: 'Jake Evans', /* a number */ \"phone\": 5551234567, \"email\": null}");
+        assertEquals("Jake Evans", contact.getName());
+        assertEquals("5551234567", contact.getPhone());
+        assertNull(contact.getEmail());
+    }
+
+    @Test
+    void from_malformedJson_throwsIllegalArgument() {
+        assertThrows(IllegalArgumentException.class, () -> converter.from("{\"name\":"));
+        assertThrows(IllegalArgumentException.class, () -> converter.from("[]"));
+        assertThrows(IllegalArgumentException.class, () -> converter.from("{\"name\":[\"Jake\"]}"));
+        assertThrows(IllegalArgumentException.class, () -> converter.from("{\"name\":\"Jake\"} {}"));
+    }
+}
@@ -0,0 +1,87 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchingDAOTest {
+
+    private final AtomicInteger batches = new AtomicInteger();
+
+    // counts the batches that reach the backend
+    private final EmbeddedDAO backend = new EmbeddedDAO(new ContactJsonConverter()) {
+        @Override
+        public List<DAOResponse<Contact>> postAll(List<Contact> toPost) {
+            batches.incrementAndGet();
+            return super.postAll(toPost);
+        }
+    };
+
+    @Test
+    void postAsync_concurrentPosts_sentInFewBatches() throws IOException {
+        BatchingDAO<Contact, DAOResponse<Contact>> dao = new BatchingDAO<>(backend, 10, 1000, 1);
+        List<CompletableFuture<DAOResponse<Contact>>> results = new ArrayList<>();
+        for (char c = 'a'; c <= 't'; c++) {
+            results.add(dao.postAsync(new Contact("Test " + c, null, null)));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            DAOResponse<Contact> response = results.get(i).join();
+            assertTrue(response.success());
+            assertEquals("test" + (char) ('a' + i), response.payload().getKey());
+        }
+        assertEquals(2, batches.get());
+        assertEquals(20, backend.size());
+        dao.close();
+    }
+
+    @Test
+    void post_duplicateInSameBatch_onlyFirstSucceeds() throws IOException {
+        BatchingDAO<Contact, DAOResponse<Contact>> dao = new BatchingDAO<>(backend, 10, 50, 1);
+        CompletableFuture<DAOResponse<Contact>> first = dao.postAsync(new Contact("Test A", null, null));
+        CompletableFuture<DAOResponse<Contact>> second = dao.postAsync(new Contact("test a", null, null));
+        assertTrue(first.join().success());
+        assertFalse(second.join().success());
+        assertFalse(dao.post(new Contact("Test A", null, null)).success());
+        dao.close();
+    }
+
+    @Test
+    void close_whilePosting_everyQueuedPostCompletes() throws Exception {
+        BatchingDAO<Contact, DAOResponse<Contact>> dao = new BatchingDAO<>(backend, 2, 1, 1);
+        List<CompletableFuture<DAOResponse<Contact>>> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> posters = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            Thread poster = new Thread(() -> {
+                try {
+                    while (true) {
+                        results.add(dao.postAsync(new Contact("Test A", null, null)));
+                    }
+                } catch (IllegalStateException e) {
+                    // closed
+                }
+            });
+            poster.start();
+            posters.add(poster);
+        }
+        Thread.sleep(50);
+        dao.close();
+        for (Thread poster : posters) {
+            poster.join();
+        }
+        // each post has either been sent or failed, none left waiting
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, error) -> null).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,103 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingDAOTest {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong();
+
+    // counts the lookups that reach the backend
+    private final EmbeddedDAO backend = new EmbeddedDAO(new ContactJsonConverter()) {
+        @Override
+        public DAOResponse<Contact> getByKey(String key) {
+            lookups.incrementAndGet();
+            return super.getByKey(key);
+        }
+    };
+
+    private final CachingDAO<Contact, DAOResponse<Contact>> dao =
+            new CachingDAO<>(backend, Contact::getKey, 2, 100, now::get);
+
+    {
+        backend.post(new Contact("Test A", "0001112222", "e@mail.com"));
+        backend.post(new Contact("Test B", null, null));
+        backend.post(new Contact("Test C", null, null));
+    }
+
+    @Test
+    void getByKey_repeatedKey_servedFromCache() {
+        dao.getByKey("testa");
+        dao.getByKey("testa");
+        assertEquals(1, lookups.get());
+        assertEquals(1, dao.hits());
+        assertEquals(1, dao.misses());
+    }
+
+    @Test
+    void getByKey_missingKey_notCached() {
+        assertFalse(dao.getByKey("notreal").success());
+        assertFalse(dao.getByKey("notreal").success());
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void getByKey_expiredEntry_refetched() {
+        dao.getByKey("testa");
+        now.addAndGet(100);
+        dao.getByKey("testa");
+        assertEquals(2, lookups.get());
+        assertEquals(1, dao.evictions());
+    }
+
+    @Test
+    void getByKey_overCapacity_evictsLeastRecentlyUsed() {
+        dao.getByKey("testa");
+        dao.getByKey("testb");
+        dao.getByKey("testa");
+        dao.getByKey("testc");
+        assertEquals(2, dao.size());
+        assertEquals(1, dao.evictions());
+        dao.getByKey("testa");
+        assertEquals(3, lookups.get());
+    }
+
+    @Test
+    void put_cachedKey_invalidatesEntry() {
+        dao.getByKey("testa");
+        dao.put("testa", new Contact(null, null, "new@mail.com"));
+        DAOResponse<Contact> response = dao.getByKey("testa");
+        assertTrue(response.success());
+        assertEquals("new@mail.com", response.payload().getEmail());
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void delete_cachedKey_invalidatesEntry() {
+        dao.getByKey("testa");
+        dao.delete("testa");
+        assertFalse(dao.getByKey("testa").success());
+    }
+
+    @Test
+    void getByKeys_someCached_fetchesOnlyMisses() {
+        dao.getByKey("testa");
+        List<DAOResponse<Contact>> results = dao.getByKeys(Arrays.asList("testb", "testa", "notreal"));
+        assertEquals("Test B", results.get(0).payload().getName());
+        assertEquals("Test A", results.get(1).payload().getName());
+        assertEquals("Record not found", results.get(2).message());
+        assertEquals(3, lookups.get());
+        assertEquals(1, dao.hits());
+    }
+}
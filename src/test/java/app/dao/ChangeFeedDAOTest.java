@@ -0,0 +1,179 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedDAOTest {
+
+    private static ChangeFeedDAO<Contact, DAOResponse<Contact>> feed(Path file, int retained) {
+        return feed(file, retained, 0);
+    }
+
+    private static ChangeFeedDAO<Contact, DAOResponse<Contact>> feed(Path file, int retained, long maxLogBytes) {
+        return new ChangeFeedDAO<>(new EmbeddedDAO(new ContactJsonConverter()), Contact::getKey,
+                new ContactJsonConverter(), file, retained, maxLogBytes);
+    }
+
+    /**
+     * Records @count events, alternately posting and deleting the same contact.
+     */
+    private static void churn(ChangeFeedDAO<Contact, DAOResponse<Contact>> dao, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                dao.post(new Contact("Test A", null, null));
+            } else {
+                dao.delete("testa");
+            }
+        }
+    }
+
+    private static List<String> describe(List<ChangeEvent> events) {
+        List<String> descriptions = new ArrayList<>();
+        for (ChangeEvent event : events) {
+            descriptions.add(event.sequence() + " " + event.operation() + " " + event.key());
+        }
+        return descriptions;
+    }
+
+    @Test
+    void writes_successful_recordedInOrder() throws IOException {
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> dao = feed(null, 100);
+        dao.post(new Contact("Jake Evans", null, null));
+        dao.post(new Contact("Jake Evans", null, null)); // already exists
+        dao.put("jakeevans", new Contact(null, "0123456789", null));
+        dao.put("jakeevans", new Contact("Jake Evan", null, null));
+        dao.delete("nobody");
+        dao.delete("jakeevan");
+
+        List<ChangeEvent> events = dao.read(0, 10);
+        assertEquals(Arrays.asList("1 POST jakeevans", "2 PUT jakeevans", "3 DELETE jakeevans", "4 PUT jakeevan",
+                "5 DELETE jakeevan"), describe(events));
+        assertEquals("{\"name\":\"Jake Evans\",\"phone\":\"0123456789\",\"email\":null}", events.get(1).document());
+        assertEquals(dao.lastSequence(), 5);
+        assertNull(events.get(4).document());
+        assertEquals(Collections.singletonList("4 PUT jakeevan"), describe(dao.read(3, 1)));
+        assertTrue(dao.read(5, 10).isEmpty());
+    }
+
+    @Test
+    void postAll_batch_recordsEachPostedItem() throws IOException {
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> dao = feed(null, 100);
+        dao.postAll(Arrays.asList(new Contact("Test A", null, null), new Contact("Test A", null, null),
+                new Contact("Test B", null, null)));
+        assertEquals(Arrays.asList("1 POST testa", "2 POST testb"), describe(dao.read(0, 10)));
+    }
+
+    @Test
+    void read_olderThanRetained_readsBackFromLog() throws IOException {
+        Path file = Files.createTempDirectory("changes").resolve("changes.log");
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> dao = feed(file, 2);
+        dao.post(new Contact("Test A", null, null));
+        dao.post(new Contact("Test B", null, null));
+        dao.post(new Contact("Test C", null, null));
+
+        assertEquals(Arrays.asList("1 POST testa", "2 POST testb"), describe(dao.read(0, 2)));
+        assertEquals(Arrays.asList("2 POST testb", "3 POST testc"), describe(dao.read(1, 10)));
+    }
+
+    @Test
+    void read_withoutLogBehindRetained_skipsToOldestHeld() throws IOException {
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> dao = feed(null, 2);
+        dao.post(new Contact("Test A", null, null));
+        dao.post(new Contact("Test B", null, null));
+        dao.post(new Contact("Test C", null, null));
+        assertEquals(Arrays.asList("2 POST testb", "3 POST testc"), describe(dao.read(0, 10)));
+    }
+
+    @Test
+    void reopen_logWithTornRecord_continuesSequence() throws IOException {
+        Path file = Files.createTempDirectory("changes").resolve("changes.log");
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> dao = feed(file, 100);
+        dao.post(new Contact("Test A", null, null));
+        dao.post(new Contact("Test B", null, null));
+        dao.close();
+        Files.write(file, "3\tPOST\t1\ttestc\t{\"name\":".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> reopened = feed(file, 100);
+        assertEquals(2, reopened.lastSequence());
+        reopened.post(new Contact("Test D", null, null));
+        assertEquals(Arrays.asList("1 POST testa", "2 POST testb", "3 POST testd"), describe(reopened.read(0, 10)));
+        reopened.close();
+    }
+
+    @Test
+    void read_farBehindRetained_startsFromIndexedOffset() throws IOException {
+        Path file = Files.createTempDirectory("changes").resolve("changes.log");
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> dao = feed(file, 2);
+        churn(dao, 3 * ChangeFeedDAO.INDEX_INTERVAL);
+        assertEquals(Arrays.asList("1 POST testa", "2 DELETE testa"), describe(dao.read(0, 2)));
+        long middle = ChangeFeedDAO.INDEX_INTERVAL + 10;
+        assertEquals(Arrays.asList((middle + 1) + " POST testa", (middle + 2) + " DELETE testa"),
+                describe(dao.read(middle, 2)));
+        dao.close();
+
+        // offsets indexed while recovering match those indexed while appending
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> reopened = feed(file, 2);
+        assertEquals(describe(dao.read(middle, 2)), describe(reopened.read(middle, 2)));
+        assertEquals(Collections.singletonList("512 DELETE testa"), describe(reopened.read(511, 1)));
+        reopened.close();
+    }
+
+    @Test
+    void append_logOverMaxSize_rotatesAndReadsAcrossBoth() throws IOException {
+        Path file = Files.createTempDirectory("changes").resolve("changes.log");
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> dao = feed(file, 1, 200);
+        churn(dao, 20);
+        Path rotated = file.resolveSibling("changes.log.1");
+        assertTrue(Files.exists(rotated));
+        assertTrue(Files.size(file) < 200 && Files.size(rotated) < 300);
+
+        // the oldest events were dropped with the log rotated out before
+        List<ChangeEvent> oldest = dao.read(0, 1);
+        assertTrue(oldest.get(0).sequence() > 1);
+        List<ChangeEvent> rest = dao.read(oldest.get(0).sequence() - 1, 100);
+        assertEquals(20, rest.get(rest.size() - 1).sequence());
+        for (int i = 1; i < rest.size(); i++) {
+            assertEquals(rest.get(i - 1).sequence() + 1, rest.get(i).sequence());
+        }
+        dao.close();
+
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> reopened = feed(file, 1, 200);
+        assertEquals(20, reopened.lastSequence());
+        assertEquals(describe(rest), describe(reopened.read(oldest.get(0).sequence() - 1, 100)));
+        reopened.close();
+    }
+
+    @Test
+    void await_eventRecordedLater_wakesWaiter() throws Exception {
+        ChangeFeedDAO<Contact, DAOResponse<Contact>> dao = feed(null, 100);
+        assertFalse(dao.await(0, 10, TimeUnit.MILLISECONDS));
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return dao.await(0, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        Thread.sleep(50);
+        dao.post(new Contact("Test A", null, null));
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -44,6 +44,10 @@ class DAOTest {
             return new ArrayList<>(contacts.values());
         }
 
+        public DAOResponse<Contact> getSourcesByQuery(String query, int pageSize, int page, SourceSink sink) {
+            return new ContactDAOResponse(null, true, null, null);
+        }
+
         public DAOResponse<Contact> post(Contact contact) {
             DAOResponse<Contact> response = new ContactDAOResponse("cannot post", new Exception());
             if (contact != null) {
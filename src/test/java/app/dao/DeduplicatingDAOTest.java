@@ -0,0 +1,118 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.dedup.ContactFingerprint;
+import app.dedup.DuplicateIndex;
+import app.dedup.DuplicateMatch;
+import app.models.Contact;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeduplicatingDAOTest {
+
+    private final AtomicInteger scans = new AtomicInteger();
+
+    // counts the scans that build the index
+    private EmbeddedDAO backend = new EmbeddedDAO(new ContactJsonConverter()) {
+        @Override
+        public void scan(int batchSize, Consumer<DAOResponse<Contact>> consumer) {
+            super.scan(batchSize, consumer);
+            scans.incrementAndGet();
+        }
+    };
+    private DeduplicatingDAO<Contact, DAOResponse<Contact>> dao;
+
+    private DeduplicatingDAO<Contact, DAOResponse<Contact>> create(boolean rejectDuplicates) {
+        dao = new DeduplicatingDAO<>(backend,
+                contact -> new ContactFingerprint(contact.getKey(), contact.getName(), contact.getPhone(),
+                        contact.getEmail()),
+                ContactDAOResponse::new, () -> new DuplicateIndex(0.85, 100), rejectDuplicates, 0, TimeUnit.SECONDS);
+        assertTrue(dao.rebuild());
+        // let the build started by the constructor finish too, so that each test knows what is indexed
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scans.get() < 2 && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        return dao;
+    }
+
+    @AfterEach
+    void tearDown() {
+        dao.close();
+    }
+
+    @Test
+    void post_duplicateWhenRejecting_rejectedWithKeys() {
+        backend.post(new Contact("Jos Miller", "6306151042", null));
+        create(true);
+
+        DAOResponse<Contact> response = dao.post(new Contact("Jose Miller", "(630) 615-1042", null));
+        assertFalse(response.success());
+        assertEquals("Possible duplicate of josmiller", response.message());
+        assertFalse(backend.getByKey("josemiller").success());
+        assertEquals(1, dao.duplicatePosts());
+    }
+
+    @Test
+    void post_duplicateWhenNotRejecting_postedAndCounted() {
+        backend.post(new Contact("Jos Miller", null, null));
+        create(false);
+
+        assertTrue(dao.post(new Contact("Jose Miller", null, null)).success());
+        assertTrue(dao.post(new Contact("Mary Jones", null, null)).success());
+        assertEquals(1, dao.duplicatePosts());
+    }
+
+    @Test
+    void postAll_someDuplicates_rejectsOnlyThoseInOrder() {
+        backend.post(new Contact("Jake Evans", null, "jake@example.com"));
+        create(true);
+
+        List<DAOResponse<Contact>> results = dao.postAll(Arrays.asList(new Contact("Mary Jones", null, null),
+                new Contact("Jake Evens", null, "Jake@example.com"), new Contact("Ann Lee", null, null)));
+        assertTrue(results.get(0).success());
+        assertEquals("Possible duplicate of jakeevans", results.get(1).message());
+        assertEquals("annlee", results.get(2).payload().getKey());
+    }
+
+    @Test
+    void writes_throughInstance_keepIndexCurrent() {
+        create(true);
+        assertTrue(dao.post(new Contact("Jos Miller", null, null)).success());
+        assertEquals(1, dao.duplicatesOf(new Contact("Jose Miller", null, null)).size());
+
+        assertTrue(dao.delete("josmiller").success());
+        assertTrue(dao.duplicatesOf(new Contact("Jose Miller", null, null)).isEmpty());
+    }
+
+    @Test
+    void findDuplicates_maintainedIndex_findsPairsWithoutRescanning() {
+        create(false);
+        dao.post(new Contact("Jos Miller", null, null));
+        dao.post(new Contact("Jose Miller", null, null));
+        backend.post(new Contact("Mary Jones", "6306151042", null));
+        backend.post(new Contact("Maria Jones", "(630) 615-1042", null));
+
+        List<DuplicateMatch> matches = dao.findDuplicates(2);
+        assertEquals(2, scans.get());
+        assertEquals(1, matches.size());
+        assertEquals("josemiller", matches.get(0).key());
+        assertEquals("josmiller", matches.get(0).duplicateKey());
+        assertEquals(2, dao.size());
+
+        // writes made elsewhere are picked up by the next rebuild
+        assertTrue(dao.rebuild());
+        assertEquals(2, dao.findDuplicates(2).size());
+        assertEquals(4, dao.size());
+    }
+}
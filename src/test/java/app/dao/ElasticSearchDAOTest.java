@@ -0,0 +1,150 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.models.Contact;
+import org.apache.http.HttpHost;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ElasticSearchDAOTest {
+
+    @Test
+    void parseHosts_commaSeparatedUrls_defaultsSchemeAndPort() {
+        assertEquals(Arrays.asList(new HttpHost("es1", 9200, "http"), new HttpHost("es2", 9201, "https")),
+                ElasticSearchClientConfig.parseHosts("es1, https://es2:9201,"));
+    }
+
+    @Test
+    void getByKey_nodeDropsConnections_retriedThenConnectionError() throws IOException {
+        AtomicInteger connections = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                while (true) {
+                    try {
+                        Socket socket = server.accept();
+                        connections.incrementAndGet();
+                        socket.close(); // before any response
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            ElasticSearchClientConfig config = new ElasticSearchClientConfig(
+                    Collections.singletonList(new HttpHost("localhost", server.getLocalPort(), "http")))
+                    .withReadRetries(2, 1);
+            try (ElasticSearchDAO dao = new ElasticSearchDAO(config, new ContactJsonConverter())) {
+                DAOResponse<?> response = dao.getByKey("testa");
+                assertFalse(response.success());
+                assertEquals("Connection error", response.message());
+                assertEquals(3, connections.get());
+            }
+        }
+    }
+
+    private static final String RENAME_LOOKUP = "{\"docs\":["
+            + "{\"_index\":\"contacts\",\"_type\":\"doc\",\"_id\":\"janedoe\",\"_version\":3,\"found\":true,"
+            + "\"_source\":{\"name\":\"Jane Doe\",\"phone\":\"0123456789\",\"email\":\"jane@example.com\"}},"
+            + "{\"_index\":\"contacts\",\"_type\":\"doc\",\"_id\":\"janesmith\",\"found\":false}]}";
+
+    private static final String CREATED = "{\"create\":{\"_index\":\"contacts\",\"_type\":\"doc\","
+            + "\"_id\":\"janesmith\",\"_version\":1,\"result\":\"created\",\"status\":201}}";
+
+    private static final String DELETED = "{\"delete\":{\"_index\":\"contacts\",\"_type\":\"doc\","
+            + "\"_id\":\"janedoe\",\"_version\":4,\"result\":\"deleted\",\"status\":200}}";
+
+    private static String failed(String operation, String id, int status, String type) {
+        return "{\"" + operation + "\":{\"_index\":\"contacts\",\"_type\":\"doc\",\"_id\":\"" + id
+                + "\",\"status\":" + status + ",\"error\":{\"type\":\"" + type + "\",\"reason\":\"" + type + "\"}}}";
+    }
+
+    private static String bulk(String create, String delete) {
+        return "{\"took\":1,\"errors\":true,\"items\":[" + create + "," + delete + "]}";
+    }
+
+    private static StubElasticsearch renameStub(String create, String delete) throws IOException {
+        return new StubElasticsearch()
+                .on("POST /_mget", 200, RENAME_LOOKUP)
+                .on("POST /_bulk", 200, bulk(create, delete))
+                .on("DELETE /contacts/doc/janesmith", 200, "{\"_index\":\"contacts\",\"_type\":\"doc\","
+                        + "\"_id\":\"janesmith\",\"_version\":2,\"result\":\"deleted\"}")
+                .on("PUT /contacts/doc/janedoe/_create", 201, "{\"_index\":\"contacts\",\"_type\":\"doc\","
+                        + "\"_id\":\"janedoe\",\"_version\":5,\"result\":\"created\"}");
+    }
+
+    @Test
+    void put_newName_createsNewKeyAndDeletesOld() throws IOException {
+        try (StubElasticsearch es = renameStub(CREATED, DELETED);
+             ElasticSearchDAO dao = new ElasticSearchDAO(es.config(), new ContactJsonConverter())) {
+            DAOResponse<Contact> response = dao.put("janedoe", new Contact("Jane Smith", null, null));
+            assertTrue(response.success(), response.message());
+            assertEquals("Jane Smith", response.payload().getName());
+            assertEquals("0123456789", response.payload().getPhone());
+            assertEquals(Arrays.asList("POST /_mget", "POST /_bulk"), es.requests());
+        }
+    }
+
+    @Test
+    void put_newNameTaken_oldRestoredAndError() throws IOException {
+        try (StubElasticsearch es = renameStub(
+                failed("create", "janesmith", 409, "version_conflict_engine_exception"), DELETED);
+             ElasticSearchDAO dao = new ElasticSearchDAO(es.config(), new ContactJsonConverter())) {
+            DAOResponse<Contact> response = dao.put("janedoe", new Contact("Jane Smith", null, null));
+            assertFalse(response.success());
+            assertEquals("Elasticsearch error: CONFLICT", response.message());
+            assertTrue(es.requests().contains("PUT /contacts/doc/janedoe/_create"));
+        }
+    }
+
+    @Test
+    void put_oldWrittenSinceRead_newRemovedAndVersionConflict() throws IOException {
+        try (StubElasticsearch es = renameStub(CREATED,
+                failed("delete", "janedoe", 409, "version_conflict_engine_exception"));
+             ElasticSearchDAO dao = new ElasticSearchDAO(es.config(), new ContactJsonConverter())) {
+            DAOResponse<Contact> response = dao.put("janedoe", new Contact("Jane Smith", null, null), 3);
+            assertFalse(response.success());
+            assertEquals("Version conflict", response.message());
+            assertTrue(es.requests().contains("DELETE /contacts/doc/janesmith"));
+        }
+    }
+
+    @Test
+    void put_oldDeletedSinceRead_newRemovedAndNotFound() throws IOException {
+        String notFound = "{\"delete\":{\"_index\":\"contacts\",\"_type\":\"doc\","
+                + "\"_id\":\"janedoe\",\"_version\":1,\"result\":\"not_found\",\"status\":404}}";
+        try (StubElasticsearch es = renameStub(CREATED, notFound);
+             ElasticSearchDAO dao = new ElasticSearchDAO(es.config(), new ContactJsonConverter())) {
+            DAOResponse<Contact> response = dao.put("janedoe", new Contact("Jane Smith", null, null));
+            assertFalse(response.success());
+            assertEquals("Record not found", response.message());
+            assertTrue(es.requests().contains("DELETE /contacts/doc/janesmith"));
+        }
+    }
+
+    @Test
+    void putAsync_deleteFails_newRemovedAndError() throws Exception {
+        try (StubElasticsearch es = renameStub(CREATED,
+                failed("delete", "janedoe", 500, "exception"));
+             ElasticSearchDAO dao = new ElasticSearchDAO(es.config(), new ContactJsonConverter())) {
+            DAOResponse<Contact> response = dao.putAsync("janedoe", new Contact("Jane Smith", null, null)).get();
+            assertFalse(response.success());
+            assertEquals("Elasticsearch error: INTERNAL_SERVER_ERROR", response.message());
+            for (int i = 0; i < 100 && !es.requests().contains("DELETE /contacts/doc/janesmith"); i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(es.requests().contains("DELETE /contacts/doc/janesmith"));
+        }
+    }
+}
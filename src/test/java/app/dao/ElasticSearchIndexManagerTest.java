@@ -0,0 +1,38 @@
+package app.dao;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.http.HttpHost;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ElasticSearchIndexManagerTest {
+
+    @Test
+    void indexBody_explicitMapping_withConfiguredShards() throws IOException {
+        ElasticSearchClientConfig config = new ElasticSearchClientConfig(
+                Collections.singletonList(new HttpHost("localhost", 9200, "http")));
+        try (ElasticSearchIndexManager manager = new ElasticSearchIndexManager(config, 3, 2)) {
+            JsonObject body = new JsonParser().parse(Strings.toString(
+                    manager.indexBody(XContentFactory.jsonBuilder().startObject()).endObject())).getAsJsonObject();
+
+            JsonObject settings = body.getAsJsonObject("settings");
+            assertEquals(3, settings.get("number_of_shards").getAsInt());
+            assertEquals(2, settings.get("number_of_replicas").getAsInt());
+
+            JsonObject mapping = body.getAsJsonObject("mappings").getAsJsonObject("doc");
+            assertEquals("strict", mapping.get("dynamic").getAsString());
+            JsonObject properties = mapping.getAsJsonObject("properties");
+            assertEquals("contact_key", properties.getAsJsonObject("name").getAsJsonObject("fields")
+                    .getAsJsonObject("key").get("normalizer").getAsString());
+            assertEquals("phone_digits", properties.getAsJsonObject("phone").get("normalizer").getAsString());
+        }
+        assertEquals("contacts_v3", ElasticSearchIndexManager.indexName(ElasticSearchIndexManager.MAPPING_VERSION));
+    }
+}
@@ -0,0 +1,38 @@
+package app.dao;
+
+import app.dao.query.ContactQuery;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.elasticsearch.common.Strings;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ElasticSearchQueryCompilerTest {
+
+    private static JsonObject compile(ContactQuery query) {
+        return new JsonParser().parse(Strings.toString(ElasticSearchQueryCompiler.compile(query))).getAsJsonObject();
+    }
+
+    @Test
+    void compile_clauses_becomeUnscoredTermFilters() {
+        JsonObject filter = compile(ContactQuery.all(ContactQuery.phone("(630) 615-1042"),
+                ContactQuery.emailDomain("Example.com"))).getAsJsonObject("constant_score").getAsJsonObject("filter");
+        JsonObject first = filter.getAsJsonObject("bool").getAsJsonArray("filter").get(0).getAsJsonObject();
+        JsonObject second = filter.getAsJsonObject("bool").getAsJsonArray("filter").get(1).getAsJsonObject();
+        assertEquals("6306151042", first.getAsJsonObject("term").getAsJsonObject("phone").get("value").getAsString());
+        assertEquals("example.com", second.getAsJsonObject("term").getAsJsonObject("email.domain").get("value").getAsString());
+    }
+
+    @Test
+    void compile_namePrefix_usesNgramsUpToLongestGram() {
+        JsonObject shortWord = compile(ContactQuery.namePrefix("Jos\u00e9")).getAsJsonObject("constant_score")
+                .getAsJsonObject("filter");
+        assertEquals("jose", shortWord.getAsJsonObject("term").getAsJsonObject("name.prefix").get("value").getAsString());
+
+        JsonObject longWord = compile(ContactQuery.namePrefix("abcdefghijklmnopqrstuvwxyz"))
+                .getAsJsonObject("constant_score").getAsJsonObject("filter");
+        assertEquals("abcdefghijklmnopqrstuvwxyz", longWord.getAsJsonObject("prefix")
+                .getAsJsonObject("name.folded").get("value").getAsString());
+    }
+}
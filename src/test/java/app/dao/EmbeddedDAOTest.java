@@ -0,0 +1,201 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.dao.query.ContactQuery;
+import app.dao.query.ContactSearch;
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddedDAOTest {
+
+    private EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+
+    {
+        dao.post(new Contact("Test A", "0001112222", "e@mail.com"));
+        dao.post(new Contact("Test B", null, "mail@example.com"));
+        dao.post(new Contact("Other C", "(123) 456-7890", null));
+    }
+
+    @Test
+    void getByKey_validKey_returnsSuccessfulResponse() {
+        DAOResponse<Contact> response = dao.getByKey("testa");
+        assertTrue(response.success());
+        assertEquals("Test A", response.payload().getName());
+    }
+
+    @Test
+    void getByKey_invalidKey_returnsRecordNotFound() {
+        DAOResponse<Contact> response = dao.getByKey("notreal");
+        assertFalse(response.success());
+        assertEquals("Record not found", response.message());
+    }
+
+    @Test
+    void post_existingKey_returnsUnsuccessfulResponse() {
+        DAOResponse<Contact> response = dao.post(new Contact("test a", null, null));
+        assertFalse(response.success());
+    }
+
+    @Test
+    void put_withVersion_rejectedOnceContactChanged() {
+        long version = dao.getByKey("testa").version();
+        DAOResponse<Contact> updated = dao.put("testa", new Contact(null, "0001113333", null), version);
+        assertTrue(updated.success());
+        assertTrue(updated.version() > version);
+        assertEquals(updated.version(), dao.getByKey("testa").version());
+
+        DAOResponse<Contact> stale = dao.put("testa", new Contact(null, "0001114444", null), version);
+        assertEquals("Version conflict", stale.message());
+        assertEquals("Version conflict", dao.delete("testa", version).message());
+        assertTrue(dao.delete("testa", updated.version()).success());
+    }
+
+    @Test
+    void put_rename_movesContactToNewKey() {
+        DAOResponse<Contact> response = dao.put("testa", new Contact("Test Z", null, null));
+        assertTrue(response.success());
+        assertEquals("0001112222", response.payload().getPhone());
+        assertFalse(dao.getByKey("testa").success());
+        assertTrue(dao.getByKey("testz").success());
+        assertEquals(1, dao.getByQuery("name:z", 10, 0).size());
+        assertEquals(0, dao.getByQuery("name:a", 10, 0).size());
+    }
+
+    @Test
+    void delete_validKey_removesFromIndex() {
+        assertTrue(dao.delete("otherc").success());
+        assertEquals(0, dao.getByQuery("other", 10, 0).size());
+    }
+
+    @Test
+    void getByQuery_fieldValue_returnsMatches() {
+        List<DAOResponse<Contact>> results = dao.getByQuery("phone:1234567890", 10, 0);
+        assertEquals(1, results.size());
+        assertEquals("Other C", results.get(0).payload().getName());
+    }
+
+    @Test
+    void getByQuery_prefix_returnsMatchesInKeyOrder() {
+        List<DAOResponse<Contact>> results = dao.getByQuery("name:te*", 10, 0);
+        assertEquals(2, results.size());
+        assertEquals("testa", results.get(0).payload().getKey());
+        assertEquals("testb", results.get(1).payload().getKey());
+    }
+
+    @Test
+    void getByQuery_matchAll_isPaged() {
+        List<DAOResponse<Contact>> results = dao.getByQuery("*", 2, 2);
+        assertEquals(1, results.size());
+        assertEquals("testb", results.get(0).payload().getKey());
+    }
+
+    @Test
+    void getByQueryAfter_followingCursors_visitsEveryMatchOnce() {
+        QueryPage<DAOResponse<Contact>> first = dao.getByQueryAfter("*", 2, null);
+        assertEquals(2, first.results().size());
+        QueryPage<DAOResponse<Contact>> second = dao.getByQueryAfter("*", 2, first.nextCursor());
+        assertEquals(1, second.results().size());
+        assertEquals("testb", second.results().get(0).payload().getKey());
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void search_byKey_isPagedAndOrdered() {
+        ContactSearch search = new ContactSearch(ContactQuery.namePrefix("te"), 1, 1);
+        assertEquals("testb", dao.search(search).get(0).payload().getKey());
+        assertEquals("testa", dao.search(search.withSort(ContactSearch.SortField.KEY, true)).get(0).payload().getKey());
+    }
+
+    @Test
+    void search_byEmail_putsMissingValuesLast() {
+        List<DAOResponse<Contact>> results = dao.search(new ContactSearch(ContactQuery.matchAll(), 10, 0)
+                .withSort(ContactSearch.SortField.EMAIL, false));
+        assertEquals(Arrays.asList("testa", "testb", "otherc"),
+                Arrays.asList(results.get(0).payload().getKey(), results.get(1).payload().getKey(),
+                        results.get(2).payload().getKey()));
+    }
+
+    @Test
+    void postAll_batchWithDuplicates_reportsPerItem() {
+        List<DAOResponse<Contact>> results = dao.postAll(Arrays.asList(
+                new Contact("New One", null, null),
+                new Contact("test a", null, null),
+                new Contact("new one", null, null)));
+        assertTrue(results.get(0).success());
+        assertFalse(results.get(1).success());
+        assertFalse(results.get(2).success());
+        assertEquals(4, dao.size());
+    }
+
+    @Test
+    void scan_allContacts_visitedInKeyOrder() {
+        List<String> keys = new ArrayList<>();
+        dao.scan(2, response -> keys.add(response.payload().getKey()));
+        assertEquals(Arrays.asList("otherc", "testa", "testb"), keys);
+    }
+
+    @Test
+    void reopen_afterWritesAndSnapshot_recoversState() throws IOException {
+        Path directory = Files.createTempDirectory("contacts");
+        EmbeddedDAO durable = new EmbeddedDAO(directory, 0, new ContactJsonConverter());
+        durable.post(new Contact("Test A", "0001112222", "e@mail.com"));
+        durable.post(new Contact("Test B", null, null));
+        durable.snapshot();
+        durable.put("testa", new Contact("Test C", null, null));
+        durable.delete("testb");
+
+        // reopen without closing, as after a crash, so the log must be replayed
+        EmbeddedDAO recovered = new EmbeddedDAO(directory, 0, new ContactJsonConverter());
+        assertEquals(1, recovered.size());
+        assertEquals("0001112222", recovered.getByKey("testc").payload().getPhone());
+        recovered.close();
+    }
+
+    @Test
+    void close_duringPeriodicSnapshot_waitsForIt() throws Exception {
+        Path directory = Files.createTempDirectory("contacts");
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        EmbeddedDAO durable = new EmbeddedDAO(directory, 1, new ContactJsonConverter()) {
+            @Override
+            public void snapshot() throws IOException {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                started.countDown();
+                try {
+                    Thread.sleep(200);
+                    super.snapshot();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+        durable.post(new Contact("Test A", null, null));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        durable.close();
+        assertEquals(0, overlaps.get());
+
+        EmbeddedDAO recovered = new EmbeddedDAO(directory, 0, new ContactJsonConverter());
+        assertEquals(1, recovered.size());
+        recovered.close();
+    }
+}
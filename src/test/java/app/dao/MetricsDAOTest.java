@@ -0,0 +1,44 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.metrics.MetricsRegistry;
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsDAOTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final MetricsDAO<Contact, DAOResponse<Contact>> dao =
+            new MetricsDAO<>(new EmbeddedDAO(new ContactJsonConverter()), registry);
+
+    @Test
+    void outcome_failureMessage_usesTextBeforeColon() {
+        assertEquals("Elasticsearch error", MetricsDAO.outcome(new ContactDAOResponse("Elasticsearch error: CONFLICT")));
+        assertEquals("Record not found", MetricsDAO.outcome(new ContactDAOResponse("Record not found")));
+        assertEquals("success", MetricsDAO.outcome(new ContactDAOResponse(new Contact("Test A", null, null))));
+    }
+
+    @Test
+    void write_afterOperations_reportsCountsByOutcome() throws IOException {
+        dao.post(new Contact("Test A", null, null));
+        dao.getByKey("testa");
+        dao.getByKey("notreal");
+        dao.getByKey("notreal");
+
+        StringWriter output = new StringWriter();
+        registry.write(output);
+        String text = output.toString();
+        assertTrue(text.contains("# TYPE contacts_dao_operations_total counter\n"));
+        assertTrue(text.contains("contacts_dao_operations_total{operation=\"get\",outcome=\"Record not found\"} 2\n"));
+        assertTrue(text.contains("contacts_dao_operations_total{operation=\"get\",outcome=\"success\"} 1\n"));
+        assertTrue(text.contains("contacts_dao_operations_total{operation=\"post\",outcome=\"success\"} 1\n"));
+        assertTrue(text.contains("contacts_dao_latency_seconds_count{operation=\"get\"} 3\n"));
+        assertTrue(text.contains("contacts_dao_latency_seconds{operation=\"get\",quantile=\"0.99\"} "));
+    }
+}
@@ -0,0 +1,44 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RebuiltIndexTest {
+
+    private final EmbeddedDAO backend = new EmbeddedDAO(new ContactJsonConverter());
+    private final RebuiltIndex<Contact, DAOResponse<Contact>, Set<String>> index = new RebuiltIndex<>(backend,
+            ConcurrentHashMap::newKeySet, (keys, response) -> keys.add(response.payload().getKey()), Set::remove,
+            "test-rebuilder", 0, TimeUnit.SECONDS);
+
+    @Test
+    void written_duringRebuilds_reachesTheIndexSwappedIn() throws Exception {
+        assertTrue(index.rebuild());
+        Thread rebuilder = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                index.rebuild();
+            }
+        });
+        rebuilder.start();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                String name = "Test " + (char) ('a' + i / 26 / 26 % 26) + (char) ('a' + i / 26 % 26)
+                        + (char) ('a' + i % 26);
+                index.written(null, backend.post(new Contact(name, null, null)));
+            }
+        } finally {
+            rebuilder.interrupt();
+            rebuilder.join();
+            index.close();
+        }
+        // a write that only reached an index about to be discarded would be missing until the next rebuild
+        assertEquals(2000, index.current().size());
+    }
+}
@@ -0,0 +1,115 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResilientDAOTest {
+
+    /**
+     * An in-memory store that can be taken down, counting the calls that
+     * reach it.
+     */
+    private static final class FlakyDAO extends EmbeddedDAO {
+        private boolean down;
+        private int calls;
+
+        private FlakyDAO() {
+            super(new ContactJsonConverter());
+        }
+
+        public DAOResponse<Contact> getByKey(String key) {
+            calls++;
+            return down ? new ContactDAOResponse("Connection error", new IOException("refused")) : super.getByKey(key);
+        }
+
+        public List<DAOResponse<Contact>> getByQuery(String query, int pageSize, int page) {
+            calls++;
+            return down
+                    ? Collections.singletonList(new ContactDAOResponse("Connection error", new IOException("refused")))
+                    : super.getByQuery(query, pageSize, page);
+        }
+    }
+
+    private long now;
+    private final FlakyDAO backend = new FlakyDAO();
+    private final ResilientDAO<Contact, DAOResponse<Contact>> dao = new ResilientDAO<>(backend, Contact::getKey,
+            ContactDAOResponse::new, ContactDAOResponse::stale, new CircuitBreaker(2, 1000, () -> now), 10);
+
+    @Test
+    void unreachable_connectionErrorsOnly_countAsOutage() {
+        assertTrue(ResilientDAO.unreachable(new ContactDAOResponse("Connection error", new IOException())));
+        assertTrue(ResilientDAO.unreachable(new ContactDAOResponse("Elasticsearch error: 500", new IOException())));
+        assertFalse(ResilientDAO.unreachable(new ContactDAOResponse("Record not found")));
+        assertFalse(ResilientDAO.unreachable(new ContactDAOResponse(new Contact("Test A", null, null))));
+    }
+
+    @Test
+    void getByQuery_repeatedConnectionErrors_failFastWithoutCallingBackend() {
+        backend.down = true;
+        dao.getByQuery("*", 10, 0);
+        dao.getByQuery("*", 10, 0);
+        assertEquals(2, backend.calls);
+
+        List<DAOResponse<Contact>> results = dao.getByQuery("*", 10, 0);
+        assertEquals(2, backend.calls);
+        assertEquals("Circuit open", results.get(0).message());
+        assertEquals("Circuit open", dao.post(new Contact("Test A", null, null)).message());
+        assertEquals(0, backend.size());
+    }
+
+    @Test
+    void getByKey_backendDown_servesLastKnownValueAsStale() {
+        dao.post(new Contact("Test A", "0123456789", null));
+        backend.down = true;
+
+        DAOResponse<Contact> response = dao.getByKey("testa");
+        assertTrue(response.success());
+        assertTrue(response.stale());
+        assertEquals("0123456789", response.payload().getPhone());
+        assertEquals("Connection error", dao.getByKey("testb").message());
+
+        // the circuit is now open, so the backend is not asked
+        int calls = backend.calls;
+        assertTrue(dao.getByKey("testa").stale());
+        assertEquals("Circuit open", dao.getByKey("testb").message());
+        assertEquals(calls, backend.calls);
+    }
+
+    @Test
+    void getByKey_recordDeletedOrMissing_forgetsLastKnownValue() {
+        dao.post(new Contact("Test A", null, null));
+        dao.post(new Contact("Test B", null, null));
+        dao.delete("testa");
+        backend.delete("testb");
+        assertEquals("Record not found", dao.getByKey("testb").message());
+
+        backend.down = true;
+        assertFalse(dao.getByKey("testa").success());
+        assertFalse(dao.getByKey("testb").success());
+    }
+
+    @Test
+    void getByKey_backendRecovers_closesCircuitAfterOpenTime() {
+        dao.post(new Contact("Test A", null, null));
+        backend.down = true;
+        dao.getByQuery("*", 10, 0);
+        dao.getByQuery("*", 10, 0);
+        backend.down = false;
+        assertTrue(dao.getByKey("testa").stale());
+
+        now += 1000;
+        DAOResponse<Contact> response = dao.getByKey("testa");
+        assertTrue(response.success());
+        assertFalse(response.stale());
+        assertEquals(CircuitBreaker.State.CLOSED, dao.breaker().state());
+    }
+}
@@ -0,0 +1,71 @@
+package app.dao;
+
+/**
+ * An HTTP server standing in for an Elasticsearch node: each request is
+ * answered with the canned JSON registered for its method and path (or a
+ * 404 if there is none), and recorded as "METHOD path" for tests to check
+ * which requests were sent.
+ */
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class StubElasticsearch implements AutoCloseable {
+
+    private final HttpServer server;
+    private final Map<String, String> bodies = new ConcurrentHashMap<>();
+    private final Map<String, Integer> statuses = new ConcurrentHashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    StubElasticsearch() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String request = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+            requests.add(request);
+            String body = bodies.getOrDefault(request, "{\"found\":false}");
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(statuses.getOrDefault(request, bodies.containsKey(request) ? 200 : 404),
+                    bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Answers @request ("METHOD path") with @status and @body.
+     */
+    StubElasticsearch on(String request, int status, String body) {
+        statuses.put(request, status);
+        bodies.put(request, body);
+        return this;
+    }
+
+    List<String> requests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    ElasticSearchClientConfig config() {
+        return new ElasticSearchClientConfig(Collections.singletonList(
+                new HttpHost("localhost", server.getAddress().getPort(), "http")));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
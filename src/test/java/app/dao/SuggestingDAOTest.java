@@ -0,0 +1,84 @@
+package app.dao;
+
+import app.converter.ContactJsonConverter;
+import app.models.Contact;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuggestingDAOTest {
+
+    private EmbeddedDAO backend = new EmbeddedDAO(new ContactJsonConverter());
+    private SuggestingDAO<Contact, DAOResponse<Contact>> dao;
+
+    @BeforeEach
+    void setUp() {
+        backend.post(new Contact("Jake Evans", null, null));
+        backend.post(new Contact("Jane Doe", null, null));
+        backend.post(new Contact("Evan Jones", null, null));
+        dao = new SuggestingDAO<>(backend, Contact::getKey, Contact::getName, 0, TimeUnit.SECONDS);
+        assertTrue(dao.rebuild());
+    }
+
+    @AfterEach
+    void tearDown() {
+        dao.close();
+    }
+
+    private static List<String> keys(List<DAOResponse<Contact>> responses) {
+        List<String> keys = new ArrayList<>();
+        for (DAOResponse<Contact> response : responses) {
+            keys.add(response.payload().getKey());
+        }
+        return keys;
+    }
+
+    @Test
+    void suggest_firstWordPrefix_returnsMatchesInNameOrder() {
+        assertEquals(Arrays.asList("jakeevans", "janedoe"), keys(dao.suggest("Ja", 10)));
+    }
+
+    @Test
+    void suggest_laterWordPrefix_matchesEachContactOnce() {
+        assertEquals(Arrays.asList("evanjones", "jakeevans"), keys(dao.suggest("evan", 10)));
+    }
+
+    @Test
+    void suggest_prefixSpanningWords_matchesWholeName() {
+        assertEquals(Collections.singletonList("jakeevans"), keys(dao.suggest("jake  E", 10)));
+    }
+
+    @Test
+    void suggest_size_limitsResults() {
+        assertEquals(1, dao.suggest("j", 1).size());
+    }
+
+    @Test
+    void suggest_emptyPrefix_returnsNothing() {
+        assertTrue(dao.suggest(" ", 10).isEmpty());
+    }
+
+    @Test
+    void suggest_afterWrites_reflectsThem() {
+        dao.post(new Contact("Jo Smith", null, null));
+        dao.put("janedoe", new Contact("Mary Doe", null, null));
+        dao.delete("jakeevans");
+        assertEquals(Arrays.asList("josmith", "evanjones"), keys(dao.suggest("jo", 10)));
+        assertTrue(dao.suggest("ja", 10).isEmpty());
+        assertEquals(Collections.singletonList("marydoe"), keys(dao.suggest("doe", 10)));
+    }
+
+    @Test
+    void normalize_accentsAndCase_areFolded() {
+        assertEquals("jose garcia", SuggestingDAO.normalize("  Jos\u00e9\tGarci\u0301a "));
+    }
+}
@@ -0,0 +1,65 @@
+package app.dao.query;
+
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContactSearchTest {
+
+    private static final Contact JOSE = new Contact("Jos\u00e9 Evans", "(630) 615-1042", "jose@Example.com");
+
+    @Test
+    void fromJson_nestedClauses_parsedWithSortAndPaging() {
+        ContactSearch search = ContactSearch.fromJson("{\"query\": {\"all\": [{\"namePrefix\": \"jo ev\"},"
+                + " {\"not\": {\"emailDomain\": \"@other.org\"}}]}, \"sort\": \"-email\", \"pageSize\": 5, \"page\": 2}");
+        assertEquals("((name:jo* AND name:ev*) AND (* AND NOT email:\"other.org\"))", search.query().toQueryString());
+        assertEquals(ContactSearch.SortField.EMAIL, search.sortField());
+        assertTrue(search.descending());
+        assertEquals(10, search.offset());
+    }
+
+    @Test
+    void fromJson_emptyObject_matchesAllSortedByKey() {
+        ContactSearch search = ContactSearch.fromJson("{}");
+        assertTrue(search.query().matches(new Contact("A", null, null)));
+        assertEquals(ContactSearch.SortField.KEY, search.sortField());
+        assertEquals(10, search.pageSize());
+    }
+
+    @Test
+    void fromJson_invalid_namesProblem() {
+        assertEquals("unknown clause \"name\"", assertThrows(IllegalArgumentException.class,
+                () -> ContactSearch.fromJson("{\"query\": {\"name\": \"jo*\"}}")).getMessage());
+        assertEquals("any: expected one or more clauses", assertThrows(IllegalArgumentException.class,
+                () -> ContactSearch.fromJson("{\"query\": {\"any\": []}}")).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> ContactSearch.fromJson("{\"sort\": \"name\"}"));
+        assertThrows(IllegalArgumentException.class, () -> ContactSearch.fromJson("{\"pageSize\": 0}"));
+        assertThrows(IllegalArgumentException.class, () -> ContactSearch.fromJson("[1"));
+    }
+
+    @Test
+    void offset_pageOutOfRange_rejectedRatherThanOverflowing() {
+        assertEquals(2000, ContactSearch.offset(1000, 2));
+        assertEquals(Integer.MAX_VALUE - 1, ContactSearch.offset(2, Integer.MAX_VALUE / 2));
+        assertThrows(IllegalArgumentException.class, () -> ContactSearch.offset(1000, Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> ContactSearch.offset(ContactSearch.MAX_PAGE_SIZE + 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> ContactSearch.offset(10, -1));
+        assertThrows(IllegalArgumentException.class,
+                () -> ContactSearch.fromJson("{\"pageSize\": 1000, \"page\": 3000000}"));
+    }
+
+    @Test
+    void matches_eachClause_comparesNormalizedValues() {
+        assertTrue(ContactQuery.phone("630-615-1042").matches(JOSE));
+        assertFalse(ContactQuery.phone("6306151043").matches(JOSE));
+        assertTrue(ContactQuery.emailDomain("EXAMPLE.com").matches(JOSE));
+        assertFalse(ContactQuery.emailDomain("ample.com").matches(JOSE));
+        assertTrue(ContactQuery.namePrefix("ev jos").matches(JOSE));
+        assertFalse(ContactQuery.namePrefix("evans jo x").matches(JOSE));
+        assertTrue(ContactQuery.any(ContactQuery.not(ContactQuery.matchAll()), ContactQuery.namePrefix("j")).matches(JOSE));
+    }
+}
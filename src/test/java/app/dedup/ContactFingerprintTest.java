@@ -0,0 +1,58 @@
+package app.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContactFingerprintTest {
+
+    @Test
+    void foldName_accentsPunctuationAndOrder_ignored() {
+        assertEquals("jose miller", ContactFingerprint.foldName("Jos\u00e9 Miller"));
+        assertEquals("jose miller", ContactFingerprint.foldName("Miller, Jose"));
+        assertEquals("jose miller", ContactFingerprint.foldName("  jose-MILLER. "));
+        assertEquals("", ContactFingerprint.foldName(null));
+    }
+
+    @Test
+    void normalizePhoneAndEmail_formatting_ignored() {
+        assertEquals("6306151042", ContactFingerprint.normalizePhone("(630) 615-1042"));
+        assertEquals("6306151042", ContactFingerprint.normalizePhone("+1 630 615 1042"));
+        assertNull(ContactFingerprint.normalizePhone("12-34"));
+        assertEquals("jake@example.com", ContactFingerprint.normalizeEmail(" Jake+Work@Example.com"));
+        assertNull(ContactFingerprint.normalizeEmail(" "));
+    }
+
+    @Test
+    void soundex_similarSoundingWords_shareCode() {
+        assertEquals("M460", ContactFingerprint.soundex("miller"));
+        assertEquals("M460", ContactFingerprint.soundex("miler"));
+        assertEquals("R163", ContactFingerprint.soundex("robert"));
+        assertEquals("A261", ContactFingerprint.soundex("ashcraft"));
+        assertEquals("J200", ContactFingerprint.soundex("jos"));
+    }
+
+    @Test
+    void similarity_keyVariantsOfOneName_scoreHigh() {
+        ContactFingerprint accented = new ContactFingerprint("josmiller", "Jos Miller", null, null);
+        ContactFingerprint plain = new ContactFingerprint("josemiller", "Jose Miller", null, null);
+        assertEquals(0.88, accented.similarity(plain), 0.01);
+        assertEquals(accented.blockingKeys(), plain.blockingKeys());
+    }
+
+    @Test
+    void similarity_contactDetails_addOrTakeOff() {
+        ContactFingerprint jake = new ContactFingerprint("jakeevans", "Jake Evans", "6306151042", "jake@example.com");
+        ContactFingerprint mary = new ContactFingerprint("maryevans", "Mary Evans", "(630) 615-1042", null);
+        ContactFingerprint otherJake = new ContactFingerprint("jakeevans2", "Jake Evans", null, "jevans@example.org");
+        assertTrue(jake.similarity(mary) < 0.85);
+        assertTrue(jake.similarity(mary) > new ContactFingerprint("m", "Mary Evans", null, null)
+                .similarity(jake));
+        assertEquals(1 - ContactFingerprint.DIFFERENT_CONTACT_DETAIL, jake.similarity(otherJake), 1e-9);
+        assertEquals(Arrays.asList("n:E152 J200", "p:6306151042", "e:jake@example.com"), jake.blockingKeys());
+    }
+}
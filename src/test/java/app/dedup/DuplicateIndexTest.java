@@ -0,0 +1,78 @@
+package app.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateIndexTest {
+
+    private static ContactFingerprint contact(String key, String name, String phone, String email) {
+        return new ContactFingerprint(key, name, phone, email);
+    }
+
+    @Test
+    void matches_heldDuplicates_orderedByScoreExcludingItself() {
+        DuplicateIndex index = new DuplicateIndex(0.85, 100);
+        index.add(contact("josmiller", "Jos Miller", null, null));
+        index.add(contact("josemiller", "Jose Miller", null, null));
+        index.add(contact("jakeevans", "Jake Evans", "6306151042", null));
+
+        List<DuplicateMatch> matches = index.matches(contact("josemiller", "Miller, Jose", null, null));
+        assertEquals(1, matches.size());
+        assertEquals("josmiller", matches.get(0).duplicateKey());
+
+        matches = index.matches(contact("jakeevns", "Jake Evns", "630-615-1042", null));
+        assertEquals("jakeevans", matches.get(0).duplicateKey());
+        assertEquals(1.0, matches.get(0).score());
+    }
+
+    @Test
+    void remove_contact_noLongerMatched() {
+        DuplicateIndex index = new DuplicateIndex(0.85, 100);
+        index.add(contact("josmiller", "Jos Miller", null, null));
+        index.remove("josmiller");
+        assertTrue(index.matches(contact("josemiller", "Jose Miller", null, null)).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void matches_blockLargerThanWindow_comparesNearestNames() {
+        DuplicateIndex index = new DuplicateIndex(0.85, 4);
+        // all share one phone, so they form a single block
+        for (char c = 'a'; c <= 'z'; c++) {
+            index.add(contact("k" + c, c + "aaa " + c + "bbb", "6306151042", null));
+        }
+        List<DuplicateMatch> matches = index.matches(contact("new", "maaa mbbb", "6306151042", null));
+        assertEquals(1, matches.size());
+        assertEquals("km", matches.get(0).duplicateKey());
+    }
+
+    @Test
+    void findAll_sharedBlocks_reportsEachPairOnce() {
+        DuplicateIndex index = new DuplicateIndex(0.85, 100);
+        index.add(contact("josmiller", "Jos Miller", "6306151042", "jose@example.com"));
+        index.add(contact("josemiller", "Jose Miller", "630-615-1042", "Jose@Example.com"));
+        index.add(contact("jakeevans", "Jake Evans", null, null));
+        index.add(contact("jakeevens", "Jake Evens", null, null));
+        index.add(contact("maryjones", "Mary Jones", null, null));
+
+        ExecutorService workers = Executors.newFixedThreadPool(3);
+        List<DuplicateMatch> matches;
+        try {
+            matches = index.findAll(workers, 3);
+        } finally {
+            workers.shutdownNow();
+        }
+        assertEquals(2, matches.size());
+        assertEquals("josemiller", matches.get(0).key());
+        assertEquals("josmiller", matches.get(0).duplicateKey());
+        assertEquals(1.0, matches.get(0).score());
+        assertEquals("jakeevans", matches.get(1).key());
+        assertEquals("jakeevens", matches.get(1).duplicateKey());
+    }
+}
@@ -0,0 +1,240 @@
+package app.load;
+
+/**
+ * Sends a mix of requests to a running service at a fixed arrival rate
+ * (open loop): request i is due at start + i / rate whether or not earlier
+ * requests have been answered, and its latency is measured from then. A
+ * closed-loop client, which waits for each answer before sending the next
+ * request, sends fewer requests while the server stalls and so hides the
+ * stall from its percentiles (coordinated omission). Requests are sent by a
+ * fixed pool of threads; if they are all waiting, the next request is sent
+ * late and its lateness is counted in its latency. The pool should hold
+ * more threads than rate * worst expected latency.
+ *      get    - GET /contact/{key} of a contact known to exist.
+ *      search - GET /contact?query=name:{letter}* for a page of 10.
+ *      post   - POST /contact of a new contact.
+ *      put    - PUT /contact/{key} changing a known contact's phone number.
+ *      delete - DELETE /contact/{key} of a known contact.
+ */
+
+import app.load.LoadMix.Operation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+class LoadGenerator {
+
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final String baseUrl;
+    private final LoadMix mix;
+    private final int threads;
+    // keys of contacts known to exist; guarded by itself
+    private final List<String> keys = new ArrayList<>();
+    private final AtomicLong created = new AtomicLong();
+
+    /**
+     * @param baseUrl = the service's address, e.g. "http://localhost:4567".
+     * @param threads = the number of requests that may be in flight at once.
+     */
+    LoadGenerator(String baseUrl, LoadMix mix, int threads) {
+        this.baseUrl = baseUrl;
+        this.mix = mix;
+        this.threads = threads;
+    }
+
+    /**
+     * Posts @count contacts for the test to read, update and delete.
+     * @throws IOException if one of them could not be posted.
+     */
+    void seed(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            String name = newName();
+            String error = send("POST", "/contact", contact(name));
+            if (error != null) {
+                throw new IOException("Could not seed " + name + ": " + error);
+            }
+            addKey(key(name));
+        }
+    }
+
+    /**
+     * Sends requests at @rate per second for @duration, then waits for them
+     * all to be answered.
+     */
+    LoadReport run(double rate, long duration, TimeUnit unit) throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long total = (long) (rate * unit.toNanos(duration) / TimeUnit.SECONDS.toNanos(1));
+        LoadReport report = new LoadReport(rate);
+        AtomicLong next = new AtomicLong();
+        ExecutorService senders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "contacts-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        for (int t = 0; t < threads; t++) {
+            senders.execute(() -> {
+                Random random = ThreadLocalRandom.current();
+                for (long i = next.getAndIncrement(); i < total; i = next.getAndIncrement()) {
+                    long due = start + i * intervalNanos;
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    Operation operation = mix.pick(random);
+                    String error = perform(operation, random);
+                    report.record(operation, System.nanoTime() - due, error);
+                }
+            });
+        }
+        senders.shutdown();
+        senders.awaitTermination(unit.toNanos(duration) + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+        report.finish(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * @return the error the request failed with, or null if it succeeded.
+     */
+    private String perform(Operation operation, Random random) {
+        try {
+            switch (operation) {
+                case GET:
+                    return send("GET", "/contact/" + anyKey(random), null);
+                case SEARCH:
+                    String query = URLEncoder.encode("name:" + (char) ('a' + random.nextInt(26)) + "*", "UTF-8");
+                    return send("GET", "/contact?query=" + query + "&pageSize=10&page=0", null);
+                case POST:
+                    String name = newName();
+                    String error = send("POST", "/contact", contact(name));
+                    if (error == null) {
+                        addKey(key(name));
+                    }
+                    return error;
+                case PUT:
+                    return send("PUT", "/contact/" + anyKey(random), "{\"phone\":\"" + phone(random) + "\"}");
+                default:
+                    String key = removeKey(random);
+                    return key == null ? "no contact to delete" : send("DELETE", "/contact/" + key, null);
+            }
+        } catch (IOException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    private String send(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        // read to the end, so that the connection is kept alive for the next request
+        InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        if (input != null) {
+            try (InputStream in = input) {
+                byte[] buffer = new byte[4096];
+                for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                    response.write(buffer, 0, read);
+                }
+            }
+        }
+        if (status >= 400) {
+            return "HTTP " + status;
+        }
+        return errorMessage(response.toString("UTF-8"));
+    }
+
+    /**
+     * @return the service's error message in @body, such as
+     *        "{Record not found}" (alone or as the only item of a list), or
+     *        null if @body is not one.
+     */
+    static String errorMessage(String body) {
+        String trimmed = body.trim();
+        if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+            trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
+            if (trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+                trimmed = trimmed.substring(1, trimmed.length() - 1);
+            }
+        }
+        if (trimmed.startsWith("{") && trimmed.length() > 2 && trimmed.charAt(1) != '"' && trimmed.endsWith("}")) {
+            return trimmed;
+        }
+        return null;
+    }
+
+    // names are letters only, as the service strips anything else from them
+    private String newName() {
+        StringBuilder suffix = new StringBuilder();
+        for (long n = created.getAndIncrement(); ; n /= 26) {
+            suffix.append((char) ('a' + n % 26));
+            if (n < 26) {
+                break;
+            }
+        }
+        return "Load " + suffix;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT).replace(" ", "");
+    }
+
+    private static String contact(String name) {
+        return "{\"name\":\"" + name + "\",\"phone\":\"" + phone(ThreadLocalRandom.current())
+                + "\",\"email\":\"" + key(name) + "@example.com\"}";
+    }
+
+    private static String phone(Random random) {
+        return String.format("(%03d) %03d-%04d", 200 + random.nextInt(800), random.nextInt(1000),
+                random.nextInt(10000));
+    }
+
+    private void addKey(String key) {
+        synchronized (keys) {
+            keys.add(key);
+        }
+    }
+
+    private String anyKey(Random random) {
+        synchronized (keys) {
+            return keys.isEmpty() ? "nobody" : keys.get(random.nextInt(keys.size()));
+        }
+    }
+
+    private String removeKey(Random random) {
+        synchronized (keys) {
+            if (keys.isEmpty()) {
+                return null;
+            }
+            int i = random.nextInt(keys.size());
+            String key = keys.get(i);
+            keys.set(i, keys.get(keys.size() - 1));
+            keys.remove(keys.size() - 1);
+            return key;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package app.load;
+
+/**
+ * Runs a load test against the service end to end, over HTTP, and prints a
+ * LoadReport. Unless contacts.load.url names a running instance (which may
+ * be backed by Elasticsearch), Main is started in this JVM on a free port,
+ * backed by the embedded store in a temporary directory, with the service's
+ * other contacts.* settings taken from system properties as usual. Settings:
+ *      contacts.load.url             - the instance to test; none starts one.
+ *      contacts.load.rate            - requests per second (200).
+ *      contacts.load.durationSeconds - how long to send them for (10).
+ *      contacts.load.mix             - operation weights
+ *                                      (get=60,search=15,post=10,put=10,delete=5).
+ *      contacts.load.threads         - requests in flight at most (64).
+ *      contacts.load.seed            - contacts posted before the test (1000).
+ * Run with, after mvn test-compile and mvn dependency:build-classpath
+ * -Dmdep.outputFile=cp.txt:
+ *      java -cp target/classes:target/test-classes:$(cat cp.txt) \
+ *          -Dcontacts.load.rate=500 app.load.LoadHarness
+ */
+
+import app.Main;
+import app.config.Config;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.stop;
+
+public class LoadHarness {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        try {
+            System.out.print(run());
+        } finally {
+            stop();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Starts the service if needed, seeds it and runs the load test, leaving
+     * a started service running.
+     */
+    static LoadReport run() throws IOException, InterruptedException {
+        String url = Config.get("contacts.load.url", null);
+        if (url == null) {
+            url = start();
+        }
+        LoadGenerator generator = new LoadGenerator(url,
+                new LoadMix(Config.get("contacts.load.mix", "get=60,search=15,post=10,put=10,delete=5")),
+                Config.getInt("contacts.load.threads", 64));
+        generator.seed(Config.getInt("contacts.load.seed", 1000));
+        return generator.run(Config.getDouble("contacts.load.rate", 200),
+                Config.getLong("contacts.load.durationSeconds", 10), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts Main on a free port, backed by an empty embedded store unless
+     * contacts.dao says otherwise.
+     * @return the address it listens on.
+     */
+    static String start() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        System.setProperty("contacts.http.port", Integer.toString(port));
+        if (Config.get("contacts.dao", null) == null) {
+            System.setProperty("contacts.dao", "embedded");
+            System.setProperty("contacts.embedded.dir", Files.createTempDirectory("contacts-load").toString());
+            System.setProperty("contacts.embedded.snapshotIntervalSeconds", "0");
+        }
+        Main.main(new String[0]);
+        awaitInitialization();
+        return "http://localhost:" + port;
+    }
+}
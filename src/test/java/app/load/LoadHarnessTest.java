@@ -0,0 +1,59 @@
+package app.load;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static spark.Spark.stop;
+
+class LoadHarnessTest {
+
+    @Test
+    void errorMessage_serviceResponses_recognizesErrorsOnly() {
+        assertEquals("{Record not found}", LoadGenerator.errorMessage("{Record not found}"));
+        assertEquals("{Connection error}", LoadGenerator.errorMessage("[\"{Connection error}\"]"));
+        assertNull(LoadGenerator.errorMessage("{\"name\":\"Load a\",\"phone\":null,\"email\":null}"));
+        assertNull(LoadGenerator.errorMessage("[{\"name\":\"Load a\"}]"));
+        assertNull(LoadGenerator.errorMessage("[]"));
+    }
+
+    @Test
+    void pick_weightedMix_picksOnlyWeightedOperations() {
+        LoadMix mix = new LoadMix("get=3, post=1, delete=0");
+        Set<LoadMix.Operation> picked = EnumSet.noneOf(LoadMix.Operation.class);
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            picked.add(mix.pick(random));
+        }
+        assertEquals(EnumSet.of(LoadMix.Operation.GET, LoadMix.Operation.POST), picked);
+        assertThrows(IllegalArgumentException.class, () -> new LoadMix("get=0"));
+        assertThrows(IllegalArgumentException.class, () -> new LoadMix("fetch=1"));
+    }
+
+    // an end-to-end run takes contacts.load.durationSeconds; enable with -Dcontacts.load=true
+    @Test
+    @EnabledIfSystemProperty(named = "contacts.load", matches = "true")
+    void run_defaultMix_keepsRateWithoutErrors() throws Exception {
+        LoadReport report;
+        try {
+            report = LoadHarness.run();
+        } finally {
+            stop();
+        }
+        assertTrue(report.requests() > 0);
+        assertEquals(0, report.serverErrors(), report.toString());
+        // a GET or PUT may race a DELETE of the same contact
+        assertTrue(report.failures() <= report.requests() / 100, report.toString());
+        assertTrue(report.achievedRate() > 0.9 * Double.parseDouble(System.getProperty("contacts.load.rate", "200")),
+                report.toString());
+        assertTrue(report.latencyMillis(0.99)
+                <= Double.parseDouble(System.getProperty("contacts.load.maxP99Millis", "1000")), report.toString());
+    }
+}
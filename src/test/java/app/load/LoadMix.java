@@ -0,0 +1,62 @@
+package app.load;
+
+/**
+ * The share of each operation in a load test, parsed from a list of weights
+ * such as "get=60,search=15,post=10,put=10,delete=5"; operations left out are
+ * never sent.
+ */
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+class LoadMix {
+
+    enum Operation { GET, SEARCH, POST, PUT, DELETE }
+
+    private final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    private final int total;
+
+    /**
+     * @throws IllegalArgumentException if @mix names an unknown operation,
+     *        has a weight that is not a non-negative number, or has no
+     *        positive weight.
+     */
+    LoadMix(String mix) {
+        int sum = 0;
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("expected operation=weight, got " + entry);
+            }
+            Operation operation = Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("negative weight for " + operation);
+            }
+            weights.put(operation, weight);
+            sum += weight;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("no operation has a positive weight in " + mix);
+        }
+        this.total = sum;
+    }
+
+    Operation pick(Random random) {
+        int draw = random.nextInt(total);
+        for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+            draw -= weight.getValue();
+            if (draw < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("weights changed");
+    }
+
+    @Override
+    public String toString() {
+        return weights.toString();
+    }
+}
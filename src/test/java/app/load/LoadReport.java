@@ -0,0 +1,130 @@
+package app.load;
+
+/**
+ * The outcome of a load test: for each operation, the number of requests
+ * sent, how many failed, and latency percentiles measured from when each
+ * request was due to be sent (not from when it was), so that a server that
+ * stalls is charged for the requests that queued up behind the stall.
+ * A request failed if its status was 400 or more or its body was one of the
+ * service's error messages, such as {Record not found}.
+ */
+
+import app.load.LoadMix.Operation;
+import app.metrics.LatencyHistogram;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+class LoadReport {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999, 1.0};
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> failures = new EnumMap<>(Operation.class);
+    private final LatencyHistogram all = new LatencyHistogram();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final double offeredRate;
+    private volatile long elapsedNanos;
+
+    /**
+     * @param offeredRate = the requests per second the test was run at.
+     */
+    LoadReport(double offeredRate) {
+        this.offeredRate = offeredRate;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            failures.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * @param error = the error message or HTTP status, or null if the
+     *        request succeeded.
+     */
+    void record(Operation operation, long latencyNanos, String error) {
+        latencies.get(operation).record(latencyNanos);
+        all.record(latencyNanos);
+        if (error != null) {
+            failures.get(operation).increment();
+            errors.computeIfAbsent(error, e -> new LongAdder()).increment();
+        }
+    }
+
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    long requests() {
+        return all.count();
+    }
+
+    long failures() {
+        long failed = 0;
+        for (LongAdder count : failures.values()) {
+            failed += count.sum();
+        }
+        return failed;
+    }
+
+    /**
+     * @return the requests answered with a 5xx status or not answered at all
+     *        (those that failed with an IOException), as opposed to those
+     *        the service refused, such as a get of a contact just deleted.
+     */
+    long serverErrors() {
+        long failed = 0;
+        for (Map.Entry<String, LongAdder> error : errors.entrySet()) {
+            if (error.getKey().startsWith("HTTP 5") || error.getKey().endsWith("Exception")) {
+                failed += error.getValue().sum();
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return the latency at @quantile of every request, in milliseconds.
+     */
+    double latencyMillis(double quantile) {
+        return all.valueAt(quantile) / 1e6;
+    }
+
+    /**
+     * @return the requests completed per second.
+     */
+    double achievedRate() {
+        return elapsedNanos == 0 ? 0 : all.count() / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder(String.format("%-8s %8s %8s %9s %9s %9s %9s %9s%n",
+                "", "requests", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (Operation operation : Operation.values()) {
+            if (latencies.get(operation).count() > 0) {
+                row(output, operation.name().toLowerCase(Locale.ROOT), latencies.get(operation), failures.get(operation).sum());
+            }
+        }
+        row(output, "all", all, failures());
+        output.append(String.format("offered %.1f/s, achieved %.1f/s over %.1fs%n", offeredRate, achievedRate(),
+                elapsedNanos / 1e9));
+        if (!errors.isEmpty()) {
+            Map<String, Long> sorted = new TreeMap<>();
+            errors.forEach((error, count) -> sorted.put(error, count.sum()));
+            output.append("errors: ").append(sorted).append(String.format("%n"));
+        }
+        return output.toString();
+    }
+
+    private static void row(StringBuilder output, String name, LatencyHistogram latency, long failed) {
+        output.append(String.format("%-8s %8d %8d", name, latency.count(), failed));
+        for (double quantile : QUANTILES) {
+            output.append(String.format(" %9.2f", latency.valueAt(quantile) / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+        output.append(String.format("%n"));
+    }
+}
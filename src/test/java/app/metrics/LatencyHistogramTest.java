@@ -0,0 +1,36 @@
+package app.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void index_everyValue_fallsInBucketCoveringIt() {
+        for (long value = 0; value < 100_000; value += 7) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.highestValue(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < value);
+        }
+    }
+
+    @Test
+    void valueAt_uniformValues_withinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000_000);
+        }
+        assertEquals(1000, histogram.count());
+        long median = histogram.valueAt(0.5);
+        assertTrue(Math.abs(median - 500_000_000) <= 500_000_000 * 0.07, "median was " + median);
+        long p99 = histogram.valueAt(0.99);
+        assertTrue(Math.abs(p99 - 990_000_000) <= 990_000_000 * 0.07, "p99 was " + p99);
+    }
+
+    @Test
+    void valueAt_empty_returnsZero() {
+        assertEquals(0, new LatencyHistogram().valueAt(0.99));
+    }
+}
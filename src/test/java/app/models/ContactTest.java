@@ -47,6 +47,31 @@ class ContactTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    void cleanPhone_digitsOnlyFormat_returnsNumberUnchanged() {
+        assertEquals("0123456789", Contact.cleanPhone("0123456789"));
+    }
+
+    @Test
+    void cleanPhone_dashesFormat_returnsNumberUnchanged() {
+        assertEquals("012-345-6789", Contact.cleanPhone("012-345-6789"));
+    }
+
+    @Test
+    void cleanPhone_parenthesesFormat_returnsNumberUnchanged() {
+        assertEquals("(012)3456789", Contact.cleanPhone("(012)3456789"));
+    }
+
+    @Test
+    void cleanPhone_parenthesesAndDashFormat_returnsNumberUnchanged() {
+        assertEquals("(012)345-6789", Contact.cleanPhone("(012)345-6789"));
+    }
+
+    @Test
+    void cleanPhone_parenthesesSpaceAndDashFormat_returnsNumberUnchanged() {
+        assertEquals("(012) 345-6789", Contact.cleanPhone("(012) 345-6789"));
+    }
+
     @Test
     void cleanEmail_validEmail_returnsInputUnchanged() {
         String expected = "home@email.com";
@@ -82,4 +107,26 @@ class ContactTest {
         test.copyFrom(overwrite);
         assertNotNull(test.getName());
     }
-}
\ No newline at end of file
+
+    @Test
+    void cleanName_inputWithBracketsAndUnderscores_removesThem() {
+        String actual = Contact.cleanName("[Nate]_Vojtik^");
+        assertEquals("NateVojtik", actual);
+    }
+
+    @Test
+    void fromJsonString_invalidPhone_reportsViolation() {
+        String test = "{\"name\":\"Nate Vojtik\",\"phone\":\"63061510\",\"email\":\"npvojtik@gmail.com\"}";
+        Contact contact = Contact.fromJsonString(test);
+        assertNull(contact.getPhone());
+        assertEquals(1, contact.getViolations().size());
+        assertEquals("phone", contact.getViolations().get(0).field());
+        assertEquals("63061510", contact.getViolations().get(0).value());
+    }
+
+    @Test
+    void constructor_validFields_reportsNoViolations() {
+        Contact contact = new Contact("Nate Vojtik", "(630) 615-1042", "npvojtik@gmail.com");
+        assertTrue(contact.getViolations().isEmpty());
+    }
+}
@@ -0,0 +1,48 @@
+package app.requesthandler;
+
+import app.converter.ContactJsonConverter;
+import app.dao.ChangeFeedDAO;
+import app.dao.DAOResponse;
+import app.dao.EmbeddedDAO;
+import app.models.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChangeFeedRequestHandlerTest {
+
+    private final ChangeFeedDAO<Contact, DAOResponse<Contact>> feed = new ChangeFeedDAO<>(
+            new EmbeddedDAO(new ContactJsonConverter()), Contact::getKey, new ContactJsonConverter(), null, 100, 0);
+    private final ChangeFeedRequestHandler handler = new ChangeFeedRequestHandler(feed, 1000);
+
+    @Test
+    void resumeFrom_parameterHeaderOrLatest_picksFirstGiven() {
+        feed.post(new Contact("Test A", null, null));
+        assertEquals(0, handler.resumeFrom("0", "7"));
+        assertEquals(7, handler.resumeFrom(null, " 7"));
+        assertEquals(1, handler.resumeFrom(null, null));
+        assertThrows(IllegalArgumentException.class, () -> handler.resumeFrom("abc", null));
+    }
+
+    @Test
+    void stream_eventsAfterSequence_writtenAsServerSentEvents() throws IOException {
+        feed.post(new Contact("Test A", null, null));
+        feed.delete("testa");
+
+        StringWriter output = new StringWriter();
+        handler.stream(0, output, 50, TimeUnit.MILLISECONDS);
+        String expected = ":\n\n"
+                + "id: 1\nevent: post\ndata: {\"sequence\":1,\"operation\":\"post\",\"key\":\"testa\",\"version\":"
+                + feed.read(0, 1).get(0).version()
+                + ",\"document\":{\"name\":\"Test A\",\"phone\":null,\"email\":null}}\n\n"
+                + "id: 2\nevent: delete\ndata: {\"sequence\":2,\"operation\":\"delete\",\"key\":\"testa\",\"version\":-1,"
+                + "\"document\":null}\n\n";
+        // followed by heartbeats until the stream ends
+        assertEquals(expected, output.toString().substring(0, expected.length()));
+    }
+}
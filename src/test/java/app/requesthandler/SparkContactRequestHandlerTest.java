@@ -1,12 +1,25 @@
 package app.requesthandler;
 
+import app.converter.ContactBinaryConverter;
 import app.converter.ContactJsonConverter;
+import app.dao.CircuitBreaker;
 import app.dao.ContactDAOResponse;
 import app.dao.DAOResponse;
+import app.dao.EmbeddedDAO;
+import app.dao.ResilientDAO;
 import app.models.Contact;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SparkContactRequestHandlerTest {
 
@@ -34,4 +47,216 @@ class SparkContactRequestHandlerTest {
                 new Exception("Delete exception, record not found"));
         assertEquals(expected, handler.parseResponse(daoResponse));
     }
-}
\ No newline at end of file
+
+    @Test
+    void get_queryToStream_writesSingleJsonArray() throws IOException {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        dao.post(new Contact("Test A", "0123456789", null));
+        dao.post(new Contact("Test B", null, "email@mail.com"));
+        SparkContactRequestHandler streaming = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        streaming.get("name:test", 10, 0, output);
+        String expected = "[{\"name\":\"Test A\",\"phone\":\"0123456789\",\"email\":null},"
+                + "{\"name\":\"Test B\",\"phone\":null,\"email\":\"email@mail.com\"}]";
+        assertEquals(expected, output.toString("UTF-8"));
+
+        output.reset();
+        streaming.get("name:nobody", 10, 0, output);
+        assertEquals("[]", output.toString("UTF-8"));
+    }
+
+    @Test
+    void post_invalidEmail_rejectedWithRule() {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        SparkContactRequestHandler validating = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        String output = validating.post("{\"name\":\"Test A\",\"email\":\"nobody\"}");
+        assertTrue(output.startsWith("{Invalid contact: email: expected "));
+        assertEquals(0, dao.size());
+    }
+
+    @Test
+    void getAll_keysFoundAndMissing_returnsResponsePerKey() {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        dao.post(new Contact("Test A", null, null));
+        SparkContactRequestHandler multiGet = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        assertEquals(Arrays.asList("{\"name\":\"Test A\",\"phone\":null,\"email\":null}", "{Record not found}"),
+                multiGet.getAll("{\"keys\":[\"testa\",\"notreal\"]}"));
+        assertEquals(1, multiGet.getAll("[\"testa\"]").size());
+        assertTrue(multiGet.getAll("[\"testa\"]").get(0).startsWith("{Invalid request"));
+    }
+
+    @Test
+    void getAll_tooManyKeys_rejectedWithoutLookup() {
+        SparkContactRequestHandler multiGet = new SparkContactRequestHandler(new EmbeddedDAO(new ContactJsonConverter()),
+                new ContactJsonConverter());
+        StringBuilder keys = new StringBuilder("{\"keys\":[\"k0\"");
+        for (int i = 1; i < SparkContactRequestHandler.MAX_KEYS; i++) {
+            keys.append(",\"k").append(i).append('"');
+        }
+
+        assertEquals(SparkContactRequestHandler.MAX_KEYS, multiGet.getAll(keys + "]}").size());
+        assertEquals(Collections.singletonList("{Invalid request: at most " + SparkContactRequestHandler.MAX_KEYS
+                + " keys, got " + (SparkContactRequestHandler.MAX_KEYS + 1) + "}"),
+                multiGet.getAll(keys + ",\"extra\"]}"));
+    }
+
+    @Test
+    void suggest_defaultPrefixQuery_matchesLastWord() {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        dao.post(new Contact("Test A", null, null));
+        dao.post(new Contact("Other B", null, null));
+        SparkContactRequestHandler suggesting = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        assertEquals(Arrays.asList("{\"name\":\"Other B\",\"phone\":null,\"email\":null}"),
+                suggesting.suggest("ot", 10));
+        assertTrue(suggesting.suggest("  ", 10).isEmpty());
+    }
+
+    @Test
+    void suggest_sizeOutOfRange_clamped() {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        for (int i = 0; i < 60; i++) {
+            dao.post(new Contact("Test " + (char) ('a' + i / 26) + (char) ('a' + i % 26), null, null));
+        }
+        SparkContactRequestHandler suggesting = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        assertEquals(1, suggesting.suggest("test", -1).size());
+        assertEquals(50, suggesting.suggest("test", 2000000000).size());
+    }
+
+    @Test
+    void get_ifNoneMatchCurrentTag_notModified() {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        dao.post(new Contact("Test A", null, null));
+        SparkContactRequestHandler conditional = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        TaggedResponse<String> first = conditional.get("testa", null);
+        assertEquals(TaggedResponse.OK, first.status());
+        assertTrue(first.etag().startsWith("\"" + dao.getByKey("testa").version() + "-"));
+
+        TaggedResponse<String> unchanged = conditional.get("testa", "\"1\", W/" + first.etag());
+        assertEquals(TaggedResponse.NOT_MODIFIED, unchanged.status());
+        assertEquals("", unchanged.body());
+
+        conditional.put("testa", "{\"phone\":\"0001112222\"}");
+        TaggedResponse<String> changed = conditional.get("testa", first.etag());
+        assertEquals(TaggedResponse.OK, changed.status());
+        assertTrue(changed.body().contains("0001112222"));
+    }
+
+    @Test
+    void put_ifMatchStaleTag_preconditionFailed() {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        dao.post(new Contact("Test A", null, null));
+        SparkContactRequestHandler conditional = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+        String etag = conditional.get("testa", null).etag();
+
+        TaggedResponse<String> updated = conditional.put("testa", "{\"phone\":\"0001112222\"}", etag);
+        assertEquals(TaggedResponse.OK, updated.status());
+        assertEquals(conditional.get("testa", null).etag(), updated.etag());
+
+        assertEquals(TaggedResponse.PRECONDITION_FAILED,
+                conditional.put("testa", "{\"phone\":\"0001113333\"}", etag).status());
+        assertEquals(TaggedResponse.PRECONDITION_FAILED, conditional.delete("testa", "W/" + updated.etag()).status());
+        assertEquals(TaggedResponse.OK, conditional.delete("testa", updated.etag()).status());
+        assertEquals(0, dao.size());
+    }
+
+    @Test
+    void get_binaryEncoding_encodesContactOrError() {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        dao.post(new Contact("Test A", "0123456789", null));
+        SparkContactRequestHandler binary = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        TaggedResponse<byte[]> found = binary.get("testa", null, ContactBinaryConverter.SMILE);
+        assertEquals(TaggedResponse.OK, found.status());
+        assertEquals(binary.get("testa", null).etag(), found.etag());
+        assertEquals("Test A", ContactBinaryConverter.SMILE.from(found.body()).getName());
+        assertEquals(TaggedResponse.NOT_MODIFIED,
+                binary.get("testa", found.etag(), ContactBinaryConverter.SMILE).status());
+
+        TaggedResponse<byte[]> missing = binary.get("nobody", null, ContactBinaryConverter.CBOR);
+        assertEquals(null, missing.etag());
+        assertEquals(new String(ContactBinaryConverter.CBOR.error("Record not found")), new String(missing.body()));
+    }
+
+    @Test
+    void etag_sameVersionDifferentContact_differs() {
+        String deleted = SparkContactRequestHandler.etag(new ContactDAOResponse(new Contact("Test A", null, null), 1));
+        String recreated = SparkContactRequestHandler.etag(
+                new ContactDAOResponse(new Contact("Test A", "0123456789", null), 1));
+        assertNotEquals(deleted, recreated);
+        assertEquals(1, SparkContactRequestHandler.version(recreated));
+        assertEquals(deleted, SparkContactRequestHandler.etag(new ContactDAOResponse(new Contact("Test A", null, null), 1)));
+    }
+
+    @Test
+    void asyncOperations_embeddedStore_completeWithSameBodiesAsBlocking() throws Exception {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        SparkContactRequestHandler async = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        String posted = async.postAsync("{\"name\":\"Test A\",\"phone\":\"0123456789\"}").get();
+        assertEquals("{\"name\":\"Test A\",\"phone\":\"0123456789\",\"email\":null}", posted);
+        assertEquals(posted, async.getAsync("testa").get());
+        assertEquals(Arrays.asList(posted), async.getAsync("name:test", 10, 0).get());
+
+        String updated = async.putAsync("testa", "{\"phone\":\"0001112222\"}").get();
+        assertTrue(updated.contains("0001112222"));
+        assertEquals(updated, async.deleteAsync("testa").get());
+        assertEquals(0, dao.size());
+    }
+
+    @Test
+    void asyncOperations_missingOrInvalid_completeWithErrors() throws Exception {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        SparkContactRequestHandler async = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        assertEquals("{Record not found}", async.getAsync("nobody").get());
+        assertEquals("{Record not found}", async.deleteAsync("nobody").get());
+        String overflowing = async.getAsync("name:test", 1000, Integer.MAX_VALUE).get().get(0);
+        assertTrue(overflowing.startsWith("{Invalid page: "), overflowing);
+        assertEquals(Collections.singletonList(overflowing), async.get("name:test", 1000, Integer.MAX_VALUE));
+        assertTrue(async.get("name:test", 0, 0).get(0).startsWith("{Invalid page: "));
+        assertEquals(async.post("{\"name\":\"Test A\",\"phone\":\"123\"}"),
+                async.postAsync("{\"name\":\"Test A\",\"phone\":\"123\"}").get());
+        assertEquals(async.put("nobody", "{\"email\":\"not an email\"}"),
+                async.putAsync("nobody", "{\"email\":\"not an email\"}").get());
+        assertEquals("{Record not found}", async.putAsync("nobody", "{\"phone\":\"0001112222\"}").get());
+        assertEquals(0, dao.size());
+    }
+
+    @Test
+    void getAsync_ifNoneMatch_taggedLikeBlockingGet() throws Exception {
+        EmbeddedDAO dao = new EmbeddedDAO(new ContactJsonConverter());
+        dao.post(new Contact("Test A", null, null));
+        SparkContactRequestHandler async = new SparkContactRequestHandler(dao, new ContactJsonConverter());
+
+        TaggedResponse<String> found = async.getAsync("testa", null).get();
+        assertEquals(TaggedResponse.OK, found.status());
+        assertEquals(async.get("testa", null).etag(), found.etag());
+        assertEquals(async.get("testa"), found.body());
+        assertEquals(TaggedResponse.NOT_MODIFIED, async.getAsync("testa", found.etag()).get().status());
+        assertEquals(null, async.getAsync("nobody", found.etag()).get().etag());
+    }
+
+    @Test
+    void queries_circuitOpen_failFastWithError() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1, TimeUnit.MINUTES);
+        breaker.onFailure();
+        SparkContactRequestHandler open = new SparkContactRequestHandler(new ResilientDAO<>(
+                new EmbeddedDAO(new ContactJsonConverter()), Contact::getKey, ContactDAOResponse::new,
+                ContactDAOResponse::stale, breaker, 10), new ContactJsonConverter());
+
+        List<String> circuitOpen = Collections.singletonList("{Circuit open}");
+        assertEquals(circuitOpen, open.get("name:test", 10, 0));
+        assertEquals(circuitOpen, open.getAsync("name:test", 10, 0).get());
+        assertEquals(circuitOpen, open.search("{}"));
+        assertEquals(circuitOpen, open.suggest("te", 10));
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        open.get("name:test", 10, 0, streamed);
+        assertEquals("[{Circuit open}]", streamed.toString("UTF-8"));
+    }
+}